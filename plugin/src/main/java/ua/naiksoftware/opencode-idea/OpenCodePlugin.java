@@ -3,6 +3,7 @@ package ua.naiksoftware.opencodeidea;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
+import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
 import ua.naiksoftware.opencodeidea.services.OpenCodeServerManager;
 import org.jetbrains.annotations.NotNull;
 
@@ -14,8 +15,14 @@ public class OpenCodePlugin implements StartupActivity {
     public void runActivity(@NotNull Project project) {
         LOG.info("Initializing OpenCode plugin for project: " + project.getName());
         
-        // Start the OpenCode server automatically when project opens
         OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
+        if (!OpenCodeConfig.getInstance().isStartServerOnProjectOpen()) {
+            // The server starts when OpenCode is first used; only find the executable now so that start is quick
+            serverManager.prepare();
+            return;
+        }
+        
+        // Start the OpenCode server automatically when project opens
         serverManager.startServer()
             .thenAccept(success -> {
                 if (success) {
@@ -4,9 +4,9 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.SelectionModel;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiService;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiServiceImpl;
 import org.jetbrains.annotations.NotNull;
@@ -24,10 +24,9 @@ public class AskOpenCodeAction extends AnAction {
         
         OpenCodeApiService apiService = OpenCodeApiServiceImpl.getInstance();
 
-        SelectionModel selectionModel = editor.getSelectionModel();
-        String selectedCode = selectionModel.getSelectedText();
+        CodeSnippet selectedCode = CodeSelection.fromEditor(project, editor);
         
-        if (selectedCode == null || selectedCode.trim().isEmpty()) {
+        if (selectedCode == null) {
             Messages.showWarningDialog(project, 
                     "Please select some code to ask about",
                     "No Code Selected");
@@ -40,7 +39,7 @@ public class AskOpenCodeAction extends AnAction {
                 Messages.getQuestionIcon());
         
         if (question != null && !question.trim().isEmpty()) {
-            apiService.sendRequest(question, selectedCode).whenComplete((response, throwable) -> {
+            apiService.sendRequest(question, selectedCode, project).whenComplete((response, throwable) -> {
                 if (throwable != null) {
                     Messages.showErrorDialog(project,
                             "Error: " + throwable.getMessage(),
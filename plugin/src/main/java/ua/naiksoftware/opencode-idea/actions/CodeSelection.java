@@ -0,0 +1,61 @@
+package ua.naiksoftware.opencodeidea.actions;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.SelectionModel;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
+
+/**
+ * Captures the editor selection together with the file and lines it came from.
+ */
+final class CodeSelection {
+    
+    private CodeSelection() {
+    }
+    
+    /**
+     * Returns the selected code, or null if nothing is selected.
+     */
+    @Nullable
+    static CodeSnippet fromEditor(@NotNull Project project, @NotNull Editor editor) {
+        SelectionModel selectionModel = editor.getSelectionModel();
+        String selectedText = selectionModel.getSelectedText();
+        if (selectedText == null || selectedText.trim().isEmpty()) {
+            return null;
+        }
+        
+        Document document = editor.getDocument();
+        int startLine = document.getLineNumber(selectionModel.getSelectionStart()) + 1;
+        int endLine = document.getLineNumber(Math.max(selectionModel.getSelectionStart(), selectionModel.getSelectionEnd() - 1)) + 1;
+        FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+        VirtualFile file = fileDocumentManager.getFile(document);
+        
+        // The server may read the lines from disk only if they match the editor: saved, local, and whole lines
+        boolean wholeLines = selectionModel.getSelectionStart() == document.getLineStartOffset(startLine - 1)
+            && selectionModel.getSelectionEnd() >= document.getLineEndOffset(endLine - 1);
+        String diskPath = file != null && file.isInLocalFileSystem() && wholeLines && !fileDocumentManager.isDocumentUnsaved(document)
+            ? file.getPath() : null;
+        return new CodeSnippet(relativePath(project, file), diskPath, startLine, endLine, selectedText);
+    }
+    
+    @Nullable
+    private static String relativePath(@NotNull Project project, @Nullable VirtualFile file) {
+        if (file == null) {
+            return null;
+        }
+        String basePath = project.getBasePath();
+        VirtualFile baseDir = basePath != null ? LocalFileSystem.getInstance().findFileByPath(basePath) : null;
+        String relative = baseDir != null ? VfsUtilCore.getRelativePath(file, baseDir, '/') : null;
+        if (relative != null) {
+            return relative;
+        }
+        return file.getPath();
+    }
+}
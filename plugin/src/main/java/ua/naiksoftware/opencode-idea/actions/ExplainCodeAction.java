@@ -4,9 +4,9 @@ import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.CommonDataKeys;
 import com.intellij.openapi.editor.Editor;
-import com.intellij.openapi.editor.SelectionModel;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiService;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiServiceImpl;
 import org.jetbrains.annotations.NotNull;
@@ -24,17 +24,16 @@ public class ExplainCodeAction extends AnAction {
         
         OpenCodeApiService apiService = OpenCodeApiServiceImpl.getInstance();
 
-        SelectionModel selectionModel = editor.getSelectionModel();
-        String selectedCode = selectionModel.getSelectedText();
+        CodeSnippet selectedCode = CodeSelection.fromEditor(project, editor);
         
-        if (selectedCode == null || selectedCode.trim().isEmpty()) {
+        if (selectedCode == null) {
             Messages.showWarningDialog(project,
                     "Please select some code to explain",
                     "No Code Selected");
             return;
         }
         
-        apiService.explainCode(selectedCode).whenComplete((explanation, throwable) -> {
+        apiService.explainCode(selectedCode, project).whenComplete((explanation, throwable) -> {
             if (throwable != null) {
                 Messages.showErrorDialog(project,
                         "Error: " + throwable.getMessage(),
@@ -9,6 +9,7 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.SelectionModel;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiService;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiServiceImpl;
 import org.jetbrains.annotations.NotNull;
@@ -27,16 +28,16 @@ public class OptimizeCodeAction extends AnAction {
         OpenCodeApiService apiService = OpenCodeApiServiceImpl.getInstance();
 
         SelectionModel selectionModel = editor.getSelectionModel();
-        String selectedCode = selectionModel.getSelectedText();
+        CodeSnippet selectedCode = CodeSelection.fromEditor(project, editor);
         
-        if (selectedCode == null || selectedCode.trim().isEmpty()) {
+        if (selectedCode == null) {
             Messages.showWarningDialog(project,
                     "Please select some code to optimize",
                     "No Code Selected");
             return;
         }
         
-        apiService.optimizeCode(selectedCode).whenComplete((optimizedCode, throwable) -> {
+        apiService.optimizeCode(selectedCode, project).whenComplete((optimizedCode, throwable) -> {
             if (throwable != null) {
                 Messages.showErrorDialog(project,
                         "Error: " + throwable.getMessage(),
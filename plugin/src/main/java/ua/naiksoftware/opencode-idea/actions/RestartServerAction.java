@@ -0,0 +1,34 @@
+package ua.naiksoftware.opencodeidea.actions;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import ua.naiksoftware.opencodeidea.services.OpenCodeServerManager;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.SwingUtilities;
+
+public class RestartServerAction extends AnAction {
+    
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        if (project == null) {
+            return;
+        }
+        
+        OpenCodeServerManager.getInstance(project).restartServer().whenComplete((started, throwable) -> {
+            if (throwable != null || !Boolean.TRUE.equals(started)) {
+                SwingUtilities.invokeLater(() -> Messages.showErrorDialog(project,
+                        "Failed to restart the OpenCode server" + (throwable != null ? ": " + throwable.getMessage() : ""),
+                        "OpenCode Server Error"));
+            }
+        });
+    }
+    
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(e.getProject() != null);
+    }
+}
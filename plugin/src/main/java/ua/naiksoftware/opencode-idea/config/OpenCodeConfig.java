@@ -16,11 +16,22 @@ public final class OpenCodeConfig implements PersistentStateComponent<OpenCodeCo
     private static final String DEFAULT_BASE_URL = "http://localhost:1993";
     private static final String DEFAULT_PROVIDER_ID = "anthropic";
     private static final String DEFAULT_MODEL_ID = "claude-3-5-sonnet-20241022";
+    private static final int DEFAULT_CONTEXT_TOKEN_BUDGET = 8000;
+    private static final int DEFAULT_IDLE_SHUTDOWN_MINUTES = 30;
     
     public String baseUrl = DEFAULT_BASE_URL;
     public String providerId = DEFAULT_PROVIDER_ID;
     public String modelId = DEFAULT_MODEL_ID;
     public int timeoutSeconds = 120;
+    public int contextTokenBudget = DEFAULT_CONTEXT_TOKEN_BUDGET;
+    public String promptInstructions = "";
+    public String modelRoutes = "";
+    public boolean warmStandby = false;
+    public int serverMemoryLimitMb = 0;
+    public boolean restartOnMemoryLimit = false;
+    public boolean mirrorServerOutput = false;
+    public boolean startServerOnProjectOpen = false;
+    public int idleShutdownMinutes = DEFAULT_IDLE_SHUTDOWN_MINUTES;
     
     @Nullable
     @Override
@@ -87,6 +98,109 @@ public final class OpenCodeConfig implements PersistentStateComponent<OpenCodeCo
         this.timeoutSeconds = timeoutSeconds;
     }
     
+    /**
+     * Upper bound for the estimated size of earlier chat messages sent along with a new question.
+     */
+    public int getContextTokenBudget() {
+        return contextTokenBudget >= 0 ? contextTokenBudget : DEFAULT_CONTEXT_TOKEN_BUDGET;
+    }
+    
+    public void setContextTokenBudget(int contextTokenBudget) {
+        this.contextTokenBudget = contextTokenBudget;
+    }
+    
+    /**
+     * Text sent at the start of every message, before any code or conversation. Empty for none.
+     */
+    @NotNull
+    public String getPromptInstructions() {
+        return promptInstructions != null ? promptInstructions : "";
+    }
+    
+    public void setPromptInstructions(String promptInstructions) {
+        this.promptInstructions = promptInstructions;
+    }
+    
+    /**
+     * Per-request-kind model routes, one per line, e.g. {@code explain max 2000 anthropic/claude-3-5-haiku-latest}.
+     * Empty to use the provider and model above for everything.
+     */
+    @NotNull
+    public String getModelRoutes() {
+        return modelRoutes != null ? modelRoutes : "";
+    }
+    
+    public void setModelRoutes(String modelRoutes) {
+        this.modelRoutes = modelRoutes;
+    }
+    
+    /**
+     * Whether to keep an idle, ready server next to each running one that takes over when it crashes or restarts.
+     * Costs the memory of a second server process.
+     */
+    public boolean isWarmStandby() {
+        return warmStandby;
+    }
+    
+    public void setWarmStandby(boolean warmStandby) {
+        this.warmStandby = warmStandby;
+    }
+    
+    /**
+     * Resident memory of the server process above which the user is warned or the server restarted. 0 for no limit.
+     */
+    public int getServerMemoryLimitMb() {
+        return Math.max(0, serverMemoryLimitMb);
+    }
+    
+    public void setServerMemoryLimitMb(int serverMemoryLimitMb) {
+        this.serverMemoryLimitMb = serverMemoryLimitMb;
+    }
+    
+    /**
+     * Whether a server over the memory limit is restarted between prompts rather than only warned about.
+     */
+    public boolean isRestartOnMemoryLimit() {
+        return restartOnMemoryLimit;
+    }
+    
+    public void setRestartOnMemoryLimit(boolean restartOnMemoryLimit) {
+        this.restartOnMemoryLimit = restartOnMemoryLimit;
+    }
+    
+    /**
+     * Whether server output is also written to a rotating file in the IDE log directory.
+     */
+    public boolean isMirrorServerOutput() {
+        return mirrorServerOutput;
+    }
+    
+    public void setMirrorServerOutput(boolean mirrorServerOutput) {
+        this.mirrorServerOutput = mirrorServerOutput;
+    }
+    
+    /**
+     * Whether the server starts as soon as a project opens rather than when OpenCode is first used.
+     */
+    public boolean isStartServerOnProjectOpen() {
+        return startServerOnProjectOpen;
+    }
+    
+    public void setStartServerOnProjectOpen(boolean startServerOnProjectOpen) {
+        this.startServerOnProjectOpen = startServerOnProjectOpen;
+    }
+    
+    /**
+     * Minutes without use after which a project stops its server; it starts again when next needed. 0 to never stop.
+     */
+    public int getIdleShutdownMinutes() {
+        return Math.max(0, idleShutdownMinutes);
+    }
+    
+    public void setIdleShutdownMinutes(int idleShutdownMinutes) {
+        this.idleShutdownMinutes = idleShutdownMinutes;
+    }
+    
     // Helper methods
     public boolean isConfigured() {
         return getBaseUrl() != null && !getBaseUrl().trim().isEmpty();
@@ -97,5 +211,14 @@ public final class OpenCodeConfig implements PersistentStateComponent<OpenCodeCo
         this.providerId = DEFAULT_PROVIDER_ID;
         this.modelId = DEFAULT_MODEL_ID;
         this.timeoutSeconds = 120;
+        this.contextTokenBudget = DEFAULT_CONTEXT_TOKEN_BUDGET;
+        this.promptInstructions = "";
+        this.modelRoutes = "";
+        this.warmStandby = false;
+        this.serverMemoryLimitMb = 0;
+        this.restartOnMemoryLimit = false;
+        this.mirrorServerOutput = false;
+        this.startServerOnProjectOpen = false;
+        this.idleShutdownMinutes = DEFAULT_IDLE_SHUTDOWN_MINUTES;
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package ua.naiksoftware.opencodeidea.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Code shared with the model, with the project file and line range it came from when known.
+ */
+public class CodeSnippet {
+    @Nullable
+    private final String path;
+    @Nullable
+    private final String diskPath;
+    private final int startLine;
+    private final int endLine;
+    @NotNull
+    private final String text;
+    
+    /**
+     * @param path      project-relative path, or null for text that is not backed by a file
+     * @param startLine first line, 1-based, or 0 if unknown
+     * @param endLine   last line, inclusive, or 0 if unknown
+     */
+    public CodeSnippet(@Nullable String path, int startLine, int endLine, @NotNull String text) {
+        this(path, null, startLine, endLine, text);
+    }
+    
+    /**
+     * @param diskPath absolute path of a saved file whose lines {@code startLine..endLine} are exactly {@code text},
+     *                 so the server can read them itself; null if the text differs from what is on disk
+     */
+    public CodeSnippet(@Nullable String path, @Nullable String diskPath, int startLine, int endLine, @NotNull String text) {
+        this.path = path;
+        this.diskPath = diskPath;
+        this.startLine = startLine;
+        this.endLine = endLine;
+        this.text = text;
+    }
+    
+    public CodeSnippet(@NotNull String text) {
+        this(null, 0, 0, text);
+    }
+    
+    @Nullable
+    public String getPath() { return path; }
+    @Nullable
+    public String getDiskPath() { return diskPath; }
+    public int getStartLine() { return startLine; }
+    public int getEndLine() { return endLine; }
+    @NotNull
+    public String getText() { return text; }
+    
+    public boolean hasRange() {
+        return startLine > 0 && endLine >= startLine;
+    }
+    
+    /**
+     * Human readable origin, e.g. {@code src/Main.java:10-24}, or null if unknown.
+     */
+    @Nullable
+    public String getLocation() {
+        if (path == null) {
+            return null;
+        }
+        return hasRange() ? path + ":" + startLine + "-" + endLine : path;
+    }
+}
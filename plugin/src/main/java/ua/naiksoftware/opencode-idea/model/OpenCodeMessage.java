@@ -32,6 +32,10 @@ public class OpenCodeMessage {
         @SerializedName("cost")
         private double cost;
         
+        // Assistant messages only
+        @SerializedName("tokens")
+        private TokenUsage tokens;
+        
         public static class TimeInfo {
             @SerializedName("created")
             private long created;
@@ -46,6 +50,49 @@ public class OpenCodeMessage {
             public void setCompleted(long completed) { this.completed = completed; }
         }
         
+        /**
+         * Token counts reported by the provider. {@code input} excludes the tokens read from or written to the prompt cache.
+         */
+        public static class TokenUsage {
+            @SerializedName("input")
+            private long input;
+            
+            @SerializedName("output")
+            private long output;
+            
+            @SerializedName("reasoning")
+            private long reasoning;
+            
+            @SerializedName("cache")
+            private CacheUsage cache;
+            
+            public static class CacheUsage {
+                @SerializedName("read")
+                private long read;
+                
+                @SerializedName("write")
+                private long write;
+                
+                public long getRead() { return read; }
+                public void setRead(long read) { this.read = read; }
+                
+                public long getWrite() { return write; }
+                public void setWrite(long write) { this.write = write; }
+            }
+            
+            public long getInput() { return input; }
+            public void setInput(long input) { this.input = input; }
+            
+            public long getOutput() { return output; }
+            public void setOutput(long output) { this.output = output; }
+            
+            public long getReasoning() { return reasoning; }
+            public void setReasoning(long reasoning) { this.reasoning = reasoning; }
+            
+            public CacheUsage getCache() { return cache; }
+            public void setCache(CacheUsage cache) { this.cache = cache; }
+        }
+        
         // Getters and setters
         public String getId() { return id; }
         public void setId(String id) { this.id = id; }
@@ -67,6 +114,9 @@ public class OpenCodeMessage {
         
         public double getCost() { return cost; }
         public void setCost(double cost) { this.cost = cost; }
+        
+        public TokenUsage getTokens() { return tokens; }
+        public void setTokens(TokenUsage tokens) { this.tokens = tokens; }
     }
     
     public static class MessagePart {
@@ -1,6 +1,7 @@
 package ua.naiksoftware.opencodeidea.model;
 
 import com.google.gson.annotations.SerializedName;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -11,6 +12,10 @@ public class OpenCodeRequest {
     @SerializedName("model")
     private ModelConfig model;
     
+    // Added to the system prompt for this turn only; the server does not store it in the conversation
+    @SerializedName("system")
+    private String system;
+    
     public static class MessagePart {
         @SerializedName("type")
         private String type;
@@ -18,16 +23,42 @@ public class OpenCodeRequest {
         @SerializedName("text")
         private String text;
         
+        // File parts only; the server resolves file: URLs itself
+        @SerializedName("mime")
+        private String mime;
+        
+        @SerializedName("filename")
+        private String filename;
+        
+        @SerializedName("url")
+        private String url;
+        
         public MessagePart(String type, String text) {
             this.type = type;
             this.text = text;
         }
         
+        /**
+         * Part that points at lines of a file on the server's disk instead of carrying its content.
+         */
+        public static MessagePart file(String absolutePath, String filename, int startLine, int endLine) {
+            MessagePart part = new MessagePart("file", null);
+            part.mime = "text/plain";
+            part.filename = filename;
+            String url = Path.of(absolutePath).toUri().toString();
+            part.url = startLine > 0 ? url + "?start=" + startLine + "&end=" + endLine : url;
+            return part;
+        }
+        
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
         
         public String getText() { return text; }
         public void setText(String text) { this.text = text; }
+        
+        public String getMime() { return mime; }
+        public String getFilename() { return filename; }
+        public String getUrl() { return url; }
     }
     
     public static class ModelConfig {
@@ -63,6 +94,10 @@ public class OpenCodeRequest {
         parts.add(new MessagePart("text", text));
     }
     
+    public void addFilePart(String absolutePath, String filename, int startLine, int endLine) {
+        parts.add(MessagePart.file(absolutePath, filename, startLine, endLine));
+    }
+    
     public void setModel(String providerId, String modelId) {
         this.model = new ModelConfig(providerId, modelId);
     }
@@ -73,4 +108,7 @@ public class OpenCodeRequest {
     
     public ModelConfig getModel() { return model; }
     public void setModel(ModelConfig model) { this.model = model; }
+    
+    public String getSystem() { return system; }
+    public void setSystem(String system) { this.system = system; }
 }
\ No newline at end of file
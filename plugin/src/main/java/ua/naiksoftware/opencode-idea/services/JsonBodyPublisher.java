@@ -0,0 +1,39 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.google.gson.Gson;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request bodies that Gson encodes straight to UTF-8 bytes, instead of building the JSON as a String and then
+ * encoding a second copy.
+ */
+final class JsonBodyPublisher {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private JsonBodyPublisher() {
+    }
+
+    /**
+     * The value is serialized once, up front, so the body has a fixed Content-Length and a retried request
+     * sends the same bytes without serializing again.
+     */
+    @NotNull
+    static HttpRequest.BodyPublisher of(@NotNull Gson gson, @NotNull Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+        try (Writer writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+            gson.toJson(value, value.getClass(), writer);
+        } catch (IOException e) {
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return HttpRequest.BodyPublishers.ofByteArray(bytes.toByteArray());
+    }
+}
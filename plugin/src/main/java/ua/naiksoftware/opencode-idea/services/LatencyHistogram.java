@@ -0,0 +1,66 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Counts durations in fixed buckets. Cheap enough to keep for the lifetime of the IDE; percentiles are
+ * reported as the upper bound of the bucket they fall in.
+ */
+public final class LatencyHistogram {
+    private static final long[] BUCKET_BOUNDS_MS = {50, 100, 250, 500, 1000, 2000, 5000, 10_000, 30_000};
+
+    // Guarded by this; the last bucket counts everything above the largest bound
+    private final long[] counts = new long[BUCKET_BOUNDS_MS.length + 1];
+    private long total;
+    private long maxMs;
+
+    public synchronized void record(long durationMs) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MS.length && durationMs > BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        total++;
+        maxMs = Math.max(maxMs, durationMs);
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0 to 100), the largest duration seen if that is
+     * above every bound, or 0 while nothing was recorded.
+     */
+    public synchronized long getPercentileMs(double percentile) {
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i < BUCKET_BOUNDS_MS.length ? Math.min(BUCKET_BOUNDS_MS[i], maxMs) : maxMs;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Non-empty buckets, e.g. "<=250ms: 3, <=500ms: 1".
+     */
+    @NotNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(i < BUCKET_BOUNDS_MS.length ? "<=" + BUCKET_BOUNDS_MS[i] : ">" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1])
+                .append("ms: ").append(counts[i]);
+        }
+        return text.length() == 0 ? "empty" : text.toString();
+    }
+}
@@ -0,0 +1,284 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the provider/model for a request from user-defined routes, and steers away from models that have
+ * recently been slow or failing.
+ * <p>
+ * Routes are written one per line, the first matching line wins:
+ * <pre>
+ * explain max 2000 anthropic/claude-3-5-haiku-latest
+ * chat anthropic/claude-3-5-sonnet-latest fallback openai/gpt-4o
+ * * anthropic/claude-3-5-sonnet-latest
+ * </pre>
+ * A line names a {@link RequestKind} key (or {@code *} for any), an optional upper bound on the estimated
+ * input tokens, the model, and an optional fallback. Requests no line matches use the configured default model.
+ * <p>
+ * The last {@link #WINDOW_SIZE} requests per model are kept. The fallback is chosen when the primary's error rate
+ * reached {@link #MAX_ERROR_RATE} or its p95 latency is more than {@link #DEGRADED_P95_FACTOR} times the fallback's.
+ * A model that is being avoided still gets a request every {@link #PROBE_INTERVAL_MS}, so it can recover.
+ */
+final class ModelRouter {
+    private static final Logger LOG = Logger.getInstance(ModelRouter.class);
+    private static final int WINDOW_SIZE = 50;
+    private static final int MIN_SAMPLES = 5;
+    private static final double MAX_ERROR_RATE = 0.5;
+    private static final double DEGRADED_P95_FACTOR = 2.0;
+    private static final long PROBE_INTERVAL_MS = 60_000;
+
+    // Guarded by this
+    private final Map<String, ModelStats> statsByModel = new HashMap<>();
+    @Nullable
+    private String parsedRoutesText;
+    private List<Route> routes = Collections.emptyList();
+
+    /**
+     * A provider/model pair as opencode names them.
+     */
+    static final class ModelRef {
+        private final String providerId;
+        private final String modelId;
+
+        ModelRef(@NotNull String providerId, @NotNull String modelId) {
+            this.providerId = providerId;
+            this.modelId = modelId;
+        }
+
+        /**
+         * Parses {@code provider/model}; the model ID itself may contain slashes.
+         */
+        @Nullable
+        static ModelRef parse(@NotNull String text) {
+            int slash = text.indexOf('/');
+            if (slash <= 0 || slash == text.length() - 1) {
+                return null;
+            }
+            return new ModelRef(text.substring(0, slash), text.substring(slash + 1));
+        }
+
+        @NotNull
+        String getProviderId() { return providerId; }
+
+        @NotNull
+        String getModelId() { return modelId; }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ModelRef && ((ModelRef) o).providerId.equals(providerId) && ((ModelRef) o).modelId.equals(modelId);
+        }
+
+        @Override
+        public int hashCode() {
+            return providerId.hashCode() * 31 + modelId.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return providerId + "/" + modelId;
+        }
+    }
+
+    private static final class Route {
+        @Nullable
+        private final RequestKind kind;
+        private final int maxTokens;
+        private final ModelRef primary;
+        @Nullable
+        private final ModelRef fallback;
+
+        Route(@Nullable RequestKind kind, int maxTokens, @NotNull ModelRef primary, @Nullable ModelRef fallback) {
+            this.kind = kind;
+            this.maxTokens = maxTokens;
+            this.primary = primary;
+            this.fallback = fallback;
+        }
+
+        boolean matches(@NotNull RequestKind requestKind, int estimatedTokens) {
+            return (kind == null || kind == requestKind) && estimatedTokens <= maxTokens;
+        }
+    }
+
+    /**
+     * Outcomes of the most recent requests to one model.
+     */
+    private static final class ModelStats {
+        private final long[] latencies = new long[WINDOW_SIZE];
+        private final boolean[] failures = new boolean[WINDOW_SIZE];
+        private int count;
+        private int next;
+        private long lastSampleTime;
+
+        void add(long latencyMs, boolean failed) {
+            latencies[next] = latencyMs;
+            failures[next] = failed;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+            lastSampleTime = System.currentTimeMillis();
+        }
+
+        double errorRate() {
+            int failed = 0;
+            for (int i = 0; i < count; i++) {
+                if (failures[i]) {
+                    failed++;
+                }
+            }
+            return count == 0 ? 0 : (double) failed / count;
+        }
+
+        /**
+         * p95 latency of the successful requests, or -1 if there were none.
+         */
+        long p95() {
+            long[] succeeded = new long[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (!failures[i]) {
+                    succeeded[n++] = latencies[i];
+                }
+            }
+            if (n == 0) {
+                return -1;
+            }
+            Arrays.sort(succeeded, 0, n);
+            return succeeded[(int) Math.ceil(n * 0.95) - 1];
+        }
+    }
+
+    /**
+     * Models to try for a request, in order: the chosen model, then the other one of the route if it has a fallback.
+     * Models missing from {@code availableModels} (provider -> model IDs) are left out; pass null if unknown.
+     * Empty if no route matches, in which case the configured default model is used.
+     */
+    @NotNull
+    synchronized List<ModelRef> select(@NotNull String routesText, @NotNull RequestKind kind, int estimatedTokens,
+                                       @Nullable Map<String, Set<String>> availableModels) {
+        for (Route route : parseRoutes(routesText)) {
+            if (!route.matches(kind, estimatedTokens)) {
+                continue;
+            }
+            List<ModelRef> candidates = new ArrayList<>(2);
+            addIfAvailable(candidates, route.primary, availableModels);
+            addIfAvailable(candidates, route.fallback, availableModels);
+            if (candidates.size() == 2 && shouldAvoid(candidates.get(0), candidates.get(1))) {
+                LOG.info("Routing " + kind.getKey() + " request to " + candidates.get(1) + " instead of degraded " + candidates.get(0));
+                Collections.reverse(candidates);
+            }
+            if (!candidates.isEmpty()) {
+                return candidates;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    synchronized void recordSuccess(@NotNull ModelRef model, long latencyMs) {
+        statsByModel.computeIfAbsent(model.toString(), key -> new ModelStats()).add(latencyMs, false);
+    }
+
+    synchronized void recordFailure(@NotNull ModelRef model, long latencyMs) {
+        statsByModel.computeIfAbsent(model.toString(), key -> new ModelStats()).add(latencyMs, true);
+    }
+
+    private boolean shouldAvoid(@NotNull ModelRef primary, @NotNull ModelRef fallback) {
+        ModelStats primaryStats = statsByModel.get(primary.toString());
+        if (primaryStats == null || primaryStats.count < MIN_SAMPLES
+                || System.currentTimeMillis() - primaryStats.lastSampleTime > PROBE_INTERVAL_MS) {
+            return false;
+        }
+        ModelStats fallbackStats = statsByModel.get(fallback.toString());
+        if (fallbackStats != null && fallbackStats.count >= MIN_SAMPLES && fallbackStats.errorRate() >= MAX_ERROR_RATE) {
+            // Both are failing; stay with the preferred one
+            return false;
+        }
+        if (primaryStats.errorRate() >= MAX_ERROR_RATE) {
+            return true;
+        }
+        long primaryP95 = primaryStats.p95();
+        long fallbackP95 = fallbackStats != null && fallbackStats.count >= MIN_SAMPLES ? fallbackStats.p95() : -1;
+        return primaryP95 > 0 && fallbackP95 > 0 && primaryP95 > fallbackP95 * DEGRADED_P95_FACTOR;
+    }
+
+    private static void addIfAvailable(@NotNull List<ModelRef> candidates, @Nullable ModelRef model,
+                                       @Nullable Map<String, Set<String>> availableModels) {
+        if (model == null) {
+            return;
+        }
+        Set<String> models = availableModels != null ? availableModels.get(model.getProviderId()) : null;
+        if (availableModels != null && (models == null || !models.contains(model.getModelId()))) {
+            LOG.debug("Skipping model route to " + model + ": the server does not offer it");
+            return;
+        }
+        candidates.add(model);
+    }
+
+    @NotNull
+    private List<Route> parseRoutes(@NotNull String text) {
+        if (text.equals(parsedRoutesText)) {
+            return routes;
+        }
+        List<Route> parsed = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            Route route = parseRoute(trimmed.split("\\s+"));
+            if (route != null) {
+                parsed.add(route);
+            } else {
+                LOG.warn("Ignoring malformed model route: " + trimmed);
+            }
+        }
+        parsedRoutesText = text;
+        routes = parsed;
+        return parsed;
+    }
+
+    @Nullable
+    private static Route parseRoute(@NotNull String[] tokens) {
+        int i = 0;
+        RequestKind kind = null;
+        if (!tokens[i].equals("*")) {
+            kind = RequestKind.fromKey(tokens[i]);
+            if (kind == null) {
+                return null;
+            }
+        }
+        i++;
+        int maxTokens = Integer.MAX_VALUE;
+        if (i + 1 < tokens.length && tokens[i].equals("max")) {
+            try {
+                maxTokens = Integer.parseInt(tokens[i + 1]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            i += 2;
+        }
+        ModelRef primary = i < tokens.length ? ModelRef.parse(tokens[i++]) : null;
+        if (primary == null) {
+            return null;
+        }
+        ModelRef fallback = null;
+        if (i < tokens.length) {
+            if (i + 2 != tokens.length || !tokens[i].equals("fallback")) {
+                return null;
+            }
+            fallback = ModelRef.parse(tokens[i + 1]);
+            if (fallback == null) {
+                return null;
+            }
+        }
+        return new Route(kind, maxTokens, primary, fallback);
+    }
+}
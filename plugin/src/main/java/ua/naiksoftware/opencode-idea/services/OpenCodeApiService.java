@@ -1,7 +1,10 @@
 package ua.naiksoftware.opencodeidea.services;
 
 import com.intellij.openapi.components.Service;
+import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
 
 import java.util.concurrent.CompletableFuture;
 
@@ -10,10 +13,20 @@ public interface OpenCodeApiService {
     
     CompletableFuture<String> sendRequest(@NotNull String prompt, @NotNull String code);
     
+    /**
+     * Sends the prompt with optional code to the project's server. Code the session has already seen is
+     * sent as a reference or a diff instead of in full.
+     */
+    CompletableFuture<String> sendRequest(@NotNull String prompt, @Nullable CodeSnippet code, @Nullable Project project);
+    
     CompletableFuture<String> optimizeCode(@NotNull String code);
     
+    CompletableFuture<String> optimizeCode(@NotNull CodeSnippet code, @NotNull Project project);
+    
     CompletableFuture<String> explainCode(@NotNull String code);
     
+    CompletableFuture<String> explainCode(@NotNull CodeSnippet code, @NotNull Project project);
+    
     boolean isConfigured();
 
     void setApiUrl(@NotNull String apiUrl);
@@ -1,7 +1,11 @@
 package ua.naiksoftware.opencodeidea.services;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
@@ -9,16 +13,29 @@ import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
 import ua.naiksoftware.opencodeidea.model.OpenCodeMessage;
 import ua.naiksoftware.opencodeidea.model.OpenCodeRequest;
 import ua.naiksoftware.opencodeidea.model.OpenCodeSession;
+import ua.naiksoftware.opencodeidea.ui.TokenEstimator;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.ConnectException;
 import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -26,13 +43,27 @@ import java.util.concurrent.ConcurrentHashMap;
 public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
     
     private static final Logger LOG = Logger.getInstance(OpenCodeApiServiceImpl.class);
+    private static final long AVAILABLE_MODELS_TTL_MS = 5 * 60_000;
+    // Raised while the server resolves the model, before it stores the user message, so a fallback can resend it
+    private static final Set<String> MODEL_RESOLUTION_ERRORS = Set.of("ProviderModelNotFoundError", "ProviderInitError");
     
     private final HttpClient httpClient;
     private final Gson gson;
-    private final ConcurrentHashMap<String, String> sessionCache;
+    // Server working directory -> session that follow-up requests continue; kept across server restarts,
+    // since the server stores its sessions on disk
+    private final ConcurrentHashMap<String, String> sessionIdByDirectory = new ConcurrentHashMap<>();
+    private final SharedCodeTracker sharedCode = new SharedCodeTracker();
+    // Session -> prompt cache usage reported by the provider so far
+    private final ConcurrentHashMap<String, PromptCacheStats> cacheStatsBySession = new ConcurrentHashMap<>();
+    private final ModelRouter modelRouter = new ModelRouter();
     
+    // Models offered by the server, re-listed at most every AVAILABLE_MODELS_TTL_MS; guarded by availableModelsLock
+    private final Object availableModelsLock = new Object();
     @Nullable
-    private String currentSessionId;
+    private Map<String, Set<String>> availableModels;
+    @Nullable
+    private String availableModelsServerUrl;
+    private long availableModelsFetchedAt;
     
     @Nullable
     private String currentMessageId;
@@ -45,7 +76,6 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
                 .connectTimeout(Duration.ofSeconds(30))
                 .build();
         this.gson = new Gson();
-        this.sessionCache = new ConcurrentHashMap<>();
     }
     
     @Override
@@ -54,6 +84,21 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
     }
     
     public CompletableFuture<String> sendRequestWithProject(@NotNull String prompt, @NotNull String code, @Nullable Project project) {
+        return sendRequest(prompt, code.isEmpty() ? null : new CodeSnippet(code), project);
+    }
+    
+    @Override
+    public CompletableFuture<String> sendRequest(@NotNull String prompt, @Nullable CodeSnippet code, @Nullable Project project) {
+        return sendRequest(RequestKind.ASK, prompt, code, null, project);
+    }
+    
+    /**
+     * Sends a question with optional code and earlier conversation. The server session, if one is continued,
+     * already holds earlier turns, so {@code history} is only needed when a new session starts.
+     * The model is chosen by the routes configured for {@code kind}.
+     */
+    public CompletableFuture<String> sendRequest(@NotNull RequestKind kind, @NotNull String prompt, @Nullable CodeSnippet code,
+                                                 @Nullable String history, @Nullable Project project) {
         return CompletableFuture.supplyAsync(() -> {
             try {
                 // Ensure project is available
@@ -62,17 +107,21 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
                 }
                 
                 // Start local server for the project
-                String serverUrl = ensureServerRunning(project);
-                if (serverUrl == null) {
-                    throw new IllegalStateException("Failed to start OpenCode server. Please ensure 'opencode' is installed and available in PATH or project directory.");
+                String directory = sessionKey(project);
+                OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
+                serverManager.requestStarted();
+                try {
+                    return withReplay(project, serverUrl -> {
+                        // Initialize event service if not already done
+                        initializeEventService(project, serverUrl);
+                        
+                        // Use local server
+                        return sendRequestToServer(kind, prompt, code, history, serverUrl, directory);
+                    });
+                } finally {
+                    serverManager.requestFinished();
                 }
                 
-                // Initialize event service if not already done
-                initializeEventService(project, serverUrl);
-                
-                // Use local server
-                return sendRequestToServer(prompt, code, serverUrl);
-                
             } catch (Exception e) {
                 LOG.error("Error calling OpenCode API", e);
                 throw new RuntimeException("API request failed: " + e.getMessage(), e);
@@ -82,13 +131,18 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
     
     @Nullable
     private String ensureServerRunning(@NotNull Project project) {
+        OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
+        if (serverManager.isCrashLooping()) {
+            throw new IllegalStateException("OpenCode server keeps failing and is no longer restarted automatically. "
+                    + "Restart it with Tools | OpenCode | Restart OpenCode Server.");
+        }
         try {
-            OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
             OpenCodeServerManager.ServerStatus status = serverManager.getStatus();
             
             if (status == OpenCodeServerManager.ServerStatus.RUNNING) {
                 return serverManager.getServerUrl();
-            } else if (status == OpenCodeServerManager.ServerStatus.STOPPED || status == OpenCodeServerManager.ServerStatus.ERROR) {
+            } else {
+                // Also joins a startup that is already in progress
                 CompletableFuture<Boolean> startFuture = serverManager.startServer();
                 // Wait for server to start (with timeout)
                 Boolean started = startFuture.get(60, java.util.concurrent.TimeUnit.SECONDS);
@@ -102,70 +156,224 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
         return null;
     }
     
-    private String sendRequestToServer(@NotNull String prompt, @NotNull String code, @NotNull String serverUrl) throws Exception {
+    /**
+     * Server operation that {@link #withReplay} may run a second time, on the server that replaced the first one.
+     */
+    private interface ServerCall<T> {
+        T call(@NotNull String serverUrl) throws IOException, InterruptedException;
+    }
+    
+    /**
+     * Runs the call against the project's server. If the server refused the connection it never saw the request,
+     * so once the server is back, or has been replaced after a crash, the call is replayed there. That also holds
+     * for a prompt, which is otherwise never sent twice.
+     */
+    private <T> T withReplay(@NotNull Project project, @NotNull ServerCall<T> call) throws IOException, InterruptedException {
+        OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
+        serverManager.recordUse();
+        String serverUrl = requireServer(project);
+        T result;
+        try {
+            result = call.call(serverUrl);
+        } catch (ConnectException | HttpConnectTimeoutException e) {
+            LOG.info("OpenCode server at " + serverUrl + " did not accept the connection, replaying once it is back: " + e.getMessage());
+            serverManager.reportUnreachable(serverUrl);
+            result = call.call(requireServer(project));
+        }
+        // Whatever the response said, the server answered
+        serverManager.recordActivity();
+        return result;
+    }
+    
+    @NotNull
+    private static String sessionKey(@NotNull Project project) {
+        return OpenCodeServerRegistry.canonical(OpenCodeServerManager.getInstance(project).getProjectPath());
+    }
+    
+    private String sendRequestToServer(@NotNull RequestKind kind, @NotNull String prompt, @Nullable CodeSnippet code,
+                                       @Nullable String history, @NotNull String serverUrl, @NotNull String directory)
+            throws IOException, InterruptedException {
         // Create session URL using the provided server URL
         String sessionUrl = serverUrl + "/session";
-        String sessionId = getOrCreateSessionForServer(sessionUrl, serverUrl);
+        String sessionId = getOrCreateSessionForServer(sessionUrl, directory);
+        try {
+            return sendMessage(kind, prompt, code, history, serverUrl, sessionId);
+        } catch (SessionNotFoundException e) {
+            // The server no longer knows the session (e.g. its data was reset); start over with full code
+            LOG.info("OpenCode session " + sessionId + " is gone, creating a new one");
+            sessionIdByDirectory.remove(directory, sessionId);
+            sharedCode.forgetSession(sessionId);
+            cacheStatsBySession.remove(sessionId);
+            return sendMessage(kind, prompt, code, history, serverUrl, getOrCreateSessionForServer(sessionUrl, directory));
+        }
+    }
+    
+    private String sendMessage(@NotNull RequestKind kind, @NotNull String prompt, @Nullable CodeSnippet code, @Nullable String history,
+                               @NotNull String serverUrl, @NotNull String sessionId) throws IOException, InterruptedException {
+        // Code the session has already seen goes out as a reference or a diff
+        SharedCodeTracker.Rendered renderedCode = code != null ? sharedCode.render(sessionId, code) : null;
         
-        // Prepare the request
+        // Prepare the request, stable content first so the provider can reuse its prompt cache
         OpenCodeConfig config = OpenCodeConfig.getInstance();
-        String messageText = code.isEmpty() ? prompt : prompt + "\n\nCode:\n" + code;
-        OpenCodeRequest request = new OpenCodeRequest(messageText, config.getProviderId(), config.getModelId());
+        PromptAssembler assembler = new PromptAssembler()
+                .instructions(config.getPromptInstructions())
+                .code(renderedCode)
+                .history(history)
+                .question(prompt);
+        List<ModelRouter.ModelRef> models = selectModels(kind, prompt, renderedCode, history, serverUrl);
         
-        // Send message to session
+        // Send message to session; a model that rejects the request hands over to the route's fallback
         String messageUrl = serverUrl + "/session/" + sessionId + "/message";
-        HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(messageUrl))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString(gson.toJson(request)))
-                .timeout(Duration.ofSeconds(config.getTimeoutSeconds()))
-                .build();
-        
-        HttpResponse<String> response = httpClient.send(httpRequest, 
-                HttpResponse.BodyHandlers.ofString());
-        
-        if (response.statusCode() == 200) {
-            OpenCodeMessage message = gson.fromJson(response.body(), OpenCodeMessage.class);
-            // Store the message ID for streaming updates
-            currentMessageId = message.getInfo().getId();
-            return message.getTextContent();
-        } else {
-            LOG.warn("API request failed with status: " + response.statusCode() + ", body: " + response.body());
-            throw new IOException("API request failed with status: " + response.statusCode());
+        for (int attempt = 0; ; attempt++) {
+            ModelRouter.ModelRef model = models.get(attempt);
+            OpenCodeRequest request = assembler.build(model.getProviderId(), model.getModelId());
+            HttpRequest httpRequest = HttpRequest.newBuilder()
+                    .uri(URI.create(messageUrl))
+                    .header("Content-Type", "application/json")
+                    .POST(JsonBodyPublisher.of(gson, request))
+                    .timeout(Duration.ofSeconds(config.getTimeoutSeconds()))
+                    .build();
+            
+            long startTime = System.currentTimeMillis();
+            HttpResponse<String> response;
+            try {
+                response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+            } catch (ConnectException | HttpConnectTimeoutException e) {
+                // Never reached the server, so not the model's fault; the caller replays it
+                throw e;
+            } catch (IOException e) {
+                // Not retried: the server may already be working on the message
+                modelRouter.recordFailure(model, System.currentTimeMillis() - startTime);
+                throw e;
+            }
+            long latency = System.currentTimeMillis() - startTime;
+            
+            if (response.statusCode() == 200) {
+                modelRouter.recordSuccess(model, latency);
+                OpenCodeMessage message = gson.fromJson(response.body(), OpenCodeMessage.class);
+                // Store the message ID for streaming updates
+                currentMessageId = message.getInfo().getId();
+                if (renderedCode != null) {
+                    renderedCode.markDelivered();
+                }
+                OpenCodeMessage.MessageInfo.TokenUsage usage = message.getInfo().getTokens();
+                cacheStatsBySession.compute(sessionId, (id, stats) -> (stats != null ? stats : PromptCacheStats.EMPTY).plus(usage));
+                return message.getTextContent();
+            } else if (response.statusCode() == 404) {
+                throw new SessionNotFoundException(sessionId);
+            }
+            LOG.warn("API request to " + model + " failed with status: " + response.statusCode() + ", body: " + response.body());
+            String error = errorName(response.body());
+            boolean modelUnusable = error != null && MODEL_RESOLUTION_ERRORS.contains(error);
+            // Other client errors come from the request itself and say nothing about the model
+            if (modelUnusable || response.statusCode() >= 500) {
+                modelRouter.recordFailure(model, latency);
+            }
+            // Any other error may come after the server stored the user message, and a retry would add it twice
+            if (!modelUnusable || attempt + 1 >= models.size()) {
+                throw new IOException("API request failed with status: " + response.statusCode());
+            }
+            LOG.info("Retrying with fallback model " + models.get(attempt + 1));
         }
     }
     
-    private String getOrCreateSession() throws IOException, InterruptedException {
-        if (currentSessionId != null && sessionCache.containsKey(currentSessionId)) {
-            return currentSessionId;
-        }
-        
+    /**
+     * Models to try for the request in order, falling back to the configured default when no route matches.
+     */
+    @NotNull
+    private List<ModelRouter.ModelRef> selectModels(@NotNull RequestKind kind, @NotNull String prompt,
+                                                    @Nullable SharedCodeTracker.Rendered renderedCode, @Nullable String history,
+                                                    @NotNull String serverUrl) {
         OpenCodeConfig config = OpenCodeConfig.getInstance();
-        
-        // Create new session
-        HttpRequest httpRequest = HttpRequest.newBuilder()
-                .uri(URI.create(config.getSessionUrl()))
-                .header("Content-Type", "application/json")
-                .POST(HttpRequest.BodyPublishers.ofString("{}"))
-                .timeout(Duration.ofSeconds(config.getTimeoutSeconds()))
-                .build();
-        
-        HttpResponse<String> response = httpClient.send(httpRequest, 
-                HttpResponse.BodyHandlers.ofString());
-        
-        if (response.statusCode() == 200) {
-            OpenCodeSession session = gson.fromJson(response.body(), OpenCodeSession.class);
-            currentSessionId = session.getId();
-            sessionCache.put(currentSessionId, session.getTitle());
-            LOG.info("Created new OpenCode session: " + currentSessionId);
-            return currentSessionId;
-        } else {
-            throw new IOException("Failed to create session. Status: " + response.statusCode() + ", Body: " + response.body());
+        String routes = config.getModelRoutes();
+        if (!routes.isBlank()) {
+            int estimatedTokens = TokenEstimator.estimate(prompt)
+                    + (renderedCode != null ? TokenEstimator.estimate(renderedCode.getText()) : 0)
+                    + (renderedCode != null && renderedCode.getAttachment() != null ? TokenEstimator.estimate(renderedCode.getAttachment().getText()) : 0)
+                    + (history != null ? TokenEstimator.estimate(history) : 0);
+            List<ModelRouter.ModelRef> models = modelRouter.select(routes, kind, estimatedTokens, getAvailableModels(serverUrl));
+            if (!models.isEmpty()) {
+                return models;
+            }
+        }
+        return List.of(new ModelRouter.ModelRef(config.getProviderId(), config.getModelId()));
+    }
+    
+    /**
+     * Name of the error in an error response body ({@code {"name": ..., "data": ...}}), or null.
+     */
+    @Nullable
+    private static String errorName(@Nullable String body) {
+        if (body == null || body.isBlank()) {
+            return null;
+        }
+        try {
+            JsonElement element = JsonParser.parseString(body);
+            if (element.isJsonObject() && element.getAsJsonObject().has("name")) {
+                JsonElement name = element.getAsJsonObject().get("name");
+                return name.isJsonPrimitive() ? name.getAsString() : null;
+            }
+        } catch (RuntimeException e) {
+            // Not JSON, e.g. a proxy error page
+        }
+        return null;
+    }
+    
+    /**
+     * Provider ID -> model IDs the server offers, from {@code GET /config/providers}, or null if that failed.
+     * Cached per server; a failed listing is not retried until the cache expires either. The listing is fetched
+     * without holding a lock; callers that arrive meanwhile route without it.
+     */
+    @Nullable
+    private Map<String, Set<String>> getAvailableModels(@NotNull String serverUrl) {
+        synchronized (availableModelsLock) {
+            if (serverUrl.equals(availableModelsServerUrl) && System.currentTimeMillis() - availableModelsFetchedAt < AVAILABLE_MODELS_TTL_MS) {
+                return availableModels;
+            }
+            availableModelsServerUrl = serverUrl;
+            availableModelsFetchedAt = System.currentTimeMillis();
+            availableModels = null;
+        }
+        Map<String, Set<String>> models = fetchAvailableModels(serverUrl);
+        synchronized (availableModelsLock) {
+            if (serverUrl.equals(availableModelsServerUrl)) {
+                availableModels = models;
+            }
+        }
+        return models;
+    }
+    
+    @Nullable
+    private Map<String, Set<String>> fetchAvailableModels(@NotNull String serverUrl) {
+        try {
+            HttpResponse<String> response = httpClient.send(newGetRequest(serverUrl + "/config/providers"), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                LOG.warn("Failed to list models. Status: " + response.statusCode());
+                return null;
+            }
+            JsonObject body = JsonParser.parseString(response.body()).getAsJsonObject();
+            Map<String, Set<String>> models = new HashMap<>();
+            for (JsonElement provider : body.getAsJsonArray("providers")) {
+                JsonObject providerObject = provider.getAsJsonObject();
+                JsonObject providerModels = providerObject.getAsJsonObject("models");
+                models.put(providerObject.get("id").getAsString(),
+                        providerModels != null ? new HashSet<>(providerModels.keySet()) : new HashSet<>());
+            }
+            return models;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to list models", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return null;
     }
     
-    private String getOrCreateSessionForServer(@NotNull String sessionUrl, @NotNull String serverUrl) throws IOException, InterruptedException {
-        // For local server, always create a new session (could be improved with caching)
+    private synchronized String getOrCreateSessionForServer(@NotNull String sessionUrl, @NotNull String directory) throws IOException, InterruptedException {
+        // Follow-up requests continue the same session so the server keeps the conversation and shared code
+        String existing = sessionIdByDirectory.get(directory);
+        if (existing != null) {
+            return existing;
+        }
         OpenCodeConfig config = OpenCodeConfig.getInstance();
         
         // Create new session
@@ -181,22 +389,117 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
         
         if (response.statusCode() == 200) {
             OpenCodeSession session = gson.fromJson(response.body(), OpenCodeSession.class);
+            sessionIdByDirectory.put(directory, session.getId());
+            LOG.info("Created new OpenCode session: " + session.getId());
             return session.getId();
         } else {
             throw new IOException("Failed to create session. Status: " + response.statusCode() + ", Body: " + response.body());
         }
     }
     
+    /**
+     * Lists the sessions known to the project's server. Only metadata is transferred.
+     */
+    public CompletableFuture<List<OpenCodeSession>> listSessions(@NotNull Project project) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpResponse<String> response = withReplay(project, serverUrl -> httpClient.send(newGetRequest(serverUrl + "/session"),
+                        HttpResponse.BodyHandlers.ofString()));
+                if (response.statusCode() != 200) {
+                    throw new IOException("Failed to list sessions. Status: " + response.statusCode());
+                }
+                List<OpenCodeSession> sessions = gson.fromJson(response.body(), new TypeToken<List<OpenCodeSession>>() {}.getType());
+                return sessions != null ? sessions : new ArrayList<>();
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException("Failed to list sessions: " + e.getMessage(), e);
+            }
+        });
+    }
+    
+    /**
+     * Returns all messages of a session, oldest first. The endpoint has no paging, so callers fetch the list
+     * once and page through it locally. The body is parsed as a stream rather than buffered as one string.
+     */
+    public CompletableFuture<List<OpenCodeMessage>> listSessionMessages(@NotNull Project project, @NotNull String sessionId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpResponse<InputStream> response = withReplay(project, serverUrl -> httpClient.send(
+                        newGetRequest(serverUrl + "/session/" + sessionId + "/message"), HttpResponse.BodyHandlers.ofInputStream()));
+                try (JsonReader reader = new JsonReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+                    if (response.statusCode() != 200) {
+                        throw new IOException("Failed to list messages of session " + sessionId + ". Status: " + response.statusCode());
+                    }
+                    List<OpenCodeMessage> messages = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        messages.add(gson.fromJson(reader, OpenCodeMessage.class));
+                    }
+                    reader.endArray();
+                    return messages;
+                }
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException("Failed to load session messages: " + e.getMessage(), e);
+            }
+        });
+    }
+    
+    /**
+     * Fetches a single message with all of its parts.
+     */
+    public CompletableFuture<OpenCodeMessage> getSessionMessage(@NotNull Project project, @NotNull String sessionId, @NotNull String messageId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpResponse<String> response = withReplay(project, serverUrl -> httpClient.send(
+                        newGetRequest(serverUrl + "/session/" + sessionId + "/message/" + messageId), HttpResponse.BodyHandlers.ofString()));
+                if (response.statusCode() != 200) {
+                    throw new IOException("Failed to load message " + messageId + ". Status: " + response.statusCode());
+                }
+                return gson.fromJson(response.body(), OpenCodeMessage.class);
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException("Failed to load message: " + e.getMessage(), e);
+            }
+        });
+    }
+    
+    @NotNull
+    private String requireServer(@NotNull Project project) {
+        String serverUrl = ensureServerRunning(project);
+        if (serverUrl == null) {
+            throw new IllegalStateException("Failed to start OpenCode server. Please ensure 'opencode' is installed and available in PATH or project directory.");
+        }
+        return serverUrl;
+    }
+    
+    @NotNull
+    private HttpRequest newGetRequest(@NotNull String url) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Accept", "application/json")
+                .GET()
+                .timeout(Duration.ofSeconds(OpenCodeConfig.getInstance().getTimeoutSeconds()))
+                .build();
+    }
+    
     @Override
     public CompletableFuture<String> optimizeCode(@NotNull String code) {
         return sendRequest("Please optimize this code:", code);
     }
     
+    @Override
+    public CompletableFuture<String> optimizeCode(@NotNull CodeSnippet code, @NotNull Project project) {
+        return sendRequest(RequestKind.OPTIMIZE, "Please optimize this code:", code, null, project);
+    }
+    
     @Override
     public CompletableFuture<String> explainCode(@NotNull String code) {
         return sendRequest("Please explain what this code does:", code);
     }
     
+    @Override
+    public CompletableFuture<String> explainCode(@NotNull CodeSnippet code, @NotNull Project project) {
+        return sendRequest(RequestKind.EXPLAIN, "Please explain what this code does:", code, null, project);
+    }
+    
     @Override
     public boolean isConfigured() {
         // For local server management, we just need opencode to be available
@@ -211,14 +514,45 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
         LOG.info("API URL setting ignored - using automatic local server management");
     }
     
-    public void clearSession() {
-        currentSessionId = null;
-        sessionCache.clear();
-        LOG.info("OpenCode session cleared");
+    /**
+     * Whether requests for the project continue an existing server session, which already holds the earlier turns.
+     */
+    public boolean hasSession(@NotNull Project project) {
+        return currentSessionIdFor(project) != null;
+    }
+    
+    @Nullable
+    private String currentSessionIdFor(@NotNull Project project) {
+        return sessionIdByDirectory.get(sessionKey(project));
     }
     
-    public String getCurrentSessionId() {
-        return currentSessionId;
+    /**
+     * Id of the server session that requests for the project continue, or null before the first request.
+     */
+    @Nullable
+    public String getSessionId(@NotNull Project project) {
+        return currentSessionIdFor(project);
+    }
+    
+    /**
+     * Prompt cache usage of the session that requests for the project continue, or {@link PromptCacheStats#EMPTY}.
+     */
+    @NotNull
+    public PromptCacheStats getCacheStats(@NotNull Project project) {
+        String sessionId = currentSessionIdFor(project);
+        return sessionId != null ? cacheStatsBySession.getOrDefault(sessionId, PromptCacheStats.EMPTY) : PromptCacheStats.EMPTY;
+    }
+    
+    /**
+     * Makes the project's next request start a new server session. Sessions of other projects are kept.
+     */
+    public void clearSession(@NotNull Project project) {
+        String sessionId = sessionIdByDirectory.remove(sessionKey(project));
+        if (sessionId != null) {
+            sharedCode.forgetSession(sessionId);
+            cacheStatsBySession.remove(sessionId);
+        }
+        LOG.info("OpenCode session cleared for project: " + project.getName());
     }
     
     public String getCurrentMessageId() {
@@ -248,10 +582,18 @@ public final class OpenCodeApiServiceImpl implements OpenCodeApiService {
             eventService.disconnect();
             eventService = null;
         }
-        clearSession();
+        sessionIdByDirectory.clear();
+        sharedCode.clear();
+        cacheStatsBySession.clear();
         LOG.info("Disconnected from OpenCode services");
     }
     
+    private static final class SessionNotFoundException extends IOException {
+        SessionNotFoundException(@NotNull String sessionId) {
+            super("Session not found: " + sessionId);
+        }
+    }
+    
     public static OpenCodeApiServiceImpl getInstance() {
         return ApplicationManager.getApplication().getService(OpenCodeApiServiceImpl.class);
     }
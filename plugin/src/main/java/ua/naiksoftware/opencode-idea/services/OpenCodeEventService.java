@@ -1,5 +1,9 @@
 package ua.naiksoftware.opencodeidea.services;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
@@ -34,6 +38,7 @@ public final class OpenCodeEventService implements Disposable {
     private final AtomicBoolean isConnecting = new AtomicBoolean(false);
     private final AtomicReference<CompletableFuture<Void>> currentConnection = new AtomicReference<>();
     private final CopyOnWriteArrayList<EventListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean publishedConnected = new AtomicBoolean(false);
     
     @Nullable
     private String currentServerUrl;
@@ -42,6 +47,25 @@ public final class OpenCodeEventService implements Disposable {
     public OpenCodeEventService(@NotNull Project project) {
         this.project = project;
         this.scheduler = AppExecutorUtil.createBoundedScheduledExecutorService("OpenCode-SSE", 2);
+        
+        // Follow the server lifecycle instead of having callers poll for it
+        project.getMessageBus().connect(this).subscribe(OpenCodeStatusListener.TOPIC, new OpenCodeStatusListener() {
+            @Override
+            public void serverStatusChanged(@NotNull OpenCodeServerManager.ServerStatus oldStatus,
+                                            @NotNull OpenCodeServerManager.ServerStatus newStatus) {
+                if (newStatus == OpenCodeServerManager.ServerStatus.RUNNING) {
+                    connect(OpenCodeServerManager.getInstance(project).getServerUrl());
+                } else if (newStatus == OpenCodeServerManager.ServerStatus.STOPPED
+                        || newStatus == OpenCodeServerManager.ServerStatus.ERROR) {
+                    disconnect();
+                }
+            }
+            
+            @Override
+            public void serverReplaced(@NotNull String serverUrl) {
+                connect(serverUrl);
+            }
+        });
         LOG.info("OpenCode Event Service initialized for project: " + project.getName());
     }
     
@@ -56,23 +80,52 @@ public final class OpenCodeEventService implements Disposable {
         void onError(@NotNull Throwable error);
     }
     
+    /**
+     * An event from the stream. opencode sends its events as JSON {@code {"type": ..., "properties": {...}}}, which is
+     * parsed once, on the stream's reader thread, so that listeners on the EDT do not parse it again.
+     */
     public static class ServerEvent {
         private final String type;
         private final String data;
+        @Nullable
+        private final JsonObject properties;
         private final long timestamp;
         
         public ServerEvent(@NotNull String type, @NotNull String data) {
-            this.type = type;
+            JsonObject payload = parsePayload(data);
+            this.type = payload != null && payload.has("type") && payload.get("type").isJsonPrimitive()
+                    ? payload.get("type").getAsString() : type;
             this.data = data;
+            this.properties = payload != null && payload.has("properties") && payload.get("properties").isJsonObject()
+                    ? payload.getAsJsonObject("properties") : null;
             this.timestamp = System.currentTimeMillis();
         }
         
+        /**
+         * The type from the JSON payload, e.g. {@code message.part.updated}, or else the SSE event name.
+         */
         @NotNull
         public String getType() { return type; }
         
         @NotNull
         public String getData() { return data; }
         
+        /**
+         * The payload's {@code properties}, or null if the data is not such JSON. Listeners must not modify it.
+         */
+        @Nullable
+        public JsonObject getProperties() { return properties; }
+        
+        @Nullable
+        private static JsonObject parsePayload(@NotNull String data) {
+            try {
+                JsonElement element = JsonParser.parseString(data);
+                return element.isJsonObject() ? element.getAsJsonObject() : null;
+            } catch (JsonParseException e) {
+                return null;
+            }
+        }
+        
         public long getTimestamp() { return timestamp; }
         
         @Override
@@ -100,7 +153,7 @@ public final class OpenCodeEventService implements Disposable {
     }
     
     public void connect(@NotNull String serverUrl) {
-        if (serverUrl.equals(currentServerUrl) && isConnected.get()) {
+        if (serverUrl.equals(currentServerUrl) && (isConnected.get() || isConnecting.get())) {
             LOG.debug("Already connected to: " + serverUrl);
             return;
         }
@@ -156,6 +209,8 @@ public final class OpenCodeEventService implements Disposable {
         notifyConnectionStatus(true);
         
         LOG.info("SSE connection established successfully");
+        // Every line is a sign of life, so the server needs no health probes while events flow
+        OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
         
         try (BufferedReader reader = new BufferedReader(
                 new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
@@ -165,6 +220,7 @@ public final class OpenCodeEventService implements Disposable {
             String eventType = "message";
             
             while ((line = reader.readLine()) != null && isConnected.get()) {
+                serverManager.recordActivity();
                 if (line.isEmpty()) {
                     // Empty line indicates end of event
                     if (eventData.length() > 0) {
@@ -244,6 +300,10 @@ public final class OpenCodeEventService implements Disposable {
     }
     
     private void notifyConnectionStatus(boolean connected) {
+        if (publishedConnected.getAndSet(connected) != connected && !project.isDisposed()) {
+            project.getMessageBus().syncPublisher(OpenCodeStatusListener.TOPIC).eventStreamConnectionChanged(connected);
+        }
+        
         ApplicationManager.getApplication().invokeLater(() -> {
             for (EventListener listener : listeners) {
                 try {
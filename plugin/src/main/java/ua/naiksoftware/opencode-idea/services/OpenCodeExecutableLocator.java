@@ -0,0 +1,205 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Finds the opencode executable. The last path found is remembered application-wide together with its
+ * modification time, and reused without spawning anything as long as it is still an unchanged executable file.
+ * A path inside a project directory is only reused for that directory.
+ * <p>
+ * Otherwise all strategies run at once, but the result is picked in a fixed priority order, so the same
+ * executable is found however long each strategy takes: the PATH of the IDE, {@code which} in a login shell,
+ * which is the slowest but sees PATH changes made by shell profiles such as nvm's, well-known install
+ * locations, and the project directory.
+ */
+final class OpenCodeExecutableLocator {
+    private static final Logger LOG = Logger.getInstance(OpenCodeExecutableLocator.class);
+    private static final String CACHED_PATH_KEY = "opencode.executable.path";
+    private static final String CACHED_MTIME_KEY = "opencode.executable.mtime";
+    // Set when the cached path lies inside the project directory it was found for
+    private static final String CACHED_DIRECTORY_KEY = "opencode.executable.directory";
+    private static final long LOGIN_SHELL_TIMEOUT_SECONDS = 10;
+
+    private OpenCodeExecutableLocator() {
+    }
+
+    /**
+     * Absolute path of the executable, or null if none was found. Blocks while discovering.
+     */
+    @Nullable
+    static String locate(@NotNull String projectPath) {
+        PropertiesComponent properties = PropertiesComponent.getInstance();
+        String directory = new File(projectPath).getAbsolutePath();
+        String cachedPath = properties.getValue(CACHED_PATH_KEY);
+        String cachedDirectory = properties.getValue(CACHED_DIRECTORY_KEY);
+        if (cachedPath != null && (cachedDirectory == null || cachedDirectory.equals(directory))) {
+            File cached = new File(cachedPath);
+            if (cached.isFile() && cached.canExecute() && String.valueOf(cached.lastModified()).equals(properties.getValue(CACHED_MTIME_KEY))) {
+                LOG.debug("Using cached OpenCode executable: " + cachedPath);
+                return cachedPath;
+            }
+            LOG.info("Cached OpenCode executable " + cachedPath + " is gone or changed, searching again");
+        }
+
+        long start = System.currentTimeMillis();
+        String found = discover(projectPath).join();
+        if (found == null) {
+            // A path cached for another project directory stays valid there
+            if (cachedDirectory == null || cachedDirectory.equals(directory)) {
+                invalidate();
+            }
+            return null;
+        }
+        LOG.info("Found OpenCode executable " + found + " in " + (System.currentTimeMillis() - start) + "ms");
+        properties.setValue(CACHED_PATH_KEY, found);
+        properties.setValue(CACHED_MTIME_KEY, String.valueOf(new File(found).lastModified()));
+        properties.setValue(CACHED_DIRECTORY_KEY, found.startsWith(directory + File.separator) ? directory : null);
+        return found;
+    }
+
+    /**
+     * Forgets the cached path, e.g. after the executable failed to launch.
+     */
+    static void invalidate() {
+        PropertiesComponent properties = PropertiesComponent.getInstance();
+        properties.unsetValue(CACHED_PATH_KEY);
+        properties.unsetValue(CACHED_MTIME_KEY);
+        properties.unsetValue(CACHED_DIRECTORY_KEY);
+    }
+
+    @NotNull
+    private static CompletableFuture<String> discover(@NotNull String projectPath) {
+        // In priority order
+        List<Supplier<String>> strategies = List.of(
+            OpenCodeExecutableLocator::findOnPath,
+            OpenCodeExecutableLocator::findWithLoginShell,
+            OpenCodeExecutableLocator::findInKnownLocations,
+            () -> findInProject(projectPath)
+        );
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (Supplier<String> strategy : strategies) {
+            lookups.add(CompletableFuture.supplyAsync(strategy, AppExecutorUtil.getAppExecutorService()).exceptionally(throwable -> {
+                LOG.debug("OpenCode executable lookup failed", throwable);
+                return null;
+            }));
+        }
+        // A strategy's path is used once every strategy before it has found nothing
+        CompletableFuture<String> result = CompletableFuture.completedFuture(null);
+        for (CompletableFuture<String> lookup : lookups) {
+            result = result.thenCompose(path -> path != null ? CompletableFuture.completedFuture(path) : lookup);
+        }
+        return result;
+    }
+
+    @Nullable
+    private static String findOnPath() {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            String executable = findExecutable(new File(directory));
+            if (executable != null) {
+                return executable;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String findInKnownLocations() {
+        String userHome = System.getProperty("user.home");
+        List<File> directories = new ArrayList<>(List.of(
+            new File("/usr/local/bin"),
+            new File(userHome, "node_modules/.bin"),
+            new File("/opt/homebrew/bin"),
+            new File(userHome, ".local/bin"),
+            new File(userHome, ".opencode/bin")
+        ));
+        File[] nodeVersions = new File(userHome, ".nvm/versions/node").listFiles(File::isDirectory);
+        if (nodeVersions != null) {
+            for (File version : nodeVersions) {
+                directories.add(new File(version, "bin"));
+            }
+        }
+        for (File directory : directories) {
+            String executable = findExecutable(directory);
+            if (executable != null) {
+                return executable;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String findInProject(@NotNull String projectPath) {
+        for (String directory : new String[]{"", "bin", "node_modules/.bin"}) {
+            String executable = findExecutable(new File(projectPath, directory));
+            if (executable != null) {
+                return executable;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String findWithLoginShell() {
+        if (SystemInfo.isWindows) {
+            return null;
+        }
+        String shell = System.getenv("SHELL");
+        if (shell == null || !new File(shell).canExecute()) {
+            shell = "/bin/zsh";
+        }
+        Process process = null;
+        try {
+            // Login shell to get the full environment, including nvm
+            process = new ProcessBuilder(shell, "-l", "-c", "which opencode").redirectErrorStream(false).start();
+            if (!process.waitFor(LOGIN_SHELL_TIMEOUT_SECONDS, TimeUnit.SECONDS) || process.exitValue() != 0) {
+                return null;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line = reader.readLine();
+                if (line == null || line.trim().isEmpty()) {
+                    return null;
+                }
+                File executable = new File(line.trim());
+                return executable.isFile() && executable.canExecute() ? executable.getAbsolutePath() : null;
+            }
+        } catch (Exception e) {
+            LOG.debug("'which' in login shell failed: " + e.getMessage());
+            return null;
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+
+    @Nullable
+    private static String findExecutable(@NotNull File directory) {
+        String[] names = SystemInfo.isWindows ? new String[]{"opencode.exe", "opencode.cmd"} : new String[]{"opencode"};
+        for (String name : names) {
+            File candidate = new File(directory, name);
+            if (candidate.isFile() && candidate.canExecute()) {
+                return candidate.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,147 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a running server, mostly through signs of life it gives anyway: bytes on the event stream, answered API
+ * requests and the process still running. Only when those have been quiet for a whole interval does it send a
+ * probe, which reads nothing but a status line.
+ * <p>
+ * The interval starts at {@link #BASE_INTERVAL_MS} and doubles with every probe that finds an idle server alive,
+ * up to {@link #MAX_INTERVAL_MS}. A failed probe is repeated after {@link #RETRY_INTERVAL_MS}; the second failure in
+ * a row, or the process exiting, marks the server failed. In power save mode no probes are sent at all.
+ */
+final class OpenCodeHealthMonitor {
+    private static final Logger LOG = Logger.getInstance(OpenCodeHealthMonitor.class);
+    private static final long BASE_INTERVAL_MS = 10_000;
+    private static final long MAX_INTERVAL_MS = 120_000;
+    private static final long RETRY_INTERVAL_MS = 2000;
+    private static final int PROBE_TIMEOUT_MS = 2000;
+    private static final int FAILED_PROBES_BEFORE_ERROR = 2;
+
+    private final OpenCodeServerManager manager;
+    private final ScheduledExecutorService executor;
+    private volatile long lastActivityAt;
+
+    // Guarded by this
+    @Nullable
+    private OpenCodeServerProcess process;
+    @Nullable
+    private ScheduledFuture<?> nextCheck;
+    private long intervalMs = BASE_INTERVAL_MS;
+    private int failedProbes;
+
+    OpenCodeHealthMonitor(@NotNull OpenCodeServerManager manager, @NotNull ScheduledExecutorService executor) {
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts watching the process, replacing the one watched before.
+     */
+    synchronized void start(@NotNull OpenCodeServerProcess process) {
+        stop();
+        this.process = process;
+        intervalMs = BASE_INTERVAL_MS;
+        failedProbes = 0;
+        lastActivityAt = System.currentTimeMillis();
+        scheduleCheck();
+    }
+
+    synchronized void stop() {
+        process = null;
+        if (nextCheck != null) {
+            nextCheck.cancel(false);
+            nextCheck = null;
+        }
+    }
+
+    /**
+     * The server just showed it is alive, e.g. sent an event or answered a request.
+     */
+    void recordActivity() {
+        lastActivityAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Whether the server answers HTTP at all. Any status counts: a slow or failing endpoint still means a live server.
+     */
+    static boolean probe(@NotNull OpenCodeServerProcess process) {
+        String url = process.getUrl();
+        if (url == null) {
+            return false;
+        }
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url + "/app").openConnection();
+            connection.setConnectTimeout(PROBE_TIMEOUT_MS);
+            connection.setReadTimeout(PROBE_TIMEOUT_MS);
+            // Reads the status line only; the body is never transferred
+            return connection.getResponseCode() > 0;
+        } catch (IOException e) {
+            LOG.debug("OpenCode server probe failed: " + e.getMessage());
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private void scheduleCheck() {
+        long delay = PowerSaveMode.isEnabled() ? Math.max(intervalMs, MAX_INTERVAL_MS) : intervalMs;
+        nextCheck = executor.schedule(this::check, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void check() {
+        OpenCodeServerProcess watched;
+        long interval;
+        synchronized (this) {
+            watched = process;
+            interval = intervalMs;
+        }
+        if (watched == null) {
+            return;
+        }
+
+        boolean alive = watched.isAlive();
+        boolean quiet = System.currentTimeMillis() - lastActivityAt >= interval;
+        // In power save mode the process running is taken as enough
+        boolean probed = alive && quiet && !PowerSaveMode.isEnabled();
+        boolean healthy = alive && (!probed || probe(watched));
+
+        boolean failed = false;
+        synchronized (this) {
+            if (process != watched) {
+                return;
+            }
+            if (healthy) {
+                failedProbes = 0;
+                intervalMs = probed ? Math.min(MAX_INTERVAL_MS, intervalMs * 2) : BASE_INTERVAL_MS;
+            } else if (!alive || ++failedProbes >= FAILED_PROBES_BEFORE_ERROR) {
+                failed = true;
+                process = null;
+                nextCheck = null;
+            } else {
+                LOG.info("OpenCode server on port " + watched.getPort() + " did not answer a probe, checking again shortly");
+                intervalMs = RETRY_INTERVAL_MS;
+            }
+            if (!failed) {
+                scheduleCheck();
+            }
+        }
+        if (failed) {
+            manager.healthCheckFailed(watched);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.notification.NotificationAction;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
+
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the memory, CPU time and open files of a running server every {@link #SAMPLE_INTERVAL_SECONDS} and keeps
+ * the last {@link #HISTORY_SIZE} samples. Children of the launched process are included, since the launcher may
+ * only be a wrapper around the actual server.
+ * <p>
+ * Memory and open files are read from {@code /proc/<pid>} and are only known on Linux; CPU time comes from the JDK's
+ * process info, which reads the same place there. When memory exceeds {@link OpenCodeConfig#getServerMemoryLimitMb()}
+ * the user is warned once, or the server is restarted as soon as no prompt is in flight.
+ */
+final class OpenCodeResourceGovernor {
+    private static final Logger LOG = Logger.getInstance(OpenCodeResourceGovernor.class);
+    private static final long SAMPLE_INTERVAL_SECONDS = 30;
+    // Two hours at the sample interval
+    private static final int HISTORY_SIZE = 240;
+
+    private final Project project;
+    private final OpenCodeServerManager manager;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    private final ServerResourceSample[] history = new ServerResourceSample[HISTORY_SIZE];
+    private int historyCount;
+    private int historyNext;
+    @Nullable
+    private OpenCodeServerProcess process;
+    @Nullable
+    private ScheduledFuture<?> samplingTask;
+    // The last sample of the watched process, which CPU usage is measured against
+    @Nullable
+    private ServerResourceSample previous;
+    private boolean overLimit;
+
+    OpenCodeResourceGovernor(@NotNull Project project, @NotNull OpenCodeServerManager manager, @NotNull ScheduledExecutorService executor) {
+        this.project = project;
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts sampling the process, replacing the one sampled before. The history carries on across servers.
+     */
+    synchronized void start(@NotNull OpenCodeServerProcess process) {
+        stop();
+        this.process = process;
+        samplingTask = executor.scheduleWithFixedDelay(this::sample, 5, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    synchronized void stop() {
+        process = null;
+        previous = null;
+        overLimit = false;
+        if (samplingTask != null) {
+            samplingTask.cancel(false);
+            samplingTask = null;
+        }
+    }
+
+    /**
+     * Samples in the history, oldest first.
+     */
+    @NotNull
+    synchronized List<ServerResourceSample> getHistory() {
+        List<ServerResourceSample> samples = new ArrayList<>(historyCount);
+        for (int i = 0; i < historyCount; i++) {
+            samples.add(history[(historyNext - historyCount + i + HISTORY_SIZE) % HISTORY_SIZE]);
+        }
+        return samples;
+    }
+
+    @Nullable
+    synchronized ServerResourceSample getLatest() {
+        return historyCount == 0 ? null : history[(historyNext - 1 + HISTORY_SIZE) % HISTORY_SIZE];
+    }
+
+    private void sample() {
+        OpenCodeServerProcess watched;
+        ServerResourceSample before;
+        synchronized (this) {
+            watched = process;
+            before = previous;
+        }
+        if (watched == null || !watched.isAlive()) {
+            return;
+        }
+        ServerResourceSample sample = read(watched.getPid(), before);
+        if (sample == null) {
+            return;
+        }
+        synchronized (this) {
+            if (process != watched) {
+                return;
+            }
+            previous = sample;
+            history[historyNext] = sample;
+            historyNext = (historyNext + 1) % HISTORY_SIZE;
+            historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+        }
+        LOG.debug("OpenCode server resources: " + sample);
+        if (!project.isDisposed()) {
+            project.getMessageBus().syncPublisher(OpenCodeStatusListener.TOPIC).serverResourcesSampled(sample);
+        }
+        applyMemoryLimit(sample);
+    }
+
+    private void applyMemoryLimit(@NotNull ServerResourceSample sample) {
+        OpenCodeConfig config = OpenCodeConfig.getInstance();
+        long limitBytes = config.getServerMemoryLimitMb() * 1024L * 1024;
+        boolean exceeded = limitBytes > 0 && sample.getRssBytes() > limitBytes;
+        synchronized (this) {
+            // Act once per crossing; a server that drops below the limit again is forgiven
+            if (exceeded == overLimit) {
+                return;
+            }
+            overLimit = exceeded;
+        }
+        if (!exceeded) {
+            return;
+        }
+        String usage = ServerResourceSample.formatBytes(sample.getRssBytes()) + ", above the limit of " + config.getServerMemoryLimitMb() + " MB";
+        if (config.isRestartOnMemoryLimit()) {
+            LOG.warn("OpenCode server uses " + usage + ", restarting it between prompts");
+            manager.restartBetweenPrompts();
+        } else {
+            LOG.warn("OpenCode server uses " + usage);
+            SwingUtilities.invokeLater(() -> notifyOverLimit(usage));
+        }
+    }
+
+    private void notifyOverLimit(@NotNull String usage) {
+        if (project.isDisposed()) {
+            return;
+        }
+        NotificationGroupManager.getInstance().getNotificationGroup("OpenCode")
+            .createNotification("OpenCode server uses a lot of memory", "It uses " + usage + ".", NotificationType.WARNING)
+            .addAction(NotificationAction.createSimpleExpiring("Restart server", manager::restartServer))
+            .notify(project);
+    }
+
+    @Nullable
+    private static ServerResourceSample read(long pid, @Nullable ServerResourceSample previous) {
+        Optional<ProcessHandle> root = ProcessHandle.of(pid);
+        if (root.isEmpty()) {
+            return null;
+        }
+        List<ProcessHandle> processes = new ArrayList<>();
+        processes.add(root.get());
+        root.get().descendants().forEach(processes::add);
+
+        long rssBytes = 0;
+        long cpuTimeMs = 0;
+        int openFiles = 0;
+        for (ProcessHandle handle : processes) {
+            cpuTimeMs += handle.info().totalCpuDuration().map(Duration::toMillis).orElse(0L);
+            long processRss = readRssBytes(handle.pid());
+            int processFiles = countOpenFiles(handle.pid());
+            rssBytes = rssBytes < 0 || processRss < 0 ? -1 : rssBytes + processRss;
+            openFiles = openFiles < 0 || processFiles < 0 ? -1 : openFiles + processFiles;
+        }
+
+        long now = System.currentTimeMillis();
+        double cpuPercent = 0;
+        if (previous != null && now > previous.getTimestamp()) {
+            cpuPercent = Math.max(0, (cpuTimeMs - previous.getCpuTimeMs()) * 100.0 / (now - previous.getTimestamp()));
+        }
+        return new ServerResourceSample(now, rssBytes, cpuTimeMs, cpuPercent, openFiles);
+    }
+
+    private static long readRssBytes(long pid) {
+        if (!SystemInfo.isLinux) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"), StandardCharsets.UTF_8)) {
+                // e.g. "VmRSS:	  524288 kB"
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).replace("kB", "").trim()) * 1024;
+                }
+            }
+            return 0;
+        } catch (NoSuchFileException e) {
+            // Exited since it was listed
+            return 0;
+        } catch (IOException | NumberFormatException e) {
+            LOG.debug("Could not read memory usage of process " + pid + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static int countOpenFiles(long pid) {
+        if (!SystemInfo.isLinux) {
+            return -1;
+        }
+        String[] descriptors = new File("/proc/" + pid + "/fd").list();
+        return descriptors != null ? descriptors.length : 0;
+    }
+}
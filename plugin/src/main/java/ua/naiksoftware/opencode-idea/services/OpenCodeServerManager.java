@@ -1,13 +1,6 @@
 package ua.naiksoftware.opencodeidea.services;
 
-import com.intellij.execution.configurations.GeneralCommandLine;
-import com.intellij.execution.process.OSProcessHandler;
-import com.intellij.execution.process.ProcessAdapter;
-import com.intellij.execution.process.ProcessEvent;
-import com.intellij.execution.process.ProcessOutputTypes;
-import com.intellij.openapi.util.Key;
 import com.intellij.openapi.Disposable;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
@@ -15,26 +8,19 @@ import com.intellij.openapi.util.Disposer;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
 
-import java.io.File;
-import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import com.intellij.util.io.HttpRequests;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Service(Service.Level.PROJECT)
-public final class OpenCodeServerManager implements Disposable {
+public final class OpenCodeServerManager implements Disposable, OpenCodeServerRegistry.ServerListener {
     
     private static final Logger LOG = Logger.getInstance(OpenCodeServerManager.class);
-    private static final int DEFAULT_PORT = 1993;
-    private static final int MAX_PORT_ATTEMPTS = 100;
-    private static final int MAX_STARTUP_WAIT_SECONDS = 5;
-    private static final String OPENCODE_EXECUTABLE = "opencode";
     
     public enum ServerStatus {
         STOPPED, STARTING, RUNNING, ERROR
@@ -43,18 +29,34 @@ public final class OpenCodeServerManager implements Disposable {
     private final Project project;
     private final AtomicReference<ServerStatus> status = new AtomicReference<>(ServerStatus.STOPPED);
     private final ScheduledExecutorService executor = AppExecutorUtil.createBoundedScheduledExecutorService("OpenCodeServer", 2);
+    private final OpenCodeServerSupervisor supervisor;
+    private final OpenCodeHealthMonitor healthMonitor;
+    private final OpenCodeResourceGovernor resourceGovernor;
+    // Prompts of this project sent and not answered yet; the registry counts those of all projects sharing the server
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    // Last time the server was asked for something on behalf of the user, for the idle shutdown
+    private volatile long lastUsedAt = System.currentTimeMillis();
     
-    private volatile OSProcessHandler processHandler;
-    private volatile int serverPort = DEFAULT_PORT;
+    // Whether this project holds a reference to the registry's server for its directory; guarded by this
+    private boolean holdsReference;
+    // Bumped on every start and stop so that a superseded startup does not change the status; guarded by this
+    private int startupGeneration;
+    private volatile OpenCodeServerProcess server;
     private volatile String serverUrl;
-    private volatile ScheduledFuture<?> healthCheckTask;
-    private volatile boolean serverReady = false;
-    private volatile long startTime;
+    @Nullable
+    private CompletableFuture<Boolean> startupFuture;
+    // Time from startServer() to the server accepting connections, including reuse of a running server
+    private final LatencyHistogram startupLatency = new LatencyHistogram();
     
     public OpenCodeServerManager(@NotNull Project project) {
         this.project = project;
-        this.serverUrl = "http://localhost:" + serverPort;
+        this.serverUrl = "http://localhost:1993";
+        this.supervisor = new OpenCodeServerSupervisor(project, this, executor);
+        this.healthMonitor = new OpenCodeHealthMonitor(this, executor);
+        this.resourceGovernor = new OpenCodeResourceGovernor(project, this, executor);
+        executor.scheduleWithFixedDelay(this::stopIfIdle, 1, 1, TimeUnit.MINUTES);
         Disposer.register(project, this);
+        OpenCodeServerRegistry.getInstance().addListener(this);
     }
     
     public static OpenCodeServerManager getInstance(@NotNull Project project) {
@@ -66,13 +68,34 @@ public final class OpenCodeServerManager implements Disposable {
         return status.get();
     }
     
+    private void setStatus(@NotNull ServerStatus newStatus) {
+        ServerStatus oldStatus = status.getAndSet(newStatus);
+        publishStatusChange(oldStatus, newStatus);
+    }
+    
+    private void transitionStatus(@NotNull ServerStatus expected, @NotNull ServerStatus newStatus) {
+        if (status.compareAndSet(expected, newStatus)) {
+            publishStatusChange(expected, newStatus);
+        }
+    }
+    
+    private void publishStatusChange(@NotNull ServerStatus oldStatus, @NotNull ServerStatus newStatus) {
+        if (oldStatus == newStatus || project.isDisposed()) {
+            return;
+        }
+        LOG.debug("Server status changed: " + oldStatus + " -> " + newStatus);
+        supervisor.serverStatusChanged(newStatus);
+        project.getMessageBus().syncPublisher(OpenCodeStatusListener.TOPIC).serverStatusChanged(oldStatus, newStatus);
+    }
+    
     @NotNull
     public String getServerUrl() {
         return serverUrl;
     }
     
     public int getServerPort() {
-        return serverPort;
+        OpenCodeServerProcess current = server;
+        return current != null ? current.getPort() : -1;
     }
     
     @NotNull
@@ -80,66 +103,154 @@ public final class OpenCodeServerManager implements Disposable {
         return project.getBasePath() != null ? project.getBasePath() : System.getProperty("user.dir");
     }
     
-    public CompletableFuture<Boolean> startServer() {
+    @NotNull
+    public LatencyHistogram getStartupLatency() {
+        return startupLatency;
+    }
+    
+    /**
+     * Whether the server failed too often in a row to be restarted automatically, until {@link #restartServer()}.
+     */
+    public boolean isCrashLooping() {
+        return supervisor.isCrashLooping();
+    }
+    
+    /**
+     * Starts using the server for the project directory, launching it unless another project already runs it.
+     * Completes with true once it accepts connections; concurrent callers share one startup.
+     */
+    public synchronized CompletableFuture<Boolean> startServer() {
         if (status.get() == ServerStatus.RUNNING) {
             return CompletableFuture.completedFuture(true);
         }
         
-        if (status.get() == ServerStatus.STARTING) {
+        if (status.get() == ServerStatus.STARTING && startupFuture != null) {
             // Already starting, wait for completion
-            return waitForServerStartup();
+            return startupFuture;
+        }
+        
+        if (supervisor.isCrashLooping()) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                "OpenCode server keeps failing; restart it with Tools | OpenCode | Restart OpenCode Server"));
         }
         
-        status.set(ServerStatus.STARTING);
-        serverReady = false; // Reset ready flag
+        // After an error, give up the old server before asking for a working one
+        releaseServer();
+        setStatus(ServerStatus.STARTING);
         LOG.info("Starting OpenCode server for project: " + project.getName());
+        long startRequested = System.currentTimeMillis();
+        lastUsedAt = startRequested;
         
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Kill any existing OpenCode servers to avoid port conflicts
-                killExistingServers();
-                
-                // Find available port
-                int originalPort = serverPort;
-                serverPort = findAvailablePort(DEFAULT_PORT);
-                serverUrl = "http://localhost:" + serverPort;
-                
-                if (originalPort != serverPort) {
-                    LOG.info("Port " + originalPort + " was not available, using port " + serverPort + " instead");
-                } else {
-                    LOG.info("Using default port " + serverPort);
+        CompletableFuture<OpenCodeServerProcess> reference = OpenCodeServerRegistry.getInstance().acquire(project, getProjectPath());
+        holdsReference = true;
+        int generation = ++startupGeneration;
+        CompletableFuture<Boolean> startup = reference.handle((process, throwable) -> {
+            synchronized (this) {
+                // stopServer() or a restart may have run meanwhile; only a startup still in progress changes the status
+                if (startupGeneration != generation || status.get() != ServerStatus.STARTING) {
+                    return false;
                 }
-                
-                // Find OpenCode executable
-                String executablePath = findOpenCodeExecutable();
-                if (executablePath == null) {
-                    status.set(ServerStatus.ERROR);
-                    LOG.error("OpenCode executable not found. Please ensure 'opencode' is installed and available in PATH.");
+                if (throwable != null) {
+                    LOG.warn("Failed to start OpenCode server: " + throwable.getMessage());
+                    setStatus(ServerStatus.ERROR);
                     return false;
                 }
-                
-                // Start the server process
-                if (startServerProcess(executablePath)) {
-                    // Wait for server to be ready
-                    if (waitForServerReady()) {
-                        status.set(ServerStatus.RUNNING);
-                        startHealthCheck();
-                        LOG.info("OpenCode server successfully started on port " + serverPort);
-                        return true;
-                    }
+                server = process;
+                serverUrl = process.getUrl();
+                long latency = System.currentTimeMillis() - startRequested;
+                startupLatency.record(latency);
+                setStatus(ServerStatus.RUNNING);
+                healthMonitor.start(process);
+                resourceGovernor.start(process);
+                LatencyHistogram launches = OpenCodeServerRegistry.getInstance().getStartupLatency();
+                LOG.info("OpenCode server ready on port " + process.getPort() + " in " + latency + "ms (launch latency p50 "
+                    + launches.getPercentileMs(50) + "ms, p95 " + launches.getPercentileMs(95) + "ms over "
+                    + launches.getCount() + " cold starts)");
+                return true;
+            }
+        });
+        startupFuture = startup;
+        return startup;
+    }
+    
+    /**
+     * Replaces the server with a fresh one, the warm standby if there is one. Other projects sharing the server
+     * switch over too. Starts the server if this project does not use one yet, also after it kept failing.
+     */
+    public CompletableFuture<Boolean> restartServer() {
+        supervisor.reset();
+        return replaceServer();
+    }
+    
+    synchronized CompletableFuture<Boolean> replaceServer() {
+        if (!holdsReference) {
+            return startServer();
+        }
+        LOG.info("Restarting OpenCode server for project: " + project.getName());
+        int generation = ++startupGeneration;
+        CompletableFuture<OpenCodeServerProcess> replacement = OpenCodeServerRegistry.getInstance().restart(getProjectPath());
+        if (replacement.isDone() && !replacement.isCompletedExceptionally()) {
+            // The standby took over; serverReplaced() has switched to it
+            return CompletableFuture.completedFuture(true);
+        }
+        setStatus(ServerStatus.STARTING);
+        CompletableFuture<Boolean> startup = replacement.handle((process, throwable) -> {
+            synchronized (this) {
+                if (startupGeneration != generation) {
+                    return false;
+                }
+                if (throwable != null) {
+                    LOG.warn("Failed to restart OpenCode server: " + throwable.getMessage());
+                    transitionStatus(ServerStatus.STARTING, ServerStatus.ERROR);
+                    return false;
                 }
-                
-                status.set(ServerStatus.ERROR);
-                return false;
-                
-            } catch (Exception e) {
-                LOG.error("Failed to start OpenCode server", e);
-                status.set(ServerStatus.ERROR);
-                return false;
+                // The registry notifies listeners too, but maybe only after this runs
+                serverReplaced(OpenCodeServerRegistry.canonical(getProjectPath()), process);
+                return status.get() == ServerStatus.RUNNING;
+            }
+        });
+        startupFuture = startup;
+        return startup;
+    }
+    
+    @Override
+    public void serverReplaced(@NotNull String directory, @NotNull OpenCodeServerProcess process) {
+        synchronized (this) {
+            if (!holdsReference || !directory.equals(OpenCodeServerRegistry.canonical(getProjectPath()))) {
+                return;
             }
-        }, executor);
+            server = process;
+            serverUrl = process.getUrl();
+        }
+        LOG.info("OpenCode server for project " + project.getName() + " replaced, now on port " + process.getPort());
+        transitionStatus(ServerStatus.ERROR, ServerStatus.RUNNING);
+        transitionStatus(ServerStatus.STARTING, ServerStatus.RUNNING);
+        if (status.get() == ServerStatus.RUNNING) {
+            healthMonitor.start(process);
+            resourceGovernor.start(process);
+            // Subscribers tied to the old address, like the event stream, follow the new one
+            if (!project.isDisposed()) {
+                project.getMessageBus().syncPublisher(OpenCodeStatusListener.TOPIC).serverReplaced(serverUrl);
+            }
+        }
+    }
+    
+    @Override
+    public void serverLost(@NotNull String directory) {
+        synchronized (this) {
+            if (!holdsReference || !directory.equals(OpenCodeServerRegistry.canonical(getProjectPath()))) {
+                return;
+            }
+        }
+        LOG.warn("OpenCode server process for project " + project.getName() + " exited");
+        healthMonitor.stop();
+        resourceGovernor.stop();
+        transitionStatus(ServerStatus.RUNNING, ServerStatus.ERROR);
     }
     
+    /**
+     * Stops using the server. The process itself only exits once no other project uses it.
+     */
     public void stopServer() {
         ServerStatus currentStatus = status.get();
         if (currentStatus == ServerStatus.STOPPED) {
@@ -148,406 +259,144 @@ public final class OpenCodeServerManager implements Disposable {
         }
         
         LOG.info("Stopping OpenCode server (current status: " + currentStatus + ")");
-        status.set(ServerStatus.STOPPED);
-        serverReady = false; // Reset ready flag
+        setStatus(ServerStatus.STOPPED);
         
-        try {
-            // Stop health check
-            if (healthCheckTask != null && !healthCheckTask.isCancelled()) {
-                LOG.debug("Cancelling health check task");
-                healthCheckTask.cancel(true);
-                healthCheckTask = null;
-            }
-            
-            // Stop process
-            if (processHandler != null && !processHandler.isProcessTerminated()) {
-                LOG.info("Destroying OpenCode server process on port " + serverPort);
-                processHandler.destroyProcess();
-                
-                // Wait a moment for graceful shutdown
-                try {
-                    boolean terminated = processHandler.waitFor(2000);
-                    if (terminated) {
-                        LOG.info("OpenCode server process terminated gracefully");
-                    } else {
-                        LOG.warn("OpenCode server process did not terminate gracefully within timeout");
-                    }
-                } catch (Exception e) {
-                    LOG.warn("Error waiting for process termination", e);
-                }
-                
-                processHandler = null;
-            } else {
-                LOG.debug("Process handler is null or already terminated");
-            }
-            
-        } catch (Exception e) {
-            LOG.error("Error while stopping OpenCode server", e);
-        } finally {
-            LOG.info("OpenCode server stop sequence completed");
-        }
+        healthMonitor.stop();
+        resourceGovernor.stop();
+        releaseServer();
     }
     
-    public boolean isServerHealthy() {
-        if (status.get() != ServerStatus.RUNNING) {
-            LOG.debug("Server not healthy - status is " + status.get());
-            return false;
+    private synchronized void releaseServer() {
+        startupGeneration++;
+        if (holdsReference) {
+            OpenCodeServerRegistry.getInstance().release(getProjectPath());
+            holdsReference = false;
         }
-        
-        // First check if process is still running
-        if (processHandler == null || processHandler.isProcessTerminated()) {
-            LOG.warn("OpenCode server process is not running");
-            return false;
-        }
-        
-        // If we haven't detected ready signal yet, don't try HTTP
-        if (!serverReady) {
-            LOG.debug("OpenCode server process is running but not yet ready");
-            return false;
+        server = null;
+    }
+    
+    /**
+     * Called when a connection to {@code failedUrl} was refused. Marks the server failed, so it gets restarted,
+     * if that is still the current server and it is gone.
+     */
+    public void reportUnreachable(@NotNull String failedUrl) {
+        OpenCodeServerProcess current = server;
+        if (!failedUrl.equals(serverUrl) || status.get() != ServerStatus.RUNNING) {
+            return;
         }
-        
-        // Check if port is still reachable
-        if (!isPortReachable()) {
-            LOG.warn("OpenCode server port " + serverPort + " is not reachable");
-            return false;
-        }
-        
-        // Test HTTP API using IntelliJ's HttpRequests
-        try {
-            String healthCheckUrl = "http://127.0.0.1:" + serverPort + "/config";
-            String response = HttpRequests.request(healthCheckUrl)
-                .connectTimeout(2000)
-                .readTimeout(2000)
-                .readString();
-            
-            boolean healthy = response != null && !response.trim().isEmpty();
-            LOG.debug("HTTP health check result: " + healthy + " (response length: " + (response != null ? response.length() : 0) + ")");
-            return healthy;
-            
-        } catch (Exception e) {
-            LOG.debug("HTTP health check failed: " + e.getMessage() + " - but process is running, considering healthy");
-            // If HTTP fails but process is running and port is reachable, still consider it healthy
-            // The HTTP endpoint might be temporarily unavailable but the server might recover
-            return true;
+        if (current == null || !current.isAlive() || !current.isPortReachable(1000)) {
+            LOG.warn("OpenCode server at " + failedUrl + " refused a connection and is gone, marking as error");
+            transitionStatus(ServerStatus.RUNNING, ServerStatus.ERROR);
         }
     }
     
+    /**
+     * The server just showed it is alive, e.g. by answering a request or sending an event. Spares a health probe.
+     */
+    public void recordActivity() {
+        healthMonitor.recordActivity();
+    }
+    
+    /**
+     * Resource usage of the project's server over the last two hours, oldest first.
+     */
+    @NotNull
+    public List<ServerResourceSample> getResourceHistory() {
+        return resourceGovernor.getHistory();
+    }
+    
+    /**
+     * Recent output of the project's server, kept across restarts.
+     */
+    @NotNull
+    public ServerOutputLog getServerOutput() {
+        return OpenCodeServerRegistry.getInstance().getOutput(getProjectPath());
+    }
+    
     @Nullable
-    private String findOpenCodeExecutable() {
-        LOG.info("Searching for OpenCode executable...");
-        
-        // 1. Check if opencode is directly available (simple PATH check)
-        LOG.info("Method 1: Checking direct PATH access");
-        try {
-            ProcessBuilder pb = new ProcessBuilder(OPENCODE_EXECUTABLE, "--version");
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            LOG.info("Direct PATH check exit code: " + exitCode);
-            if (exitCode == 0) {
-                LOG.info("Found OpenCode via direct PATH: " + OPENCODE_EXECUTABLE);
-                return OPENCODE_EXECUTABLE;
-            }
-        } catch (Exception e) {
-            LOG.info("Direct PATH check failed: " + e.getMessage());
-        }
-        
-        // 2. Use 'which' command to find opencode (handles shell PATH better)
-        LOG.info("Method 2: Using 'which' command with login shell");
-        try {
-            // Use login shell to get full environment including NVM
-            ProcessBuilder pb = new ProcessBuilder("/bin/zsh", "-l", "-c", "which opencode");
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            LOG.info("'which' command exit code: " + exitCode);
-            if (exitCode == 0) {
-                try (java.io.BufferedReader reader = new java.io.BufferedReader(
-                        new java.io.InputStreamReader(process.getInputStream()))) {
-                    String path = reader.readLine();
-                    LOG.info("'which' command output: " + path);
-                    if (path != null && !path.trim().isEmpty()) {
-                        File executable = new File(path.trim());
-                        if (executable.exists() && executable.canExecute()) {
-                            LOG.info("Found OpenCode via 'which': " + path.trim());
-                            return path.trim();
-                        } else {
-                            LOG.info("Path found but not executable: " + path.trim());
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            LOG.info("'which' command failed: " + e.getMessage());
-        }
-        
-        // 3. Check common Node.js/npm installation paths
-        String userHome = System.getProperty("user.home");
-        String[] commonPaths = {
-            "/usr/local/bin/opencode",
-            userHome + "/.nvm/versions/node/*/bin/opencode", // Will need glob expansion
-            userHome + "/node_modules/.bin/opencode",
-            "/opt/homebrew/bin/opencode",
-            userHome + "/.local/bin/opencode"
-        };
-        
-        for (String pathPattern : commonPaths) {
-            if (pathPattern.contains("*")) {
-                // Handle NVM glob pattern
-                if (pathPattern.contains("/.nvm/versions/node/")) {
-                    File nvmNodeDir = new File(userHome + "/.nvm/versions/node");
-                    if (nvmNodeDir.exists() && nvmNodeDir.isDirectory()) {
-                        File[] versions = nvmNodeDir.listFiles();
-                        if (versions != null) {
-                            for (File version : versions) {
-                                File opencodeBin = new File(version, "bin/opencode");
-                                if (opencodeBin.exists() && opencodeBin.canExecute()) {
-                                    return opencodeBin.getAbsolutePath();
-                                }
-                            }
-                        }
-                    }
-                }
-            } else {
-                File executable = new File(pathPattern);
-                if (executable.exists() && executable.canExecute()) {
-                    return executable.getAbsolutePath();
-                }
-            }
-        }
-        
-        // 4. Check in project directory
-        String projectPath = getProjectPath();
-        String[] projectPaths = {
-            projectPath + "/opencode",
-            projectPath + "/bin/opencode",
-            projectPath + "/node_modules/.bin/opencode"
-        };
-        
-        for (String path : projectPaths) {
-            File executable = new File(path);
-            if (executable.exists() && executable.canExecute()) {
-                return executable.getAbsolutePath();
-            }
-        }
-        
-        return null;
+    public ServerResourceSample getLatestResourceSample() {
+        return resourceGovernor.getLatest();
     }
     
-    private boolean startServerProcess(@NotNull String executablePath) {
-        try {
-            LOG.info("Starting server process with executable: " + executablePath);
-            LOG.info("Server port: " + serverPort);
-            LOG.info("Project path: " + getProjectPath());
-            
-            GeneralCommandLine commandLine = new GeneralCommandLine();
-            
-            // Try direct execution first for better error reporting
-            LOG.info("Trying direct execution of: " + executablePath);
-            commandLine.withExePath(executablePath)
-                .withParameters("serve")
-                .withParameters("--port", String.valueOf(serverPort))
-                .withWorkDirectory(getProjectPath());
-            
-            LOG.info("Direct command: " + commandLine.getCommandLineString());
-            
-            LOG.info("Command line: " + commandLine.getCommandLineString());
-            
-            processHandler = new OSProcessHandler(commandLine);
-            LOG.info("Created OSProcessHandler successfully");
-            
-            // Monitor process output with more detailed logging
-            processHandler.addProcessListener(new ProcessAdapter() {
-                @Override
-                public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
-                    String text = event.getText().trim();
-                    if (!text.isEmpty()) {
-                        if (ProcessOutputTypes.STDOUT.equals(outputType)) {
-                            LOG.info("STDOUT: " + text);
-                            // Detect when server is ready - be more flexible with the message
-                            if (text.contains("opencode server listening on") || text.contains("listening on")) {
-                                LOG.info("Server ready detected from output: " + text);
-                                serverReady = true;
-                            }
-                        } else if (ProcessOutputTypes.STDERR.equals(outputType)) {
-                            LOG.info("STDERR: " + text);
-                            // Also check stderr for ready messages (some apps log to stderr)
-                            if (text.contains("opencode server listening on") || text.contains("listening on")) {
-                                LOG.info("Server ready detected from stderr: " + text);
-                                serverReady = true;
-                            }
-                        }
-                    }
-                }
-                
-                @Override
-                public void processTerminated(@NotNull ProcessEvent event) {
-                    LOG.error("OpenCode server process terminated with exit code: " + event.getExitCode());
-                    LOG.error("Server was ready: " + serverReady);
-                    LOG.error("Time since start: " + (System.currentTimeMillis() - startTime) + "ms");
-                    serverReady = false;
-                    if (status.get() == ServerStatus.RUNNING) {
-                        status.set(ServerStatus.ERROR);
-                    }
-                }
-                
-                @Override
-                public void startNotified(@NotNull ProcessEvent event) {
-                    LOG.info("Process start notified");
-                }
-            });
-            
-            startTime = System.currentTimeMillis();
-            processHandler.startNotify();
-            LOG.info("Process started successfully, waiting for ready signal...");
-            
-            return true;
-            
-        } catch (Exception e) {
-            LOG.error("Failed to start OpenCode server process", e);
-            return false;
-        }
+    /**
+     * Finds the executable in the background so that a later start does not wait for the search.
+     */
+    public void prepare() {
+        AppExecutorUtil.getAppExecutorService().execute(() -> OpenCodeExecutableLocator.locate(getProjectPath()));
     }
     
-    private boolean waitForServerReady() {
-        LOG.info("Waiting for server to be ready on port " + serverPort + "...");
-        
-        // Wait for server ready signal (up to 15 seconds)
-        for (int i = 0; i < 15; i++) {
-            try {
-                Thread.sleep(1000);
-                
-                if (processHandler != null && processHandler.isProcessTerminated()) {
-                    LOG.warn("Process terminated while waiting for ready signal");
-                    return false;
-                }
-                
-                // Check both output-based ready signal and port connectivity
-                if (serverReady || isPortReachable()) {
-                    LOG.info("Server ready detected! (serverReady=" + serverReady + ", portReachable=" + isPortReachable() + ")");
-                    // Give it 1 more second to be fully ready
-                    Thread.sleep(1000);
-                    // Final verification that port is reachable
-                    if (isPortReachable()) {
-                        LOG.info("Server is fully ready and port is reachable");
-                        serverReady = true; // Ensure flag is set
-                        return true;
-                    } else {
-                        LOG.warn("Server ready signal received but port not reachable yet");
-                    }
-                }
-                
-                LOG.info("Waiting for server ready... attempt " + (i + 1) + "/15 (serverReady=" + serverReady + ", portReachable=" + isPortReachable() + ")");
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return false;
-            }
+    /**
+     * The server was asked for something on the user's behalf; postpones the idle shutdown.
+     */
+    void recordUse() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+    
+    private void stopIfIdle() {
+        int idleMinutes = OpenCodeConfig.getInstance().getIdleShutdownMinutes();
+        long idleMs = System.currentTimeMillis() - lastUsedAt;
+        if (idleMinutes > 0 && status.get() == ServerStatus.RUNNING && activeRequests.get() == 0
+                && idleMs >= TimeUnit.MINUTES.toMillis(idleMinutes)) {
+            LOG.info("OpenCode server for project " + project.getName() + " unused for " + idleMs / 60_000
+                + " minutes, stopping it until it is needed again");
+            stopServer();
         }
-        
-        LOG.warn("Server failed to become ready within timeout period");
-        return false;
     }
     
-    private boolean isPortReachable() {
-        try (Socket socket = new Socket()) {
-            socket.connect(new java.net.InetSocketAddress("127.0.0.1", serverPort), 2000);
-            return true;
-        } catch (IOException e) {
-            return false;
+    void requestStarted() {
+        lastUsedAt = System.currentTimeMillis();
+        activeRequests.incrementAndGet();
+        OpenCodeServerRegistry.getInstance().requestStarted(getProjectPath());
+    }
+    
+    void requestFinished() {
+        activeRequests.decrementAndGet();
+        if (OpenCodeServerRegistry.getInstance().requestFinished(getProjectPath())) {
+            restartNow();
         }
     }
     
-    private CompletableFuture<Boolean> waitForServerStartup() {
-        return CompletableFuture.supplyAsync(() -> {
-            for (int i = 0; i < MAX_STARTUP_WAIT_SECONDS; i++) {
-                ServerStatus currentStatus = status.get();
-                if (currentStatus == ServerStatus.RUNNING) {
-                    return true;
-                } else if (currentStatus == ServerStatus.ERROR || currentStatus == ServerStatus.STOPPED) {
-                    return false;
-                }
-                
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return false;
-                }
-            }
-            return false;
-        }, executor);
-    }
-    
-    private void startHealthCheck() {
-        healthCheckTask = executor.scheduleWithFixedDelay(() -> {
-            if (status.get() == ServerStatus.RUNNING && !isServerHealthy()) {
-                LOG.warn("OpenCode server health check failed, marking as error");
-                status.set(ServerStatus.ERROR);
-                if (healthCheckTask != null) {
-                    healthCheckTask.cancel(true);
-                    healthCheckTask = null;
-                }
-            }
-        }, 10, 10, TimeUnit.SECONDS);
+    /**
+     * Restarts the server once no prompt is waiting for an answer, right away if none is. The server may be shared,
+     * so prompts of the other projects using it are waited for too.
+     */
+    void restartBetweenPrompts() {
+        if (OpenCodeServerRegistry.getInstance().restartBetweenPrompts(getProjectPath())) {
+            restartNow();
+        }
     }
     
-    private void killExistingServers() {
-        try {
-            LOG.info("Checking for existing OpenCode servers to kill");
-            
-            // Use pkill to kill any existing opencode serve processes
-            ProcessBuilder pb = new ProcessBuilder("pkill", "-f", "opencode serve");
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            
-            if (exitCode == 0) {
-                LOG.info("Killed existing OpenCode servers");
-                // Wait a moment for processes to fully terminate
-                Thread.sleep(500);
-            } else {
-                LOG.debug("No existing OpenCode servers found to kill (exit code: " + exitCode + ")");
-            }
-            
-        } catch (Exception e) {
-            LOG.warn("Failed to kill existing OpenCode servers: " + e.getMessage());
+    private void restartNow() {
+        // A server that is not running is being started or stopped already
+        if (status.get() == ServerStatus.RUNNING) {
+            LOG.info("Restarting OpenCode server for project " + project.getName() + " between prompts");
+            replaceServer();
         }
     }
     
-    private static int findAvailablePort(int startPort) {
-        LOG.info("Finding available port starting from " + startPort);
-        
-        for (int port = startPort; port < startPort + MAX_PORT_ATTEMPTS; port++) {
-            try (ServerSocket socket = new ServerSocket(port)) {
-                LOG.info("Found available port: " + port);
-                return port;
-            } catch (IOException e) {
-                LOG.debug("Port " + port + " is in use, trying next port");
-            }
+    void healthCheckFailed(@NotNull OpenCodeServerProcess process) {
+        if (server == process) {
+            LOG.warn("OpenCode server health check failed, marking as error");
+            transitionStatus(ServerStatus.RUNNING, ServerStatus.ERROR);
         }
-        
-        LOG.warn("Could not find available port in range " + startPort + "-" + (startPort + MAX_PORT_ATTEMPTS - 1) + 
-                 ", falling back to original port " + startPort);
-        return startPort; // Fallback to original port
+    }
+    
+    public boolean isServerHealthy() {
+        OpenCodeServerProcess current = server;
+        return status.get() == ServerStatus.RUNNING && current != null && current.isReady() && OpenCodeHealthMonitor.probe(current);
     }
     
     @Override
     public void dispose() {
         LOG.info("Disposing OpenCode server manager for project: " + project.getName());
+        OpenCodeServerRegistry.getInstance().removeListener(this);
+        supervisor.dispose();
+        healthMonitor.stop();
+        resourceGovernor.stop();
         
         try {
-            // Ensure server is stopped
+            // Ensure server is stopped; the registry shuts the process down once no project uses it
             stopServer();
-            
-            // Give the server process a moment to terminate gracefully
-            if (processHandler != null && !processHandler.isProcessTerminated()) {
-                LOG.info("Waiting for OpenCode server process to terminate...");
-                boolean terminated = processHandler.waitFor(3000); // Wait up to 3 seconds
-                if (!terminated) {
-                    LOG.warn("OpenCode server process did not terminate gracefully, forcing termination");
-                    processHandler.destroyProcess();
-                    // Wait a bit more for forced termination
-                    processHandler.waitFor(1000);
-                }
-            }
-            
         } catch (Exception e) {
             LOG.error("Error during server shutdown", e);
         } finally {
@@ -0,0 +1,177 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One {@code opencode serve} process launched by the plugin.
+ * <p>
+ * The server binds a port the OS assigns ({@code --port 0}), so there is no window between picking a free port
+ * and binding it. The port is learned from the "listening on" line, which also signals readiness;
+ * {@link #getReady()} fails if the process exits or {@link #READY_TIMEOUT_MS} passes first.
+ * <p>
+ * Output goes to a {@link ServerOutputLog} rather than the IDE log.
+ */
+final class OpenCodeServerProcess {
+    private static final Logger LOG = Logger.getInstance(OpenCodeServerProcess.class);
+    private static final long READY_TIMEOUT_MS = 15_000;
+    // e.g. "opencode server listening on http://127.0.0.1:4096"
+    private static final Pattern LISTENING_ON = Pattern.compile("listening on\\s+(https?://[^\\s/]+):(\\d+)");
+
+    private final OSProcessHandler processHandler;
+    private final String workDirectory;
+    private final ServerOutputLog output;
+    private final long pid;
+    private final long startTime;
+    // Known once ready
+    private volatile int port = -1;
+    private volatile String url;
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+
+    private OpenCodeServerProcess(@NotNull OSProcessHandler processHandler, @NotNull String workDirectory, @NotNull ServerOutputLog output) {
+        this.processHandler = processHandler;
+        this.workDirectory = workDirectory;
+        this.output = output;
+        this.pid = processHandler.getProcess().pid();
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Launches the server in the given directory. Returns as soon as the process runs; wait for {@link #getReady()}.
+     */
+    @NotNull
+    static OpenCodeServerProcess start(@NotNull String executablePath, @NotNull String workDirectory,
+                                       @NotNull ServerOutputLog output) throws ExecutionException {
+        GeneralCommandLine commandLine = new GeneralCommandLine()
+            .withExePath(executablePath)
+            .withParameters("serve")
+            .withParameters("--port", "0")
+            .withWorkDirectory(workDirectory);
+        LOG.info("Starting OpenCode server: " + commandLine.getCommandLineString() + " in " + workDirectory);
+
+        OpenCodeServerProcess server = new OpenCodeServerProcess(new OSProcessHandler(commandLine), workDirectory, output);
+        server.processHandler.addProcessListener(server.new OutputListener());
+        server.processHandler.startNotify();
+
+        ScheduledFuture<?> timeout = AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> server.ready.completeExceptionally(
+            new TimeoutException("Server did not report listening within " + READY_TIMEOUT_MS + "ms")), READY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        server.ready.whenComplete((ignored, throwable) -> timeout.cancel(false));
+        return server;
+    }
+
+    @NotNull
+    String getWorkDirectory() { return workDirectory; }
+
+    /**
+     * Port the server listens on, or -1 before it is ready.
+     */
+    int getPort() { return port; }
+
+    /**
+     * Base URL as the server announced it, or null before it is ready.
+     */
+    @Nullable
+    String getUrl() { return url; }
+
+    /**
+     * Completes once the server announced the address it listens on.
+     */
+    @NotNull
+    CompletableFuture<Void> getReady() { return ready; }
+
+    /**
+     * Completes with the exit code once the process terminated, whoever ended it.
+     */
+    @NotNull
+    CompletableFuture<Integer> getExit() { return exit; }
+
+    /**
+     * OS process ID of the launched executable; the server itself may run in a child of it.
+     */
+    long getPid() {
+        return pid;
+    }
+
+    boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally() && isAlive();
+    }
+
+    boolean isAlive() {
+        return !processHandler.isProcessTerminated();
+    }
+
+    boolean isPortReachable(int timeoutMs) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", port), timeoutMs);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Asks the process to exit and waits up to {@code timeoutMs} for it.
+     */
+    void destroy(long timeoutMs) {
+        if (processHandler.isProcessTerminated()) {
+            return;
+        }
+        LOG.info("Destroying OpenCode server process on port " + port);
+        processHandler.destroyProcess();
+        if (processHandler.waitFor(timeoutMs)) {
+            LOG.info("OpenCode server process terminated gracefully");
+        } else {
+            LOG.warn("OpenCode server process did not terminate gracefully within timeout");
+        }
+    }
+
+    private final class OutputListener extends ProcessAdapter {
+        @Override
+        public void onTextAvailable(@NotNull ProcessEvent event, @NotNull Key outputType) {
+            String text = event.getText();
+            // Matched on the text as delivered and only until ready; some versions print the ready line to stderr
+            if (!ready.isDone()) {
+                Matcher matcher = LISTENING_ON.matcher(text);
+                if (matcher.find()) {
+                    port = Integer.parseInt(matcher.group(2));
+                    url = matcher.group(1) + ":" + port;
+                    LOG.info("Server ready at " + url);
+                    ready.complete(null);
+                }
+            }
+            output.append(pid, ProcessOutputTypes.STDERR.equals(outputType), text);
+        }
+
+        @Override
+        public void processTerminated(@NotNull ProcessEvent event) {
+            LOG.info("OpenCode server process on port " + port + " terminated with exit code " + event.getExitCode()
+                + " after " + (System.currentTimeMillis() - startTime) + "ms (was ready: " + isReadyCompleted() + ")");
+            ready.completeExceptionally(new IOException("Server process exited with code " + event.getExitCode()));
+            exit.complete(event.getExitCode());
+        }
+    }
+
+    private boolean isReadyCompleted() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+}
@@ -0,0 +1,412 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The opencode servers the plugin runs, shared by all open projects.
+ * <p>
+ * A server serves one working directory, so projects with the same directory share one server and other
+ * projects get their own. Each project holds a reference while it uses a server; the server is shut down when
+ * the last reference is released. Only processes started here are ever shut down, never servers the user
+ * runs themselves.
+ * <p>
+ * With {@link OpenCodeConfig#isWarmStandby()} each server in use gets an idle, ready twin. When the server
+ * crashes or is restarted the twin takes over at once and a new twin is launched in the background.
+ * The twin listens on a different port. It continues the project's session because opencode keeps sessions
+ * in on-disk storage and {@link OpenCodeApiServiceImpl} looks them up by working directory, not by server URL.
+ */
+@Service
+public final class OpenCodeServerRegistry implements Disposable {
+    private static final Logger LOG = Logger.getInstance(OpenCodeServerRegistry.class);
+
+    // Guarded by this
+    private final Map<String, Entry> entriesByDirectory = new HashMap<>();
+    // Directory -> when its server was lost, until a replacement is ready
+    private final Map<String, Long> lostAtByDirectory = new HashMap<>();
+    // Directory -> prompts of all projects sharing its server that are not answered yet
+    private final Map<String, Integer> requestsInFlight = new HashMap<>();
+    // Directories whose server is to be restarted once no prompt is in flight
+    private final Set<String> restartsBetweenPrompts = new HashSet<>();
+    private int coldStarts;
+    // Time from a launch to the server accepting connections
+    private final LatencyHistogram startupLatency = new LatencyHistogram();
+    // Time from losing a server (crash or restart) to a replacement being ready
+    private final LatencyHistogram recoveryLatency = new LatencyHistogram();
+    private final List<ServerListener> listeners = new CopyOnWriteArrayList<>();
+    // Output of the servers per directory, kept across restarts and releases so it can still be read afterwards
+    private final Map<String, ServerOutputLog> outputByDirectory = new HashMap<>();
+
+    interface ServerListener {
+        /**
+         * The server for the directory was replaced, after a crash or a restart, and the new one is ready.
+         */
+        void serverReplaced(@NotNull String directory, @NotNull OpenCodeServerProcess process);
+
+        /**
+         * The server for the directory exited and there was no standby to replace it with.
+         * References stay taken; the next {@link #acquire} launches a new server.
+         */
+        void serverLost(@NotNull String directory);
+    }
+
+    private static final class Entry {
+        private final String workDirectory;
+        private CompletableFuture<OpenCodeServerProcess> server;
+        @Nullable
+        private CompletableFuture<OpenCodeServerProcess> standby;
+        private int references;
+
+        Entry(@NotNull String workDirectory) {
+            this.workDirectory = workDirectory;
+        }
+    }
+
+    public static OpenCodeServerRegistry getInstance() {
+        return ApplicationManager.getApplication().getService(OpenCodeServerRegistry.class);
+    }
+
+    void addListener(@NotNull ServerListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(@NotNull ServerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Takes a reference to the server for the directory, launching one if none is running or starting.
+     * Completes once the server accepts connections. Every call must be balanced by {@link #release}, also
+     * when the future fails.
+     */
+    @NotNull
+    synchronized CompletableFuture<OpenCodeServerProcess> acquire(@NotNull Project project, @NotNull String workDirectory) {
+        String key = canonical(workDirectory);
+        Entry entry = entriesByDirectory.get(key);
+        if (entry == null) {
+            entry = new Entry(workDirectory);
+            entriesByDirectory.put(key, entry);
+        }
+        entry.references++;
+        if (isUsable(entry.server)) {
+            LOG.info("Project " + project.getName() + " shares the OpenCode server for " + key + " (" + entry.references + " references)");
+            return entry.server;
+        }
+
+        entry.server = launch(entry, key);
+        LOG.info("Launching OpenCode server for " + key + " (" + coldStarts + " cold starts, " + entriesByDirectory.size() + " servers)");
+        Entry launched = entry;
+        entry.server.thenRun(() -> {
+            recordRecovery(key, "a cold start");
+            ensureStandby(key, launched);
+        });
+        return entry.server;
+    }
+
+    /**
+     * Drops a reference taken by {@link #acquire}. The server is shut down when nobody uses it any more.
+     */
+    void release(@NotNull String workDirectory) {
+        Entry entry;
+        synchronized (this) {
+            String key = canonical(workDirectory);
+            entry = entriesByDirectory.get(key);
+            if (entry == null || --entry.references > 0) {
+                return;
+            }
+            entriesByDirectory.remove(key);
+            lostAtByDirectory.remove(key);
+        }
+        LOG.info("Shutting down the OpenCode server for " + canonical(workDirectory) + ", no project uses it any more");
+        if (entry.server != null) {
+            shutDown(entry.server);
+        }
+        if (entry.standby != null) {
+            shutDown(entry.standby);
+        }
+    }
+
+    /**
+     * Replaces the server for the directory with a fresh one: the warm standby if one is ready, otherwise a new
+     * launch. Listeners hear about the replacement once it is ready.
+     */
+    @NotNull
+    synchronized CompletableFuture<OpenCodeServerProcess> restart(@NotNull String workDirectory) {
+        String key = canonical(workDirectory);
+        Entry entry = entriesByDirectory.get(key);
+        if (entry == null || entry.references == 0) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No OpenCode server runs for " + key));
+        }
+        CompletableFuture<OpenCodeServerProcess> old = entry.server;
+        lostAtByDirectory.put(key, System.currentTimeMillis());
+        if (!promoteStandby(key, entry)) {
+            entry.server = launch(entry, key);
+            entry.server.thenAccept(process -> {
+                notifyReplaced(key, process);
+                ensureStandby(key, entry);
+            });
+        }
+        if (old != null) {
+            // Its exit no longer matters: the entry already points at the replacement
+            shutDown(old);
+        }
+        return entry.server;
+    }
+
+    /**
+     * Counts a prompt sent to the server for the directory, on behalf of any project sharing it.
+     */
+    synchronized void requestStarted(@NotNull String workDirectory) {
+        requestsInFlight.merge(canonical(workDirectory), 1, Integer::sum);
+    }
+
+    /**
+     * Counts a prompt as answered. Returns true if the server is now to be restarted, which the caller then does.
+     */
+    synchronized boolean requestFinished(@NotNull String workDirectory) {
+        String key = canonical(workDirectory);
+        requestsInFlight.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+        return takeRestartBetweenPrompts(key);
+    }
+
+    /**
+     * Asks for the server to be restarted once no project sharing it has a prompt in flight. Returns true if that
+     * is the case already; otherwise the caller that finishes the last prompt gets true from {@link #requestFinished}.
+     * Asking again before then has no further effect.
+     */
+    synchronized boolean restartBetweenPrompts(@NotNull String workDirectory) {
+        String key = canonical(workDirectory);
+        restartsBetweenPrompts.add(key);
+        return takeRestartBetweenPrompts(key);
+    }
+
+    private boolean takeRestartBetweenPrompts(@NotNull String key) {
+        return !requestsInFlight.containsKey(key) && restartsBetweenPrompts.remove(key);
+    }
+
+    public synchronized int getColdStarts() {
+        return coldStarts;
+    }
+
+    @NotNull
+    public LatencyHistogram getStartupLatency() {
+        return startupLatency;
+    }
+
+    @NotNull
+    public LatencyHistogram getRecoveryLatency() {
+        return recoveryLatency;
+    }
+
+    /**
+     * Number of working directories with a server in use, standbys not counted.
+     */
+    public synchronized int getServerCount() {
+        return entriesByDirectory.size();
+    }
+
+    /**
+     * Recent output of the servers for the directory, empty if none ran yet.
+     */
+    @NotNull
+    public synchronized ServerOutputLog getOutput(@NotNull String workDirectory) {
+        String key = canonical(workDirectory);
+        return outputByDirectory.computeIfAbsent(key, ServerOutputLog::new);
+    }
+
+    /**
+     * Launches a server for the entry. Completes once it is ready; a server that never gets ready is stopped.
+     */
+    @NotNull
+    private CompletableFuture<OpenCodeServerProcess> launch(@NotNull Entry entry, @NotNull String key) {
+        coldStarts++;
+        long launchTime = System.currentTimeMillis();
+        ServerOutputLog output = getOutput(key);
+        return CompletableFuture.supplyAsync(() -> {
+            // A remembered executable path is reused without spawning anything
+            String executablePath = OpenCodeExecutableLocator.locate(entry.workDirectory);
+            if (executablePath == null) {
+                throw new IllegalStateException("OpenCode executable not found. Please ensure 'opencode' is installed and available in PATH.");
+            }
+            try {
+                return OpenCodeServerProcess.start(executablePath, entry.workDirectory, output);
+            } catch (Exception e) {
+                // Search again next time rather than retrying a path that does not launch
+                OpenCodeExecutableLocator.invalidate();
+                throw new IllegalStateException("Failed to launch " + executablePath + ": " + e.getMessage(), e);
+            }
+        }, AppExecutorUtil.getAppExecutorService()).thenCompose(process -> {
+            process.getExit().thenRun(() -> onExit(key, process));
+            return process.getReady().handle((ignored, throwable) -> {
+                if (throwable != null) {
+                    // Never ready, e.g. timed out; do not leave it running unowned
+                    AppExecutorUtil.getAppExecutorService().execute(() -> process.destroy(2000));
+                    throw new CompletionException(throwable);
+                }
+                startupLatency.record(System.currentTimeMillis() - launchTime);
+                return process;
+            });
+        });
+    }
+
+    /**
+     * Launches a standby for the entry if the setting is on, the entry is in use and it has none.
+     */
+    private synchronized void ensureStandby(@NotNull String key, @NotNull Entry entry) {
+        if (!OpenCodeConfig.getInstance().isWarmStandby() || entriesByDirectory.get(key) != entry
+                || entry.references == 0 || isUsable(entry.standby)) {
+            return;
+        }
+        LOG.info("Launching warm standby OpenCode server for " + key);
+        entry.standby = launch(entry, key);
+    }
+
+    /**
+     * Makes a ready standby the entry's server and launches a new standby in the background.
+     * Returns false if there is no ready standby.
+     */
+    private boolean promoteStandby(@NotNull String key, @NotNull Entry entry) {
+        OpenCodeServerProcess standby = readyProcess(entry.standby);
+        if (standby == null || !standby.isAlive()) {
+            return false;
+        }
+        entry.server = entry.standby;
+        entry.standby = null;
+        LOG.info("Promoted warm standby OpenCode server on port " + standby.getPort() + " for " + key);
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            notifyReplaced(key, standby);
+            ensureStandby(key, entry);
+        });
+        return true;
+    }
+
+    private void onExit(@NotNull String key, @NotNull OpenCodeServerProcess process) {
+        synchronized (this) {
+            Entry entry = entriesByDirectory.get(key);
+            if (entry == null) {
+                return;
+            }
+            if (readyProcess(entry.standby) == process) {
+                // A new one is launched with the next promotion or launch
+                LOG.warn("Warm standby OpenCode server for " + key + " exited");
+                entry.standby = null;
+                return;
+            }
+            if (readyProcess(entry.server) != process) {
+                // Not the current server, e.g. one replaced by a restart
+                return;
+            }
+            lostAtByDirectory.put(key, System.currentTimeMillis());
+            if (promoteStandby(key, entry)) {
+                return;
+            }
+        }
+        for (ServerListener listener : listeners) {
+            listener.serverLost(key);
+        }
+    }
+
+    private void notifyReplaced(@NotNull String key, @NotNull OpenCodeServerProcess process) {
+        recordRecovery(key, "a replacement");
+        for (ServerListener listener : listeners) {
+            listener.serverReplaced(key, process);
+        }
+    }
+
+    private void recordRecovery(@NotNull String key, @NotNull String how) {
+        Long lostAt;
+        synchronized (this) {
+            lostAt = lostAtByDirectory.remove(key);
+        }
+        if (lostAt != null) {
+            long recovery = System.currentTimeMillis() - lostAt;
+            recoveryLatency.record(recovery);
+            LOG.info("OpenCode server for " + key + " recovered by " + how + " in " + recovery + "ms (recovery p50 "
+                + recoveryLatency.getPercentileMs(50) + "ms, p95 " + recoveryLatency.getPercentileMs(95) + "ms)");
+        }
+    }
+
+    private static boolean isUsable(@Nullable CompletableFuture<OpenCodeServerProcess> server) {
+        if (server == null) {
+            return false;
+        }
+        if (!server.isDone()) {
+            return true;
+        }
+        OpenCodeServerProcess process = readyProcess(server);
+        return process != null && process.isAlive();
+    }
+
+    @Nullable
+    private static OpenCodeServerProcess readyProcess(@Nullable CompletableFuture<OpenCodeServerProcess> server) {
+        return server != null && server.isDone() && !server.isCompletedExceptionally() ? server.getNow(null) : null;
+    }
+
+    @NotNull
+    static String canonical(@NotNull String directory) {
+        try {
+            return new File(directory).getCanonicalPath();
+        } catch (IOException e) {
+            return new File(directory).getAbsolutePath();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        List<CompletableFuture<OpenCodeServerProcess>> servers = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : entriesByDirectory.values()) {
+                if (entry.server != null) {
+                    servers.add(entry.server);
+                }
+                if (entry.standby != null) {
+                    servers.add(entry.standby);
+                }
+            }
+            entriesByDirectory.clear();
+            for (ServerOutputLog output : outputByDirectory.values()) {
+                output.close();
+            }
+        }
+        listeners.clear();
+        for (CompletableFuture<OpenCodeServerProcess> server : servers) {
+            // The IDE is exiting; stop what is up right away instead of on a pooled thread
+            OpenCodeServerProcess process = readyProcess(server);
+            if (process != null) {
+                process.destroy(2000);
+            } else {
+                shutDown(server);
+            }
+        }
+    }
+
+    /**
+     * Stops the server once it is up; one that is still starting is stopped when its launch completes.
+     */
+    private static void shutDown(@NotNull CompletableFuture<OpenCodeServerProcess> server) {
+        server.whenComplete((process, throwable) -> {
+            if (process != null) {
+                AppExecutorUtil.getAppExecutorService().execute(() -> process.destroy(2000));
+            }
+        });
+    }
+}
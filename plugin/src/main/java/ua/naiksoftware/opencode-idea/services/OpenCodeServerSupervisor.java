@@ -0,0 +1,167 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.notification.NotificationAction;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.ui.content.Content;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restarts a project's server after it failed, waiting {@link #INITIAL_BACKOFF_MS} before the first attempt and
+ * twice as long before each further one, up to {@link #MAX_BACKOFF_MS}. A server that stayed up for
+ * {@link #STABLE_MS} starts over at the initial delay.
+ * <p>
+ * After {@link #CRASH_LOOP_RESTARTS} restarts within {@link #CRASH_LOOP_WINDOW_MS} the server is left alone and the
+ * user is notified once; only an explicit restart resumes supervision.
+ */
+final class OpenCodeServerSupervisor {
+    private static final Logger LOG = Logger.getInstance(OpenCodeServerSupervisor.class);
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    private static final long STABLE_MS = 2 * 60_000;
+    private static final int CRASH_LOOP_RESTARTS = 5;
+    private static final long CRASH_LOOP_WINDOW_MS = 5 * 60_000;
+    private static final String TOOL_WINDOW_ID = "OpenCode Assistant";
+    private static final String SERVER_LOG_TAB = "Server Log";
+
+    private final Project project;
+    private final OpenCodeServerManager manager;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    private final Deque<Long> restartTimes = new ArrayDeque<>();
+    private int consecutiveFailures;
+    private long runningSince;
+    @Nullable
+    private ScheduledFuture<?> pendingRestart;
+    private boolean crashLooping;
+
+    OpenCodeServerSupervisor(@NotNull Project project, @NotNull OpenCodeServerManager manager, @NotNull ScheduledExecutorService executor) {
+        this.project = project;
+        this.manager = manager;
+        this.executor = executor;
+    }
+
+    /**
+     * Whether restarts were given up on. Nothing starts the server automatically until {@link #reset()}.
+     */
+    synchronized boolean isCrashLooping() {
+        return crashLooping;
+    }
+
+    /**
+     * Forgets earlier failures, e.g. when the user restarts the server themselves.
+     */
+    synchronized void reset() {
+        crashLooping = false;
+        consecutiveFailures = 0;
+        restartTimes.clear();
+        cancelPendingRestart();
+    }
+
+    synchronized void serverStatusChanged(@NotNull OpenCodeServerManager.ServerStatus newStatus) {
+        switch (newStatus) {
+            case RUNNING:
+                runningSince = System.currentTimeMillis();
+                cancelPendingRestart();
+                break;
+            case ERROR:
+                scheduleRestart();
+                break;
+            case STOPPED:
+                // Stopped on purpose; a later start is supervised afresh
+                consecutiveFailures = 0;
+                runningSince = 0;
+                cancelPendingRestart();
+                break;
+            default:
+                break;
+        }
+    }
+
+    synchronized void dispose() {
+        cancelPendingRestart();
+    }
+
+    private void scheduleRestart() {
+        if (crashLooping || (pendingRestart != null && !pendingRestart.isDone())) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (runningSince > 0 && now - runningSince >= STABLE_MS) {
+            consecutiveFailures = 0;
+        }
+        runningSince = 0;
+        while (!restartTimes.isEmpty() && now - restartTimes.peekFirst() > CRASH_LOOP_WINDOW_MS) {
+            restartTimes.removeFirst();
+        }
+        if (restartTimes.size() >= CRASH_LOOP_RESTARTS) {
+            crashLooping = true;
+            LOG.warn("OpenCode server for project " + project.getName() + " failed " + restartTimes.size()
+                + " times within " + CRASH_LOOP_WINDOW_MS / 60_000 + " minutes, no longer restarting it");
+            SwingUtilities.invokeLater(this::notifyCrashLoop);
+            return;
+        }
+        long delay = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(consecutiveFailures, 16));
+        consecutiveFailures++;
+        restartTimes.addLast(now);
+        LOG.info("Restarting OpenCode server for project " + project.getName() + " in " + delay + "ms (attempt " + consecutiveFailures + ")");
+        pendingRestart = executor.schedule(this::restart, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void restart() {
+        // A prompt or the user may have brought it back meanwhile
+        if (manager.getStatus() != OpenCodeServerManager.ServerStatus.ERROR) {
+            return;
+        }
+        // A failed attempt turns the status back to ERROR, which schedules the next one
+        manager.replaceServer();
+    }
+
+    private void cancelPendingRestart() {
+        if (pendingRestart != null) {
+            pendingRestart.cancel(false);
+            pendingRestart = null;
+        }
+    }
+
+    private void notifyCrashLoop() {
+        if (project.isDisposed()) {
+            return;
+        }
+        NotificationGroupManager.getInstance().getNotificationGroup("OpenCode")
+            .createNotification("OpenCode server keeps failing",
+                "It failed " + CRASH_LOOP_RESTARTS + " times within " + CRASH_LOOP_WINDOW_MS / 60_000
+                    + " minutes and is no longer restarted automatically. Its output is in the "
+                    + SERVER_LOG_TAB + " tab of the OpenCode tool window.",
+                NotificationType.ERROR)
+            .addAction(NotificationAction.createSimple("Show server log", this::showServerLog))
+            .addAction(NotificationAction.createSimpleExpiring("Restart server", manager::restartServer))
+            .notify(project);
+    }
+
+    private void showServerLog() {
+        ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow(TOOL_WINDOW_ID);
+        if (toolWindow == null) {
+            return;
+        }
+        toolWindow.activate(() -> {
+            Content serverLog = toolWindow.getContentManager().findContent(SERVER_LOG_TAB);
+            if (serverLog != null) {
+                toolWindow.getContentManager().setSelectedContent(serverLog);
+            }
+        });
+    }
+}
@@ -0,0 +1,331 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.OpenCodeMessage;
+import ua.naiksoftware.opencodeidea.model.OpenCodeSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches server session metadata and pages of session messages for the session browser.
+ * <p>
+ * The session list is refreshed at most every {@link #REFRESH_INTERVAL_MS} unless forced; a session whose
+ * {@code time.updated} changed by the time of a refresh has its cached messages dropped, everything else is
+ * reused. The server has no paging for session messages, so the message list of a session is fetched once
+ * when it is opened and pages are served from that copy. While the event stream is connected,
+ * {@code session.updated} and message events keep the cache current without a refresh, and changed messages
+ * are re-fetched one at a time.
+ */
+@Service(Service.Level.PROJECT)
+public final class OpenCodeSessionService implements Disposable, OpenCodeEventService.EventListener {
+    private static final Logger LOG = Logger.getInstance(OpenCodeSessionService.class);
+    private static final long REFRESH_INTERVAL_MS = 30_000;
+    private static final long MESSAGE_FETCH_DELAY_MS = 300;
+
+    private final Project project;
+    private final OpenCodeApiServiceImpl apiService;
+    private final Gson gson = new Gson();
+    private final Map<String, OpenCodeSession> sessionsById = new ConcurrentHashMap<>();
+    private final Map<String, SessionMessages> messagesBySession = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<SessionMessages>> messageFetches = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledFuture<?>> pendingMessageFetches = new ConcurrentHashMap<>();
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long lastRefresh;
+    @Nullable
+    private CompletableFuture<List<OpenCodeSession>> refreshInFlight;
+
+    public OpenCodeSessionService(@NotNull Project project) {
+        this.project = project;
+        this.apiService = OpenCodeApiServiceImpl.getInstance();
+        OpenCodeEventService.getInstance(project).addListener(this);
+    }
+
+    public static OpenCodeSessionService getInstance(@NotNull Project project) {
+        return project.getService(OpenCodeSessionService.class);
+    }
+
+    public interface SessionListener {
+        /**
+         * The cached session list changed. Sessions are ordered by last update, newest first.
+         */
+        default void sessionsChanged(@NotNull List<OpenCodeSession> sessions) {
+        }
+
+        /**
+         * A message of a session was added or changed on the server.
+         */
+        default void messageUpdated(@NotNull String sessionId, @NotNull OpenCodeMessage message) {
+        }
+    }
+
+    /**
+     * A page of messages, newest first.
+     */
+    public static final class MessagePage {
+        private final List<OpenCodeMessage> messages;
+        private final boolean hasMore;
+
+        MessagePage(@NotNull List<OpenCodeMessage> messages, boolean hasMore) {
+            this.messages = messages;
+            this.hasMore = hasMore;
+        }
+
+        @NotNull
+        public List<OpenCodeMessage> getMessages() { return messages; }
+        public boolean hasMore() { return hasMore; }
+    }
+
+    private static final class SessionMessages {
+        // Newest first; the whole history of the session
+        private final List<OpenCodeMessage> messages;
+
+        SessionMessages(@NotNull List<OpenCodeMessage> messages) {
+            this.messages = messages;
+        }
+    }
+
+    public void addListener(@NotNull SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull SessionListener listener) {
+        listeners.remove(listener);
+    }
+
+    @NotNull
+    public List<OpenCodeSession> getCachedSessions() {
+        List<OpenCodeSession> sessions = new ArrayList<>(sessionsById.values());
+        sessions.sort(Comparator.comparingLong(OpenCodeSessionService::updatedTime).reversed());
+        return sessions;
+    }
+
+    /**
+     * Re-lists sessions from the server unless the cache is fresh. Concurrent callers share one request.
+     */
+    @NotNull
+    public synchronized CompletableFuture<List<OpenCodeSession>> refreshSessions(boolean force) {
+        if (!force && System.currentTimeMillis() - lastRefresh < REFRESH_INTERVAL_MS) {
+            return CompletableFuture.completedFuture(getCachedSessions());
+        }
+        if (refreshInFlight != null && !refreshInFlight.isDone()) {
+            return refreshInFlight;
+        }
+        CompletableFuture<List<OpenCodeSession>> refresh = apiService.listSessions(project).thenApply(sessions -> {
+            boolean changed = mergeSessions(sessions);
+            lastRefresh = System.currentTimeMillis();
+            List<OpenCodeSession> sorted = getCachedSessions();
+            if (changed) {
+                notifySessionsChanged(sorted);
+            }
+            return sorted;
+        });
+        refreshInFlight = refresh;
+        return refresh;
+    }
+
+    /**
+     * Loads {@code pageSize} messages of a session, skipping the {@code offset} newest ones.
+     * The first page fetches the session's message list; later pages are served from it.
+     */
+    @NotNull
+    public CompletableFuture<MessagePage> loadMessages(@NotNull String sessionId, int offset, int pageSize) {
+        SessionMessages cached = messagesBySession.get(sessionId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(slice(cached, offset, pageSize));
+        }
+        return fetchMessages(sessionId).thenApply(loaded -> slice(loaded, offset, pageSize));
+    }
+
+    /**
+     * Fetches the message list of a session; concurrent callers share one request.
+     */
+    @NotNull
+    private CompletableFuture<SessionMessages> fetchMessages(@NotNull String sessionId) {
+        CompletableFuture<SessionMessages> fetch = new CompletableFuture<>();
+        CompletableFuture<SessionMessages> existing = messageFetches.putIfAbsent(sessionId, fetch);
+        if (existing != null) {
+            return existing;
+        }
+        apiService.listSessionMessages(project, sessionId).whenComplete((oldestFirst, throwable) -> {
+            messageFetches.remove(sessionId, fetch);
+            if (throwable != null) {
+                fetch.completeExceptionally(throwable);
+                return;
+            }
+            List<OpenCodeMessage> newestFirst = new ArrayList<>(oldestFirst);
+            Collections.reverse(newestFirst);
+            SessionMessages loaded = new SessionMessages(newestFirst);
+            messagesBySession.put(sessionId, loaded);
+            fetch.complete(loaded);
+        });
+        return fetch;
+    }
+
+    @NotNull
+    private static MessagePage slice(@NotNull SessionMessages cached, int offset, int pageSize) {
+        int from = Math.min(offset, cached.messages.size());
+        int to = Math.min(offset + pageSize, cached.messages.size());
+        return new MessagePage(new ArrayList<>(cached.messages.subList(from, to)), to < cached.messages.size());
+    }
+
+    /**
+     * Applies a fresh session list; returns true if anything visible changed.
+     */
+    private boolean mergeSessions(@NotNull List<OpenCodeSession> sessions) {
+        boolean changed = false;
+        Set<String> present = new HashSet<>();
+        for (OpenCodeSession session : sessions) {
+            present.add(session.getId());
+            changed |= putSession(session, false);
+        }
+        for (String id : new ArrayList<>(sessionsById.keySet())) {
+            if (!present.contains(id)) {
+                sessionsById.remove(id);
+                messagesBySession.remove(id);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Caches the session metadata. Unless {@code messagesFollowed}, cached messages are dropped if the session
+     * changed since, as their updates may have been missed. Returns true if it changed.
+     */
+    private boolean putSession(@NotNull OpenCodeSession session, boolean messagesFollowed) {
+        OpenCodeSession previous = sessionsById.put(session.getId(), session);
+        if (previous != null && updatedTime(previous) == updatedTime(session)) {
+            return !Objects.equals(previous.getTitle(), session.getTitle());
+        }
+        if (previous != null && !messagesFollowed) {
+            messagesBySession.remove(session.getId());
+        }
+        return true;
+    }
+
+    private static long updatedTime(@NotNull OpenCodeSession session) {
+        return session.getTime() != null ? session.getTime().getUpdated() : 0;
+    }
+
+    // ---- Event stream ----
+
+    @Override
+    public void onEvent(@NotNull OpenCodeEventService.ServerEvent event) {
+        // Called on the EDT with the payload already parsed; most events are streaming deltas of other kinds
+        String type = event.getType();
+        if (!"session.updated".equals(type) && !"message.updated".equals(type) && !"message.part.updated".equals(type)) {
+            return;
+        }
+        JsonObject properties = event.getProperties();
+        if (properties == null) {
+            return;
+        }
+
+        if ("session.updated".equals(type) && properties.has("info")) {
+            OpenCodeSession session = gson.fromJson(properties.get("info"), OpenCodeSession.class);
+            // Message events for the session arrive on the same stream and keep its cached messages current
+            if (session != null && session.getId() != null && putSession(session, true)) {
+                notifySessionsChanged(getCachedSessions());
+            }
+        } else if ("message.updated".equals(type) && properties.has("info")) {
+            JsonObject info = properties.getAsJsonObject("info");
+            scheduleMessageFetch(stringField(info, "sessionID"), stringField(info, "id"));
+        } else if ("message.part.updated".equals(type) && properties.has("part")) {
+            JsonObject part = properties.getAsJsonObject("part");
+            scheduleMessageFetch(stringField(part, "sessionID"), stringField(part, "messageID"));
+        }
+    }
+
+    /**
+     * Re-fetches one message shortly after it changes; bursts of part updates collapse into one request.
+     * Only sessions that were opened in the browser are followed.
+     */
+    private void scheduleMessageFetch(@Nullable String sessionId, @Nullable String messageId) {
+        if (sessionId == null || messageId == null || !messagesBySession.containsKey(sessionId)) {
+            return;
+        }
+        pendingMessageFetches.computeIfAbsent(messageId, id -> AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            pendingMessageFetches.remove(id);
+            apiService.getSessionMessage(project, sessionId, id).whenComplete((message, throwable) -> {
+                if (throwable != null) {
+                    LOG.debug("Failed to refresh message " + id, throwable);
+                } else if (message != null && message.getInfo() != null) {
+                    applyMessage(sessionId, message);
+                }
+            });
+        }, MESSAGE_FETCH_DELAY_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private void applyMessage(@NotNull String sessionId, @NotNull OpenCodeMessage message) {
+        messagesBySession.computeIfPresent(sessionId, (id, cached) -> {
+            List<OpenCodeMessage> messages = new ArrayList<>(cached.messages);
+            int existing = -1;
+            for (int i = 0; i < messages.size(); i++) {
+                if (message.getInfo().getId().equals(messages.get(i).getInfo().getId())) {
+                    existing = i;
+                    break;
+                }
+            }
+            if (existing >= 0) {
+                messages.set(existing, message);
+            } else {
+                messages.add(0, message);
+            }
+            return new SessionMessages(messages);
+        });
+        for (SessionListener listener : listeners) {
+            listener.messageUpdated(sessionId, message);
+        }
+    }
+
+    private void notifySessionsChanged(@NotNull List<OpenCodeSession> sessions) {
+        for (SessionListener listener : listeners) {
+            listener.sessionsChanged(sessions);
+        }
+    }
+
+    @Nullable
+    private static String stringField(@NotNull JsonObject object, @NotNull String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    @Override
+    public void onConnectionStatusChanged(boolean connected) {
+    }
+
+    @Override
+    public void onError(@NotNull Throwable error) {
+    }
+
+    @Override
+    public void dispose() {
+        OpenCodeEventService.getInstance(project).removeListener(this);
+        for (ScheduledFuture<?> fetch : pendingMessageFetches.values()) {
+            fetch.cancel(false);
+        }
+        listeners.clear();
+    }
+}
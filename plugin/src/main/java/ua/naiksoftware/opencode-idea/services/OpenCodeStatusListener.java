@@ -0,0 +1,33 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.util.messages.Topic;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Project-level push notifications about the OpenCode server and its event stream.
+ * Published on the thread that caused the transition, so UI subscribers must hop to the EDT themselves.
+ */
+public interface OpenCodeStatusListener {
+    
+    @Topic.ProjectLevel
+    Topic<OpenCodeStatusListener> TOPIC = Topic.create("OpenCode status", OpenCodeStatusListener.class);
+    
+    default void serverStatusChanged(@NotNull OpenCodeServerManager.ServerStatus oldStatus,
+                                     @NotNull OpenCodeServerManager.ServerStatus newStatus) {
+    }
+    
+    /**
+     * The running server was replaced by one at another address, without the status changing.
+     */
+    default void serverReplaced(@NotNull String serverUrl) {
+    }
+    
+    /**
+     * A new resource usage sample of the project's server was taken.
+     */
+    default void serverResourcesSampled(@NotNull ServerResourceSample sample) {
+    }
+    
+    default void eventStreamConnectionChanged(boolean connected) {
+    }
+}
@@ -0,0 +1,93 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
+import ua.naiksoftware.opencodeidea.model.OpenCodeRequest;
+
+/**
+ * Lays out a message from its most stable content to its most volatile: project instructions, shared code,
+ * earlier conversation, then the new question. Instructions go into the request's system field, which the
+ * server puts in front of the system prompt for the turn without storing it in the session, so they do not pile
+ * up once per turn. The other layers become text parts with a fixed header.
+ * <p>
+ * Providers cache prompts by prefix, so two turns reuse the cache up to the first byte that differs.
+ * The layout is therefore deterministic: the same inputs always produce the same bytes. Line endings are
+ * normalized, trailing whitespace is trimmed and empty layers are left out rather than sent as empty parts.
+ */
+final class PromptAssembler {
+    private static final String HISTORY_HEADER = "Conversation so far:\n\n";
+    private static final String QUESTION_HEADER = "Current question:\n";
+
+    @Nullable
+    private String instructions;
+    @Nullable
+    private SharedCodeTracker.Rendered code;
+    @Nullable
+    private String history;
+    @NotNull
+    private String question = "";
+
+    @NotNull
+    PromptAssembler instructions(@Nullable String instructions) {
+        this.instructions = instructions;
+        return this;
+    }
+
+    @NotNull
+    PromptAssembler code(@Nullable SharedCodeTracker.Rendered code) {
+        this.code = code;
+        return this;
+    }
+
+    @NotNull
+    PromptAssembler history(@Nullable String history) {
+        this.history = history;
+        return this;
+    }
+
+    @NotNull
+    PromptAssembler question(@NotNull String question) {
+        this.question = question;
+        return this;
+    }
+
+    @NotNull
+    OpenCodeRequest build(@NotNull String providerId, @NotNull String modelId) {
+        OpenCodeRequest request = new OpenCodeRequest();
+        request.setModel(providerId, modelId);
+        String system = normalize(instructions);
+        if (!system.isEmpty()) {
+            request.setSystem(system);
+        }
+        if (code != null) {
+            addLayer(request, "", code.getText());
+            CodeSnippet attachment = code.getAttachment();
+            if (attachment != null && attachment.getDiskPath() != null) {
+                // The co-located server reads the lines from disk; only the reference goes over the wire
+                request.addFilePart(attachment.getDiskPath(), attachment.getPath(), attachment.getStartLine(), attachment.getEndLine());
+            }
+        }
+        addLayer(request, HISTORY_HEADER, history);
+        // Without other layers the question goes out as is, like a message typed into opencode directly
+        boolean alone = request.getParts().isEmpty();
+        addLayer(request, alone ? "" : QUESTION_HEADER, question);
+        return request;
+    }
+
+    private static void addLayer(@NotNull OpenCodeRequest request, @NotNull String header, @Nullable String text) {
+        String normalized = normalize(text);
+        if (!normalized.isEmpty()) {
+            request.addTextPart(header + normalized);
+        }
+    }
+
+    @NotNull
+    private static String normalize(@Nullable String text) {
+        if (text == null) {
+            return "";
+        }
+        String unixEndings = text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+        return unixEndings.strip();
+    }
+}
@@ -0,0 +1,67 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.OpenCodeMessage;
+
+/**
+ * Prompt cache usage summed over the turns of a session. Immutable; {@link #plus} returns a new instance.
+ */
+public final class PromptCacheStats {
+    public static final PromptCacheStats EMPTY = new PromptCacheStats(0, 0, 0, 0);
+
+    private final int turns;
+    private final long uncachedTokens;
+    private final long cacheReadTokens;
+    private final long cacheWriteTokens;
+
+    private PromptCacheStats(int turns, long uncachedTokens, long cacheReadTokens, long cacheWriteTokens) {
+        this.turns = turns;
+        this.uncachedTokens = uncachedTokens;
+        this.cacheReadTokens = cacheReadTokens;
+        this.cacheWriteTokens = cacheWriteTokens;
+    }
+
+    /**
+     * Adds one turn. Messages without usage (user messages, or servers that do not report it) are skipped.
+     */
+    @NotNull
+    public PromptCacheStats plus(@Nullable OpenCodeMessage.MessageInfo.TokenUsage usage) {
+        if (usage == null) {
+            return this;
+        }
+        long read = usage.getCache() != null ? usage.getCache().getRead() : 0;
+        long write = usage.getCache() != null ? usage.getCache().getWrite() : 0;
+        if (usage.getInput() + read + write == 0) {
+            return this;
+        }
+        return new PromptCacheStats(turns + 1, uncachedTokens + usage.getInput(), cacheReadTokens + read, cacheWriteTokens + write);
+    }
+
+    public int getTurns() { return turns; }
+
+    /**
+     * All prompt tokens the provider processed, cached or not.
+     */
+    public long getPromptTokens() { return uncachedTokens + cacheReadTokens + cacheWriteTokens; }
+
+    public long getCacheReadTokens() { return cacheReadTokens; }
+
+    public long getCacheWriteTokens() { return cacheWriteTokens; }
+
+    /**
+     * Share of prompt tokens served from the cache, 0 to 1.
+     */
+    public double getHitRate() {
+        long prompt = getPromptTokens();
+        return prompt == 0 ? 0 : (double) cacheReadTokens / prompt;
+    }
+
+    /**
+     * Short form for status labels, e.g. "cache hit 73%", or an empty string before any usage was reported.
+     */
+    @NotNull
+    public String describe() {
+        return turns == 0 ? "" : "cache hit " + Math.round(getHitRate() * 100) + "%";
+    }
+}
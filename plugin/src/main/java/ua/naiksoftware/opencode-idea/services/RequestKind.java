@@ -0,0 +1,39 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What a request to the server is for. Model routes are chosen per kind.
+ */
+public enum RequestKind {
+    EXPLAIN("explain"),
+    OPTIMIZE("optimize"),
+    ASK("ask"),
+    CHAT("chat"),
+    BATCH("batch");
+
+    private final String key;
+
+    RequestKind(@NotNull String key) {
+        this.key = key;
+    }
+
+    /**
+     * Name used for the kind in model route settings.
+     */
+    @NotNull
+    public String getKey() {
+        return key;
+    }
+
+    @Nullable
+    static RequestKind fromKey(@NotNull String key) {
+        for (RequestKind kind : values()) {
+            if (kind.key.equalsIgnoreCase(key)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+}
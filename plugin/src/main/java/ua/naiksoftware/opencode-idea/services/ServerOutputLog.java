@@ -0,0 +1,220 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * The last {@link #CAPACITY} lines the servers for one working directory printed, standbys and replaced servers
+ * included.
+ * <p>
+ * Lines are only stored on the process reader thread; nothing is formatted there. Warnings and errors also go to
+ * the IDE log, at most {@link #FORWARDED_PER_MINUTE} a minute. With {@link OpenCodeConfig#isMirrorServerOutput()}
+ * every line is also written, on a pooled thread, to a file in the IDE log directory that is rotated at
+ * {@link #MAX_FILE_BYTES}.
+ */
+public final class ServerOutputLog {
+    private static final Logger LOG = Logger.getInstance(ServerOutputLog.class);
+    private static final int CAPACITY = 5000;
+    private static final int FORWARDED_PER_MINUTE = 20;
+    private static final long MAX_FILE_BYTES = 5L * 1024 * 1024;
+    // Rotated files kept besides the current one
+    private static final int ROTATED_FILES = 3;
+    private static final Pattern PROBLEM = Pattern.compile("\\b(WARN|WARNING|ERROR|FATAL|PANIC)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final Path file;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService fileWriter = AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenCodeServerOutput", 1);
+
+    // Guarded by this
+    private final Line[] lines = new Line[CAPACITY];
+    private int count;
+    private int next;
+    private long forwardWindowStart;
+    private int forwardedInWindow;
+    private int notForwarded;
+
+    // File writer thread only
+    @Nullable
+    private BufferedWriter writer;
+
+    public interface Listener {
+        /**
+         * Called on the process reader thread.
+         */
+        void lineAdded(@NotNull Line line);
+    }
+
+    public static final class Line {
+        private final long timestamp;
+        private final long pid;
+        private final boolean stderr;
+        private final boolean problem;
+        private final String text;
+
+        Line(long timestamp, long pid, boolean stderr, boolean problem, @NotNull String text) {
+            this.timestamp = timestamp;
+            this.pid = pid;
+            this.stderr = stderr;
+            this.problem = problem;
+            this.text = text;
+        }
+
+        public long getTimestamp() { return timestamp; }
+
+        public long getPid() { return pid; }
+
+        public boolean isStderr() { return stderr; }
+
+        /**
+         * Whether the line reports a warning or an error.
+         */
+        public boolean isProblem() { return problem; }
+
+        @NotNull
+        public String getText() { return text; }
+    }
+
+    ServerOutputLog(@NotNull String workDirectory) {
+        Path directory = Path.of(workDirectory).getFileName();
+        String name = (directory != null ? directory.toString().replaceAll("[^A-Za-z0-9._-]", "_") : "root")
+            + "-" + Integer.toHexString(workDirectory.hashCode());
+        this.file = Path.of(PathManager.getLogPath(), "opencode-server", name + ".log");
+    }
+
+    public void addListener(@NotNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stored lines, oldest first.
+     */
+    @NotNull
+    public synchronized List<Line> getLines() {
+        List<Line> snapshot = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            snapshot.add(lines[(next - count + i + CAPACITY) % CAPACITY]);
+        }
+        return snapshot;
+    }
+
+    @NotNull
+    public Path getFile() {
+        return file;
+    }
+
+    void append(long pid, boolean stderr, @NotNull String text) {
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        if (end == 0) {
+            return;
+        }
+        String lineText = end == text.length() ? text : text.substring(0, end);
+        Line line = new Line(System.currentTimeMillis(), pid, stderr, PROBLEM.matcher(lineText).find(), lineText);
+        synchronized (this) {
+            lines[next] = line;
+            next = (next + 1) % CAPACITY;
+            count = Math.min(count + 1, CAPACITY);
+        }
+        if (line.isProblem()) {
+            forward(line);
+        }
+        if (OpenCodeConfig.getInstance().isMirrorServerOutput()) {
+            fileWriter.execute(() -> write(line));
+        }
+        for (Listener listener : listeners) {
+            listener.lineAdded(line);
+        }
+    }
+
+    void close() {
+        fileWriter.execute(this::closeWriter);
+    }
+
+    private void forward(@NotNull Line line) {
+        int skipped;
+        synchronized (this) {
+            if (line.getTimestamp() - forwardWindowStart >= 60_000) {
+                forwardWindowStart = line.getTimestamp();
+                forwardedInWindow = 0;
+            }
+            if (forwardedInWindow >= FORWARDED_PER_MINUTE) {
+                notForwarded++;
+                return;
+            }
+            forwardedInWindow++;
+            skipped = notForwarded;
+            notForwarded = 0;
+        }
+        LOG.warn("OpenCode server " + line.getPid() + ": " + line.getText()
+            + (skipped > 0 ? " (" + skipped + " earlier warnings not logged, see the Server Log tab)" : ""));
+    }
+
+    private void write(@NotNull Line line) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(file.getParent());
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(Instant.ofEpochMilli(line.getTimestamp()) + " " + line.getPid() + (line.isStderr() ? " E " : " O ") + line.getText());
+            writer.newLine();
+            writer.flush();
+            if (Files.size(file) >= MAX_FILE_BYTES) {
+                rotate();
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not write OpenCode server output to " + file + ": " + e.getMessage());
+            closeWriter();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeWriter();
+        for (int i = ROTATED_FILES; i >= 1; i--) {
+            Path source = i == 1 ? file : rotated(i - 1);
+            if (Files.exists(source)) {
+                Files.move(source, rotated(i), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    @NotNull
+    private Path rotated(int generation) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - ".log".length()) + "." + generation + ".log");
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close " + file + ": " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
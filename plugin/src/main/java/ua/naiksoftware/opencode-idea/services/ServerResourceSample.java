@@ -0,0 +1,52 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Resource usage of a server process and its children at one point in time.
+ * Values the platform does not expose are -1.
+ */
+public final class ServerResourceSample {
+    private final long timestamp;
+    private final long rssBytes;
+    private final long cpuTimeMs;
+    private final double cpuPercent;
+    private final int openFiles;
+
+    ServerResourceSample(long timestamp, long rssBytes, long cpuTimeMs, double cpuPercent, int openFiles) {
+        this.timestamp = timestamp;
+        this.rssBytes = rssBytes;
+        this.cpuTimeMs = cpuTimeMs;
+        this.cpuPercent = cpuPercent;
+        this.openFiles = openFiles;
+    }
+
+    public long getTimestamp() { return timestamp; }
+
+    public long getRssBytes() { return rssBytes; }
+
+    public long getCpuTimeMs() { return cpuTimeMs; }
+
+    /**
+     * CPU used since the previous sample, where 100 is one core fully busy.
+     */
+    public double getCpuPercent() { return cpuPercent; }
+
+    public int getOpenFiles() { return openFiles; }
+
+    @NotNull
+    public static String formatBytes(long bytes) {
+        if (bytes < 0) {
+            return "?";
+        }
+        if (bytes >= 1024L * 1024 * 1024) {
+            return String.format("%.1f GB", bytes / (1024.0 * 1024 * 1024));
+        }
+        return (bytes / (1024 * 1024)) + " MB";
+    }
+
+    @Override
+    public String toString() {
+        return "RSS " + formatBytes(rssBytes) + ", CPU " + Math.round(cpuPercent) + "%, " + openFiles + " open files";
+    }
+}
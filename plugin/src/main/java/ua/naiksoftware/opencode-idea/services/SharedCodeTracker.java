@@ -0,0 +1,182 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.diff.Diff;
+import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.CodeSnippet;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which code each server session has already seen, so follow-up turns can send a reference or a
+ * diff instead of the full text again.
+ * <p>
+ * Per session it keeps the fingerprints of every snippet delivered (identical code becomes a one-line
+ * reference) and the last text delivered per file (changed code becomes a diff when that is smaller).
+ * A snippet only counts as seen after the request carrying it succeeded.
+ */
+final class SharedCodeTracker {
+    private static final Logger LOG = Logger.getInstance(SharedCodeTracker.class);
+    private static final int MAX_FINGERPRINTS_PER_SESSION = 256;
+    private static final int MAX_FILES_PER_SESSION = 32;
+    private static final int MAX_TRACKED_LENGTH = 200_000;
+    private static final int CONTEXT_LINES = 2;
+    private static final int FILE_PART_MIN_LENGTH = 2000;
+
+    // Guarded by this
+    private final Map<String, SessionState> sessions = new HashMap<>();
+
+    static final class Rendered {
+        private final String text;
+        private final Runnable onDelivered;
+        @Nullable
+        private final CodeSnippet attachment;
+
+        Rendered(@NotNull String text, @NotNull Runnable onDelivered) {
+            this(text, onDelivered, null);
+        }
+
+        Rendered(@NotNull String text, @NotNull Runnable onDelivered, @Nullable CodeSnippet attachment) {
+            this.text = text;
+            this.onDelivered = onDelivered;
+            this.attachment = attachment;
+        }
+
+        @NotNull
+        String getText() { return text; }
+
+        /**
+         * Snippet to send as a file part that the server reads from disk, or null if the text says it all.
+         */
+        @Nullable
+        CodeSnippet getAttachment() { return attachment; }
+
+        /**
+         * Records the snippet as seen by the session. Call once the server accepted the message.
+         */
+        void markDelivered() { onDelivered.run(); }
+    }
+
+    private static final class SessionState {
+        private final Map<String, Boolean> fingerprints = lru(MAX_FINGERPRINTS_PER_SESSION);
+        private final Map<String, String> lastTextByPath = lru(MAX_FILES_PER_SESSION);
+    }
+
+    /**
+     * Formats the snippet for the given session: the full code the first time, a reference if the session has
+     * seen exactly this code, or a diff against the last version of the same file if that is at most half the size.
+     * Large selections of saved files are attached as file parts instead of being inlined.
+     */
+    @NotNull
+    synchronized Rendered render(@NotNull String sessionId, @NotNull CodeSnippet snippet) {
+        String text = snippet.getText();
+        String fingerprint = fingerprint(text);
+        SessionState state = sessions.get(sessionId);
+        Runnable record = () -> remember(sessionId, snippet, fingerprint);
+
+        if (state != null && state.fingerprints.containsKey(fingerprint)) {
+            String location = snippet.getLocation();
+            return new Rendered(location != null
+                    ? "Code: " + location + " is unchanged since it was shared earlier in this conversation."
+                    : "Code: the same selection that was shared earlier in this conversation, unchanged.", record);
+        }
+
+        String previous = state != null && snippet.getPath() != null ? state.lastTextByPath.get(snippet.getPath()) : null;
+        if (previous != null) {
+            String diff = diff(previous, text);
+            if (diff != null && diff.length() * 2 <= text.length()) {
+                return new Rendered("Code: " + snippet.getLocation() + " changed since it was last shared; diff against that version:\n"
+                        + "```diff\n" + diff + "```", record);
+            }
+        }
+
+        if (snippet.getDiskPath() != null && text.length() >= FILE_PART_MIN_LENGTH) {
+            return new Rendered("Code: see the attached " + snippet.getLocation() + ".", record, snippet);
+        }
+
+        String header = snippet.getLocation() != null ? "Code (" + snippet.getLocation() + "):\n" : "Code:\n";
+        return new Rendered(header + text, record);
+    }
+
+    synchronized void forgetSession(@NotNull String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    synchronized void clear() {
+        sessions.clear();
+    }
+
+    private synchronized void remember(@NotNull String sessionId, @NotNull CodeSnippet snippet, @NotNull String fingerprint) {
+        SessionState state = sessions.computeIfAbsent(sessionId, id -> new SessionState());
+        state.fingerprints.put(fingerprint, Boolean.TRUE);
+        if (snippet.getPath() != null && snippet.getText().length() <= MAX_TRACKED_LENGTH) {
+            state.lastTextByPath.put(snippet.getPath(), snippet.getText());
+        }
+    }
+
+    /**
+     * Unified-style hunks with a little context, or null if the texts are too large to compare.
+     */
+    @Nullable
+    private static String diff(@NotNull String before, @NotNull String after) {
+        String[] beforeLines = before.split("\n", -1);
+        String[] afterLines = after.split("\n", -1);
+        Diff.Change change;
+        try {
+            change = Diff.buildChanges(beforeLines, afterLines);
+        } catch (FilesTooBigForDiffException e) {
+            LOG.debug("Shared code too large to diff", e);
+            return null;
+        }
+
+        StringBuilder out = new StringBuilder();
+        for (; change != null; change = change.link) {
+            int contextStart = Math.max(0, change.line0 - CONTEXT_LINES);
+            int contextEnd = Math.min(beforeLines.length, change.line0 + change.deleted + CONTEXT_LINES);
+            out.append("@@ -").append(change.line0 + 1).append(',').append(change.deleted)
+               .append(" +").append(change.line1 + 1).append(',').append(change.inserted).append(" @@\n");
+            for (int i = contextStart; i < change.line0; i++) {
+                out.append(' ').append(beforeLines[i]).append('\n');
+            }
+            for (int i = 0; i < change.deleted; i++) {
+                out.append('-').append(beforeLines[change.line0 + i]).append('\n');
+            }
+            for (int i = 0; i < change.inserted; i++) {
+                out.append('+').append(afterLines[change.line1 + i]).append('\n');
+            }
+            for (int i = change.line0 + change.deleted; i < contextEnd; i++) {
+                out.append(' ').append(beforeLines[i]).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    @NotNull
+    private static String fingerprint(@NotNull String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE ships SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
@@ -1,6 +1,9 @@
 package ua.naiksoftware.opencodeidea.settings;
 
+import com.intellij.ui.components.JBCheckBox;
 import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextArea;
 import com.intellij.ui.components.JBTextField;
 import com.intellij.util.ui.FormBuilder;
 import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
@@ -14,6 +17,15 @@ public class OpenCodeSettingsPanel {
     private final JBTextField providerIdField;
     private final JBTextField modelIdField;
     private final JBTextField timeoutField;
+    private final JBTextField contextBudgetField;
+    private final JBTextArea instructionsArea;
+    private final JBTextArea modelRoutesArea;
+    private final JBCheckBox warmStandbyCheckBox;
+    private final JBTextField memoryLimitField;
+    private final JBCheckBox restartOnMemoryLimitCheckBox;
+    private final JBCheckBox mirrorServerOutputCheckBox;
+    private final JBCheckBox startOnProjectOpenCheckBox;
+    private final JBTextField idleShutdownField;
     private boolean isModified = false;
 
     public OpenCodeSettingsPanel() {
@@ -23,18 +35,50 @@ public class OpenCodeSettingsPanel {
         providerIdField = new JBTextField(config.getProviderId());
         modelIdField = new JBTextField(config.getModelId());
         timeoutField = new JBTextField(String.valueOf(config.getTimeoutSeconds()));
+        contextBudgetField = new JBTextField(String.valueOf(config.getContextTokenBudget()));
+        instructionsArea = new JBTextArea(config.getPromptInstructions(), 5, 40);
+        instructionsArea.setLineWrap(true);
+        instructionsArea.setWrapStyleWord(true);
+        modelRoutesArea = new JBTextArea(config.getModelRoutes(), 4, 40);
+        modelRoutesArea.setToolTipText("<html>One route per line, the first match wins:<br>"
+                + "<code>&lt;explain|optimize|ask|chat|batch|*&gt; [max &lt;tokens&gt;] provider/model [fallback provider/model]</code><br>"
+                + "Requests no route matches use the provider and model above.</html>");
+        warmStandbyCheckBox = new JBCheckBox("Keep a warm standby server for instant recovery (uses more memory)", config.isWarmStandby());
+        memoryLimitField = new JBTextField(String.valueOf(config.getServerMemoryLimitMb()));
+        restartOnMemoryLimitCheckBox = new JBCheckBox("Restart the server between prompts when over the limit, instead of warning", config.isRestartOnMemoryLimit());
+        mirrorServerOutputCheckBox = new JBCheckBox("Also write server output to a rotating file in the IDE log directory", config.isMirrorServerOutput());
+        startOnProjectOpenCheckBox = new JBCheckBox("Start the server when a project opens, not when OpenCode is first used", config.isStartServerOnProjectOpen());
+        idleShutdownField = new JBTextField(String.valueOf(config.getIdleShutdownMinutes()));
 
         // Add change listeners
         baseUrlField.getDocument().addDocumentListener(new SimpleDocumentListener());
         providerIdField.getDocument().addDocumentListener(new SimpleDocumentListener());
         modelIdField.getDocument().addDocumentListener(new SimpleDocumentListener());
         timeoutField.getDocument().addDocumentListener(new SimpleDocumentListener());
+        contextBudgetField.getDocument().addDocumentListener(new SimpleDocumentListener());
+        instructionsArea.getDocument().addDocumentListener(new SimpleDocumentListener());
+        modelRoutesArea.getDocument().addDocumentListener(new SimpleDocumentListener());
+        warmStandbyCheckBox.addActionListener(e -> isModified = true);
+        memoryLimitField.getDocument().addDocumentListener(new SimpleDocumentListener());
+        restartOnMemoryLimitCheckBox.addActionListener(e -> isModified = true);
+        mirrorServerOutputCheckBox.addActionListener(e -> isModified = true);
+        startOnProjectOpenCheckBox.addActionListener(e -> isModified = true);
+        idleShutdownField.getDocument().addDocumentListener(new SimpleDocumentListener());
 
         panel = FormBuilder.createFormBuilder()
                 .addLabeledComponent(new JBLabel("Server Base URL:"), baseUrlField, 1, false)
                 .addLabeledComponent(new JBLabel("Provider ID:"), providerIdField, 1, false)
                 .addLabeledComponent(new JBLabel("Model ID:"), modelIdField, 1, false)
                 .addLabeledComponent(new JBLabel("Timeout (seconds):"), timeoutField, 1, false)
+                .addLabeledComponent(new JBLabel("Chat context budget (tokens):"), contextBudgetField, 1, false)
+                .addLabeledComponent(new JBLabel("Instructions sent with every message:"), new JBScrollPane(instructionsArea), 1, true)
+                .addLabeledComponent(new JBLabel("Model routes:"), new JBScrollPane(modelRoutesArea), 1, true)
+                .addComponent(startOnProjectOpenCheckBox, 1)
+                .addLabeledComponent(new JBLabel("Stop the server after idle (minutes, 0 for never):"), idleShutdownField, 1, false)
+                .addComponent(warmStandbyCheckBox, 1)
+                .addLabeledComponent(new JBLabel("Server memory limit (MB, 0 for none):"), memoryLimitField, 1, false)
+                .addComponent(restartOnMemoryLimitCheckBox, 1)
+                .addComponent(mirrorServerOutputCheckBox, 1)
                 .addComponentFillVertically(new JPanel(), 0)
                 .getPanel();
     }
@@ -63,6 +107,54 @@ public class OpenCodeSettingsPanel {
         }
     }
     
+    public int getContextTokenBudget() {
+        try {
+            return Integer.parseInt(contextBudgetField.getText().trim());
+        } catch (NumberFormatException e) {
+            return OpenCodeConfig.getInstance().getContextTokenBudget();
+        }
+    }
+    
+    public String getPromptInstructions() {
+        return instructionsArea.getText();
+    }
+    
+    public String getModelRoutes() {
+        return modelRoutesArea.getText();
+    }
+    
+    public boolean isWarmStandby() {
+        return warmStandbyCheckBox.isSelected();
+    }
+    
+    public int getServerMemoryLimitMb() {
+        try {
+            return Integer.parseInt(memoryLimitField.getText().trim());
+        } catch (NumberFormatException e) {
+            return OpenCodeConfig.getInstance().getServerMemoryLimitMb();
+        }
+    }
+    
+    public boolean isRestartOnMemoryLimit() {
+        return restartOnMemoryLimitCheckBox.isSelected();
+    }
+    
+    public boolean isMirrorServerOutput() {
+        return mirrorServerOutputCheckBox.isSelected();
+    }
+    
+    public boolean isStartServerOnProjectOpen() {
+        return startOnProjectOpenCheckBox.isSelected();
+    }
+    
+    public int getIdleShutdownMinutes() {
+        try {
+            return Integer.parseInt(idleShutdownField.getText().trim());
+        } catch (NumberFormatException e) {
+            return OpenCodeConfig.getInstance().getIdleShutdownMinutes();
+        }
+    }
+    
     public boolean isModified() {
         if (isModified) return true;
         
@@ -70,7 +162,16 @@ public class OpenCodeSettingsPanel {
         return !config.getBaseUrl().equals(getBaseUrl()) ||
                !config.getProviderId().equals(getProviderId()) ||
                !config.getModelId().equals(getModelId()) ||
-               config.getTimeoutSeconds() != getTimeoutSeconds();
+               config.getTimeoutSeconds() != getTimeoutSeconds() ||
+               config.getContextTokenBudget() != getContextTokenBudget() ||
+               !config.getPromptInstructions().equals(getPromptInstructions()) ||
+               !config.getModelRoutes().equals(getModelRoutes()) ||
+               config.isWarmStandby() != isWarmStandby() ||
+               config.getServerMemoryLimitMb() != getServerMemoryLimitMb() ||
+               config.isRestartOnMemoryLimit() != isRestartOnMemoryLimit() ||
+               config.isMirrorServerOutput() != isMirrorServerOutput() ||
+               config.isStartServerOnProjectOpen() != isStartServerOnProjectOpen() ||
+               config.getIdleShutdownMinutes() != getIdleShutdownMinutes();
     }
     
     public void setModified(boolean modified) {
@@ -83,6 +184,15 @@ public class OpenCodeSettingsPanel {
         providerIdField.setText(config.getProviderId());
         modelIdField.setText(config.getModelId());
         timeoutField.setText(String.valueOf(config.getTimeoutSeconds()));
+        contextBudgetField.setText(String.valueOf(config.getContextTokenBudget()));
+        instructionsArea.setText(config.getPromptInstructions());
+        modelRoutesArea.setText(config.getModelRoutes());
+        warmStandbyCheckBox.setSelected(config.isWarmStandby());
+        memoryLimitField.setText(String.valueOf(config.getServerMemoryLimitMb()));
+        restartOnMemoryLimitCheckBox.setSelected(config.isRestartOnMemoryLimit());
+        mirrorServerOutputCheckBox.setSelected(config.isMirrorServerOutput());
+        startOnProjectOpenCheckBox.setSelected(config.isStartServerOnProjectOpen());
+        idleShutdownField.setText(String.valueOf(config.getIdleShutdownMinutes()));
         isModified = false;
     }
     
@@ -92,6 +202,15 @@ public class OpenCodeSettingsPanel {
         config.setProviderId(getProviderId());
         config.setModelId(getModelId());
         config.setTimeoutSeconds(getTimeoutSeconds());
+        config.setContextTokenBudget(getContextTokenBudget());
+        config.setPromptInstructions(getPromptInstructions());
+        config.setModelRoutes(getModelRoutes());
+        config.setWarmStandby(isWarmStandby());
+        config.setServerMemoryLimitMb(getServerMemoryLimitMb());
+        config.setRestartOnMemoryLimit(isRestartOnMemoryLimit());
+        config.setMirrorServerOutput(isMirrorServerOutput());
+        config.setStartServerOnProjectOpen(isStartServerOnProjectOpen());
+        config.setIdleShutdownMinutes(getIdleShutdownMinutes());
         isModified = false;
     }
     
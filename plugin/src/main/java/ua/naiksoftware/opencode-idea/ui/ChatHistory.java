@@ -1,29 +1,50 @@
 package ua.naiksoftware.opencodeidea.ui;
 
 import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.SwingUtilities;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ChatHistory {
-    private final List<ChatMessage> messages = new CopyOnWriteArrayList<>();
+    // "User: " / "Assistant: " and the blank line after each message
+    private static final int ROLE_PREFIX_TOKENS = 4;
+    
+    private final ChatMessageLog messages = new ChatMessageLog();
     private final List<ChatHistoryListener> listeners = new CopyOnWriteArrayList<>();
     private final Project project;
+    private final ChatHistoryStore store;
+    private final ChatSearchIndex searchIndex;
     
     @Nullable
     private String currentSessionId;
     
+    // Ordinal in the store of the oldest message handed out so far; older ones are paged in on demand
+    private volatile int oldestLoadedOrdinal;
+    
+    // Bumped on clear so that a restore that was already loading does not bring the old messages back
+    private volatile int clearCount;
+    
     public ChatHistory(@NotNull Project project) {
         this.project = project;
+        this.store = ChatHistoryStore.getInstance(project);
+        this.searchIndex = ChatSearchIndex.getInstance(project);
     }
     
     public interface ChatHistoryListener {
         void onMessageAdded(ChatMessage message);
         void onHistoryCleared();
+        
+        /**
+         * Messages in [fromIndex, toIndex) were replaced in place, e.g. by streaming content updates.
+         */
+        default void onMessagesUpdated(int fromIndex, int toIndex) {
+        }
     }
     
     public void addListener(ChatHistoryListener listener) {
@@ -34,8 +55,12 @@ public class ChatHistory {
         listeners.remove(listener);
     }
     
+    /**
+     * Adds the message to the in-memory history; persisting and indexing it happens in the background.
+     */
     public void addMessage(@NotNull ChatMessage message) {
-        messages.add(message);
+        messages.append(message);
+        store.append(message).thenAccept(ordinal -> searchIndex.index(ordinal, message));
         SwingUtilities.invokeLater(() -> {
             for (ChatHistoryListener listener : listeners) {
                 listener.onMessageAdded(message);
@@ -43,6 +68,47 @@ public class ChatHistory {
         });
     }
     
+    /**
+     * Replaces the content of an existing message, keeping its position in the history.
+     * Returns false if no message with that id exists.
+     */
+    public boolean updateMessage(@NotNull String messageId, @NotNull String newContent) {
+        return updateMessage(messageId, newContent, true);
+    }
+    
+    /**
+     * Replaces the content of an existing message in place. Streaming updates pass {@code persist = false}
+     * so that only the final content is written to disk and indexed.
+     */
+    public boolean updateMessage(@NotNull String messageId, @NotNull String newContent, boolean persist) {
+        int index = messages.indexOf(messageId);
+        if (index < 0) {
+            return false;
+        }
+        ChatMessage updated = messages.get(index).withContent(newContent);
+        if (messages.replace(updated) < 0) {
+            return false;
+        }
+        if (persist) {
+            store.update(updated).thenAccept(ordinal -> {
+                if (ordinal >= 0) {
+                    searchIndex.index(ordinal, updated);
+                }
+            });
+        }
+        SwingUtilities.invokeLater(() -> {
+            // Restored messages may have been inserted above it, or the history cleared, since the update
+            int current = messages.indexOf(messageId);
+            if (current < 0) {
+                return;
+            }
+            for (ChatHistoryListener listener : listeners) {
+                listener.onMessagesUpdated(current, current + 1);
+            }
+        });
+        return true;
+    }
+    
     public void addUserMessage(@NotNull String content) {
         addMessage(new ChatMessage(content, ChatMessage.Role.USER));
     }
@@ -51,12 +117,81 @@ public class ChatHistory {
         addMessage(new ChatMessage(content, ChatMessage.Role.ASSISTANT));
     }
     
+    /**
+     * Read-only snapshot of the current messages; does not copy them.
+     */
     public List<ChatMessage> getMessages() {
-        return new ArrayList<>(messages);
+        return messages.snapshot();
+    }
+    
+    @NotNull
+    public ChatMessage getMessage(int index) {
+        return messages.get(index);
+    }
+    
+    @Nullable
+    public ChatMessage getMessage(@NotNull String messageId) {
+        int index = messages.indexOf(messageId);
+        return index < 0 ? null : messages.get(index);
+    }
+    
+    /**
+     * Loads the most recent persisted messages off the EDT and inserts them on the EDT before the messages added
+     * in the meantime, skipping any that are already present. Listeners are not notified.
+     * Completes on the EDT with the inserted messages in order; the caller is expected to render them.
+     */
+    @NotNull
+    public CompletableFuture<List<ChatMessage>> restoreRecentMessages(int count) {
+        int clearCountAtStart = clearCount;
+        return CompletableFuture.supplyAsync(() -> store.loadTail(count), AppExecutorUtil.getAppExecutorService()).thenApplyAsync(page -> {
+            if (clearCount != clearCountAtStart) {
+                return List.<ChatMessage>of();
+            }
+            List<ChatMessage> inserted = new ArrayList<>(page.getMessages().size());
+            for (ChatMessage message : page.getMessages()) {
+                // Sent while the tail was loading and already persisted behind it
+                if (messages.indexOf(message.getMessageId()) < 0) {
+                    inserted.add(message);
+                }
+            }
+            messages.prepend(inserted);
+            oldestLoadedOrdinal = page.getFrom();
+            return inserted;
+        }, SwingUtilities::invokeLater);
+    }
+    
+    public boolean hasOlderMessages() {
+        return oldestLoadedOrdinal > 0;
+    }
+    
+    public int getOldestLoadedOrdinal() {
+        return oldestLoadedOrdinal;
+    }
+    
+    /**
+     * Reads the page of persisted messages just before the oldest one loaded so far. Call on the EDT; completes on
+     * the EDT, with no messages if the history was cleared or another page was loaded meanwhile.
+     * Older pages are only displayed; they are not added to the in-memory history.
+     */
+    @NotNull
+    public CompletableFuture<List<ChatMessage>> loadOlderMessages(int count) {
+        int clearCountAtStart = clearCount;
+        int before = oldestLoadedOrdinal;
+        return CompletableFuture.supplyAsync(() -> store.loadBefore(before, count), AppExecutorUtil.getAppExecutorService()).thenApplyAsync(page -> {
+            if (clearCount != clearCountAtStart || oldestLoadedOrdinal != before) {
+                return List.<ChatMessage>of();
+            }
+            oldestLoadedOrdinal = page.getFrom();
+            return page.getMessages();
+        }, SwingUtilities::invokeLater);
     }
     
     public void clearHistory() {
+        clearCount++;
         messages.clear();
+        store.clear();
+        searchIndex.clear();
+        oldestLoadedOrdinal = 0;
         currentSessionId = null;
         SwingUtilities.invokeLater(() -> {
             for (ChatHistoryListener listener : listeners) {
@@ -66,7 +201,7 @@ public class ChatHistory {
     }
     
     public boolean hasMessages() {
-        return !messages.isEmpty();
+        return messages.size() > 0;
     }
     
     public int getMessageCount() {
@@ -75,29 +210,18 @@ public class ChatHistory {
     
     @Nullable
     public ChatMessage getLastMessage() {
-        return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        List<ChatMessage> snapshot = messages.snapshot();
+        return snapshot.isEmpty() ? null : snapshot.get(snapshot.size() - 1);
     }
     
     @Nullable
     public ChatMessage getLastUserMessage() {
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            ChatMessage message = messages.get(i);
-            if (message.isUser()) {
-                return message;
-            }
-        }
-        return null;
+        return messages.getLast(ChatMessage.Role.USER);
     }
     
     @Nullable
     public ChatMessage getLastAssistantMessage() {
-        for (int i = messages.size() - 1; i >= 0; i--) {
-            ChatMessage message = messages.get(i);
-            if (message.isAssistant()) {
-                return message;
-            }
-        }
-        return null;
+        return messages.getLast(ChatMessage.Role.ASSISTANT);
     }
     
     @Nullable
@@ -113,19 +237,55 @@ public class ChatHistory {
         return project;
     }
     
+    /**
+     * Most recent messages whose estimated size fits {@code tokenBudget}, oldest first.
+     * Walks back from the tail using cached per-message estimates, so the cost is proportional to the
+     * number of messages included rather than the length of the history.
+     */
+    @NotNull
+    public ConversationContext buildConversationContext(int tokenBudget) {
+        List<ChatMessage> snapshot = messages.snapshot();
+        int remaining = tokenBudget;
+        int first = snapshot.size();
+        int textLength = 0;
+        while (first > 0) {
+            ChatMessage message = snapshot.get(first - 1);
+            int cost = message.getEstimatedTokens() + ROLE_PREFIX_TOKENS;
+            if (cost > remaining) {
+                break;
+            }
+            remaining -= cost;
+            textLength += message.getContent().length() + 16;
+            first--;
+        }
+        if (first == snapshot.size()) {
+            return ConversationContext.EMPTY;
+        }
+        
+        StringBuilder context = new StringBuilder(textLength);
+        for (int i = first; i < snapshot.size(); i++) {
+            ChatMessage message = snapshot.get(i);
+            context.append(message.isUser() ? "User: " : "Assistant: ");
+            context.append(message.getContent());
+            context.append("\n\n");
+        }
+        return new ConversationContext(context.toString(), tokenBudget - remaining, snapshot.size() - first, first);
+    }
+    
     /**
      * Get conversation context for API requests (recent messages)
      */
     public String getConversationContext(int maxMessages) {
-        if (messages.isEmpty()) {
+        List<ChatMessage> snapshot = messages.snapshot();
+        if (snapshot.isEmpty()) {
             return "";
         }
         
         StringBuilder context = new StringBuilder();
-        int startIndex = Math.max(0, messages.size() - maxMessages);
+        int startIndex = Math.max(0, snapshot.size() - maxMessages);
         
-        for (int i = startIndex; i < messages.size(); i++) {
-            ChatMessage message = messages.get(i);
+        for (int i = startIndex; i < snapshot.size(); i++) {
+            ChatMessage message = snapshot.get(i);
             context.append(message.isUser() ? "User: " : "Assistant: ");
             context.append(message.getContent());
             context.append("\n\n");
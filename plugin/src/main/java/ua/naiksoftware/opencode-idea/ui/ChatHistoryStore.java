@@ -0,0 +1,633 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.io.ByteBufferUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Per-project on-disk transcript under the IDE system directory.
+ * <p>
+ * Messages are appended as length-prefixed records to segment files that are never rewritten. A separate
+ * fixed-width index maps each message ordinal to the location of its latest record; updating a message
+ * appends a new record and patches one index slot. Reads go through memory-mapped segments, so reopening a
+ * project only touches the records of the tail that is actually loaded. Superseded records are dropped by
+ * background compaction.
+ * <p>
+ * Opening the files, writes and compaction run on one sequential background executor, so callers on the EDT
+ * only enqueue work. Reads block while compaction runs and must be called off the EDT.
+ */
+@Service(Service.Level.PROJECT)
+public final class ChatHistoryStore implements Disposable {
+    private static final Logger LOG = Logger.getInstance(ChatHistoryStore.class);
+    private static final String INDEX_FILE = "messages.idx";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long MAX_SEGMENT_SIZE = 16L * 1024 * 1024;
+    private static final int SEGMENT_SHIFT = 48;
+    private static final long OFFSET_MASK = (1L << SEGMENT_SHIFT) - 1;
+    private static final long COMPACTION_MIN_DEAD_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final ExecutorService ioExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenCode-History", 1);
+
+    // Guarded by this
+    private final Map<String, Integer> ordinalByMessageId = new HashMap<>();
+    private int messageCount;
+    private int persistedCount;
+    private int currentSegment;
+    private long deadBytes;
+    private boolean opened;
+    // The segment appended to and the index, kept open between writes; only used on ioExecutor
+    @Nullable
+    private FileChannel segmentChannel;
+    private long segmentSize;
+    @Nullable
+    private FileChannel indexChannel;
+
+    public ChatHistoryStore(@NotNull Project project) {
+        this(Path.of(PathManager.getSystemPath(), "opencode", "history", project.getLocationHash()));
+    }
+
+    ChatHistoryStore(@NotNull Path directory) {
+        this.directory = directory;
+    }
+
+    public static ChatHistoryStore getInstance(@NotNull Project project) {
+        return project.getService(ChatHistoryStore.class);
+    }
+
+    /**
+     * Number of messages in the transcript that were written. Performs file I/O on first use, call off the EDT.
+     */
+    public synchronized int getMessageCount() {
+        ensureOpen();
+        return messageCount;
+    }
+
+    /**
+     * Schedules the message to be appended. The future completes with its ordinal once it is written.
+     * Does not block; safe to call on the EDT.
+     */
+    @NotNull
+    public CompletableFuture<Integer> append(@NotNull ChatMessage message) {
+        return CompletableFuture.supplyAsync(() -> {
+            int ordinal;
+            synchronized (this) {
+                ensureOpen();
+                ordinal = messageCount++;
+                ordinalByMessageId.put(message.getMessageId(), ordinal);
+            }
+            writeRecord(ordinal, message, false);
+            return ordinal;
+        }, ioExecutor);
+    }
+
+    /**
+     * Schedules a new version of an already stored message. The future completes with its ordinal once it is
+     * written, or with -1 for an unknown message. Does not block; safe to call on the EDT.
+     */
+    @NotNull
+    public CompletableFuture<Integer> update(@NotNull ChatMessage message) {
+        return CompletableFuture.supplyAsync(() -> {
+            Integer ordinal;
+            synchronized (this) {
+                ensureOpen();
+                ordinal = ordinalByMessageId.get(message.getMessageId());
+            }
+            if (ordinal == null) {
+                return -1;
+            }
+            writeRecord(ordinal, message, true);
+            return ordinal;
+        }, ioExecutor);
+    }
+
+    /**
+     * Completes once all work scheduled so far has finished.
+     */
+    @NotNull
+    CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(() -> {}, ioExecutor);
+    }
+
+    @NotNull
+    Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getOrdinal(@NotNull String messageId) {
+        Integer ordinal = ordinalByMessageId.get(messageId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Reads messages with ordinals in [from, to). Performs file I/O, call off the EDT.
+     */
+    @NotNull
+    public synchronized List<ChatMessage> load(int from, int to) {
+        ensureOpen();
+        int end = Math.min(to, Math.min(persistedCount, messageCount));
+        int start = Math.max(0, from);
+        List<ChatMessage> result = new ArrayList<>(Math.max(0, end - start));
+        if (start >= end) {
+            return result;
+        }
+
+        Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+        try {
+            ByteBuffer index = readIndex(start, end);
+            for (int i = start; i < end; i++) {
+                long location = index.getLong();
+                int segment = (int) (location >>> SEGMENT_SHIFT);
+                MappedByteBuffer data = segments.computeIfAbsent(segment, this::mapSegment);
+                ChatMessage message = readRecord(data, (int) (location & OFFSET_MASK));
+                ordinalByMessageId.put(message.getMessageId(), i);
+                result.add(message);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Failed to read chat history from " + directory, e);
+        } finally {
+            unmap(segments);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the messages with the given ordinals, in the same order, mapping each segment once.
+     * Ordinals that are not persisted yet are skipped. Performs file I/O, call off the EDT.
+     */
+    @NotNull
+    public synchronized List<ChatMessage> load(@NotNull int[] ordinals) {
+        ensureOpen();
+        int end = Math.min(persistedCount, messageCount);
+        List<ChatMessage> result = new ArrayList<>(ordinals.length);
+        if (end == 0) {
+            return result;
+        }
+
+        Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+        try {
+            ByteBuffer index = readIndex(0, end);
+            for (int ordinal : ordinals) {
+                if (ordinal < 0 || ordinal >= end) {
+                    continue;
+                }
+                long location = index.getLong(ordinal * Long.BYTES);
+                MappedByteBuffer data = segments.computeIfAbsent((int) (location >>> SEGMENT_SHIFT), this::mapSegment);
+                ChatMessage message = readRecord(data, (int) (location & OFFSET_MASK));
+                ordinalByMessageId.put(message.getMessageId(), ordinal);
+                result.add(message);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Failed to read chat history from " + directory, e);
+        } finally {
+            unmap(segments);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the last {@code count} messages. Performs file I/O, call off the EDT.
+     */
+    @NotNull
+    public synchronized Page loadTail(int count) {
+        int total = getMessageCount();
+        int from = Math.max(0, total - count);
+        return new Page(from, load(from, total));
+    }
+
+    /**
+     * Reads up to {@code count} messages just before the ordinal. Performs file I/O, call off the EDT.
+     */
+    @NotNull
+    public synchronized Page loadBefore(int ordinal, int count) {
+        int from = Math.max(0, ordinal - count);
+        return new Page(from, load(from, ordinal));
+    }
+
+    /**
+     * Messages read together, starting at ordinal {@link #getFrom()}.
+     */
+    public static final class Page {
+        private final int from;
+        private final List<ChatMessage> messages;
+
+        Page(int from, @NotNull List<ChatMessage> messages) {
+            this.from = from;
+            this.messages = messages;
+        }
+
+        public int getFrom() { return from; }
+
+        @NotNull
+        public List<ChatMessage> getMessages() { return messages; }
+    }
+
+    /**
+     * Schedules the transcript to be deleted after the writes scheduled before. Safe to call on the EDT.
+     */
+    public void clear() {
+        ioExecutor.execute(this::deleteAll);
+    }
+
+    // ---- Write side, runs on ioExecutor ----
+
+    private void writeRecord(int ordinal, @NotNull ChatMessage message, boolean update) {
+        try {
+            byte[] record = encode(message);
+            long location;
+            synchronized (this) {
+                FileChannel segment = openSegmentChannel();
+                if (segmentSize + record.length > MAX_SEGMENT_SIZE && segmentSize > 0) {
+                    closeChannels();
+                    currentSegment++;
+                    segment = openSegmentChannel();
+                }
+                location = ((long) currentSegment << SEGMENT_SHIFT) | segmentSize;
+                writeFully(segment, ByteBuffer.wrap(record), segmentSize);
+                segmentSize += record.length;
+
+                FileChannel index = openIndexChannel();
+                long slot = (long) ordinal * Long.BYTES;
+                if (update) {
+                    deadBytes += recordLengthAt(index, slot);
+                }
+                writeFully(index, ByteBuffer.allocate(Long.BYTES).putLong(0, location), slot);
+                persistedCount = Math.max(persistedCount, ordinal + 1);
+            }
+
+            if (update) {
+                compactIfNeeded();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to persist chat message " + message.getMessageId(), e);
+        }
+    }
+
+    @NotNull
+    private FileChannel openSegmentChannel() throws IOException {
+        if (segmentChannel == null) {
+            segmentChannel = FileChannel.open(segmentPath(currentSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            segmentSize = segmentChannel.size();
+        }
+        return segmentChannel;
+    }
+
+    @NotNull
+    private FileChannel openIndexChannel() throws IOException {
+        if (indexChannel == null) {
+            indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return indexChannel;
+    }
+
+    /**
+     * Closes the channels kept open for writing, before their files are replaced or deleted.
+     */
+    private void closeChannels() {
+        for (FileChannel channel : new FileChannel[]{segmentChannel, indexChannel}) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOG.debug("Failed to close chat history file: " + e.getMessage());
+                }
+            }
+        }
+        segmentChannel = null;
+        indexChannel = null;
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private long recordLengthAt(@NotNull FileChannel indexChannel, long slot) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(Long.BYTES);
+        if (indexChannel.read(entry, slot) < Long.BYTES) {
+            return 0;
+        }
+        long location = entry.getLong(0);
+        try (FileChannel channel = FileChannel.open(segmentPath((int) (location >>> SEGMENT_SHIFT)), StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(length, location & OFFSET_MASK);
+            return Integer.BYTES + length.getInt(0);
+        }
+    }
+
+    private void compactIfNeeded() {
+        long totalBytes;
+        synchronized (this) {
+            totalBytes = segmentsSize();
+            if (deadBytes < COMPACTION_MIN_DEAD_BYTES || deadBytes * 2 < totalBytes) {
+                return;
+            }
+        }
+        compact();
+    }
+
+    /**
+     * Rewrites live records into fresh segments and installs them by renaming a new index over the old one.
+     * The rename is the commit point: the in-memory state follows it directly, and old segments that cannot be
+     * deleted yet are left behind and removed the next time the store is opened.
+     */
+    private synchronized void compact() {
+        long start = System.currentTimeMillis();
+        // The index is renamed over and the old segments deleted, which open handles would prevent on Windows
+        closeChannels();
+        int firstNewSegment = currentSegment + 1;
+        int segment = firstNewSegment;
+        long segmentSize = 0;
+        Path tempIndex = directory.resolve(INDEX_FILE + ".tmp");
+
+        // Copy the raw bytes of each live record; nothing is decoded
+        Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+        try (FileChannel indexOut = FileChannel.open(tempIndex, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer index = readIndex(0, persistedCount);
+            FileChannel segmentOut = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                for (int i = 0; i < persistedCount; i++) {
+                    long location = index.getLong();
+                    MappedByteBuffer data = segments.computeIfAbsent((int) (location >>> SEGMENT_SHIFT), this::mapSegment);
+                    int offset = (int) (location & OFFSET_MASK);
+                    int recordLength = Integer.BYTES + data.getInt(offset);
+                    ByteBuffer record = data.duplicate();
+                    record.position(offset).limit(offset + recordLength);
+
+                    if (segmentSize + recordLength > MAX_SEGMENT_SIZE && segmentSize > 0) {
+                        segmentOut.close();
+                        segment++;
+                        segmentSize = 0;
+                        segmentOut = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                    }
+                    while (record.hasRemaining()) {
+                        segmentOut.write(record);
+                    }
+                    indexOut.write(ByteBuffer.allocate(Long.BYTES).putLong(0, ((long) segment << SEGMENT_SHIFT) | segmentSize));
+                    segmentSize += recordLength;
+                }
+                segmentOut.force(false);
+                indexOut.force(false);
+            } finally {
+                segmentOut.close();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Chat history compaction failed, keeping existing segments", e);
+            return;
+        } finally {
+            // Old segments cannot be deleted on Windows while they are mapped
+            unmap(segments);
+        }
+
+        try {
+            Files.move(tempIndex, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to install compacted chat history, keeping existing segments", e);
+            return;
+        }
+        currentSegment = segment;
+        deadBytes = 0;
+
+        int orphans = 0;
+        for (int old = 0; old < firstNewSegment; old++) {
+            if (!deleteSegment(old)) {
+                orphans++;
+            }
+        }
+        LOG.info("Compacted chat history (" + persistedCount + " messages) in " + (System.currentTimeMillis() - start) + "ms"
+                + (orphans > 0 ? ", " + orphans + " old segments are removed on the next open" : ""));
+    }
+
+    private boolean deleteSegment(int segment) {
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+            return true;
+        } catch (IOException e) {
+            LOG.debug("Could not delete chat history segment " + segment + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private synchronized void deleteAll() {
+        closeChannels();
+        ordinalByMessageId.clear();
+        messageCount = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to delete chat history in " + directory, e);
+        }
+        persistedCount = 0;
+        currentSegment = 0;
+        deadBytes = 0;
+    }
+
+    // ---- Open / read helpers ----
+
+    private void ensureOpen() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        Map<Integer, MappedByteBuffer> segments = new HashMap<>();
+        try {
+            Files.createDirectories(directory);
+            Path indexPath = directory.resolve(INDEX_FILE);
+            persistedCount = Files.exists(indexPath) ? (int) (Files.size(indexPath) / Long.BYTES) : 0;
+            messageCount = persistedCount;
+            currentSegment = findLastSegment();
+
+            // Anything in the segments that the index does not point at is garbage from earlier updates
+            long liveBytes = 0;
+            Set<Integer> referenced = new HashSet<>();
+            ByteBuffer index = readIndex(0, persistedCount);
+            for (int i = 0; i < persistedCount; i++) {
+                long location = index.getLong();
+                int segment = (int) (location >>> SEGMENT_SHIFT);
+                referenced.add(segment);
+                MappedByteBuffer data = segments.computeIfAbsent(segment, this::mapSegment);
+                liveBytes += Integer.BYTES + data.getInt((int) (location & OFFSET_MASK));
+            }
+
+            // Segments left behind by a compaction whose deletes failed, or by one that did not finish
+            for (int segment = 0; segment < currentSegment; segment++) {
+                if (!referenced.contains(segment)) {
+                    deleteSegment(segment);
+                }
+            }
+            deadBytes = Math.max(0, segmentsSize() - liveBytes);
+            if (deadBytes >= COMPACTION_MIN_DEAD_BYTES) {
+                ioExecutor.execute(this::compactIfNeeded);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("Failed to open chat history store at " + directory, e);
+        } finally {
+            unmap(segments);
+        }
+    }
+
+    /**
+     * Index entries for ordinals in [from, to), read into memory so that the index file is never mapped and
+     * can be replaced by compaction.
+     */
+    @NotNull
+    private ByteBuffer readIndex(int from, int to) throws IOException {
+        ByteBuffer entries = ByteBuffer.allocate(Math.max(0, to - from) * Long.BYTES);
+        if (!entries.hasRemaining()) {
+            return entries;
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.READ)) {
+            long position = (long) from * Long.BYTES;
+            while (entries.hasRemaining()) {
+                int read = channel.read(entries, position + entries.position());
+                if (read < 0) {
+                    throw new IOException("Chat history index is shorter than expected");
+                }
+            }
+        }
+        return entries.flip();
+    }
+
+    private static void unmap(@NotNull Map<Integer, MappedByteBuffer> segments) {
+        // The buffers are local to one call and every record was copied out of them, so releasing them early is safe
+        for (MappedByteBuffer buffer : segments.values()) {
+            ByteBufferUtil.cleanBuffer(buffer);
+        }
+        segments.clear();
+    }
+
+    @NotNull
+    private MappedByteBuffer mapSegment(int segment) {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int findLastSegment() throws IOException {
+        int last = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        last = Math.max(last, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    private long segmentsSize() {
+        long total = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith(SEGMENT_PREFIX)) {
+                    total += Files.size(file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Failed to measure chat history segments", e);
+        }
+        return total;
+    }
+
+    @NotNull
+    private Path segmentPath(int segment) {
+        return directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    // Record layout: [int payloadLength][long timestamp][byte role][UTF messageId][UTF-8 content bytes]
+    @NotNull
+    private static byte[] encode(@NotNull ChatMessage message) throws IOException {
+        byte[] content = message.getContent().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // Patched below
+        out.writeLong(message.getTimestamp());
+        out.writeByte(message.getRole().ordinal());
+        out.writeUTF(message.getMessageId());
+        out.write(content);
+        out.flush();
+
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - Integer.BYTES);
+        return record;
+    }
+
+    @NotNull
+    private static ChatMessage readRecord(@NotNull MappedByteBuffer data, int offset) throws IOException {
+        int payloadLength = data.getInt(offset);
+        byte[] payload = new byte[payloadLength];
+        data.get(offset + Integer.BYTES, payload);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long timestamp = in.readLong();
+        ChatMessage.Role role = ChatMessage.Role.values()[in.readByte()];
+        String messageId = in.readUTF();
+        int headerLength = payloadLength - in.available();
+        String content = new String(payload, headerLength, payloadLength - headerLength, StandardCharsets.UTF_8);
+        return ChatMessage.restore(content, role, timestamp, messageId);
+    }
+
+    @Override
+    public void dispose() {
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                LOG.warn("Chat history writes did not finish before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            closeChannels();
+        }
+    }
+}
@@ -1,16 +1,27 @@
 package ua.naiksoftware.opencodeidea.ui;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.ui.JBColor;
+import com.intellij.ui.SearchTextField;
+import com.intellij.ui.SimpleListCellRenderer;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.ui.components.JBTextArea;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.UIUtil;
+import ua.naiksoftware.opencodeidea.config.OpenCodeConfig;
 import ua.naiksoftware.opencodeidea.services.OpenCodeApiServiceImpl;
 import ua.naiksoftware.opencodeidea.services.OpenCodeEventService;
 import ua.naiksoftware.opencodeidea.services.OpenCodeServerManager;
+import ua.naiksoftware.opencodeidea.services.OpenCodeStatusListener;
+import ua.naiksoftware.opencodeidea.services.RequestKind;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -19,11 +30,19 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 
-public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryListener, OpenCodeEventService.EventListener {
+public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryListener, OpenCodeEventService.EventListener, Disposable {
     
     private static final Logger LOG = Logger.getInstance(ChatInterface.class);
+    private static final int HISTORY_PAGE_SIZE = 50;
+    private static final int SEARCH_RESULT_LIMIT = 50;
     
     private final Project project;
     private final JTextArea inputArea;
@@ -31,18 +50,34 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
     private final JPanel messagesPanel;
     private final JScrollPane messagesScrollPane;
     private final JLabel statusLabel;
+    private final SearchTextField searchField;
+    private final JLabel promptSizeLabel = new JLabel();
+    private final Timer promptSizeTimer = new Timer(200, e -> updatePromptSize());
     private final ChatHistory chatHistory;
+    private final Map<String, ChatMessagePanel> messagePanels = new HashMap<>();
     
     private final OpenCodeApiServiceImpl apiService;
     private final OpenCodeServerManager serverManager;
+    private final OpenCodeEventService eventService;
     
     private volatile boolean requestInFlight = false;
     
+    // Streaming state of the in-flight request, EDT only: the server's assistant message id, the text of its
+    // parts in arrival order and the id of the history message that shows them
+    @Nullable
+    private String streamingServerMessageId;
+    private final Map<String, String> streamingParts = new LinkedHashMap<>();
+    @Nullable
+    private String streamingMessageId;
+    private boolean loadingOlderMessages = false;
+    private int searchGeneration = 0;
+    
     public ChatInterface(Project project) {
         this.project = project;
         this.chatHistory = new ChatHistory(project);
         this.apiService = OpenCodeApiServiceImpl.getInstance();
         this.serverManager = OpenCodeServerManager.getInstance(project);
+        this.eventService = OpenCodeEventService.getInstance(project);
         
         // Initialize UI components
         this.messagesPanel = new JPanel();
@@ -50,6 +85,7 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         this.inputArea = new JBTextArea();
         this.sendButton = new JButton("Send");
         this.statusLabel = new JLabel("Server: Checking...");
+        this.searchField = new SearchTextField(false);
         
         setupUI();
         setupEventHandlers();
@@ -57,13 +93,23 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         // Add this as listener to chat history
         chatHistory.addListener(this);
         
-        // Start status updates
+        // Status changes are pushed over the project message bus; the connection is dropped on dispose
+        project.getMessageBus().connect(this).subscribe(OpenCodeStatusListener.TOPIC, new OpenCodeStatusListener() {
+            @Override
+            public void serverStatusChanged(@NotNull OpenCodeServerManager.ServerStatus oldStatus,
+                                            @NotNull OpenCodeServerManager.ServerStatus newStatus) {
+                updateServerStatus();
+            }
+        });
+        eventService.addListener(this);
         updateServerStatus();
-        Timer statusTimer = new Timer(2000, e -> updateServerStatus());
-        statusTimer.start();
         
-        // Initialize event service connection when server becomes available
-        initializeEventServiceConnection();
+        // The event service follows later status transitions itself; catch up if the server is already running
+        if (serverManager.getStatus() == OpenCodeServerManager.ServerStatus.RUNNING && !eventService.isConnected()) {
+            eventService.connect(serverManager.getServerUrl());
+        }
+        
+        restoreHistory();
     }
     
     private void setupUI() {
@@ -76,13 +122,153 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         setupInputArea();
         
         // Layout
+        add(createSearchPanel(), BorderLayout.NORTH);
         add(messagesScrollPane, BorderLayout.CENTER);
         add(createInputPanel(), BorderLayout.SOUTH);
-        
-        // Initial welcome message
-        if (!chatHistory.hasMessages()) {
-            showWelcomeMessage();
+    }
+    
+    /**
+     * Shows the tail of the persisted transcript, or the welcome message when there is none.
+     */
+    private void restoreHistory() {
+        chatHistory.restoreRecentMessages(HISTORY_PAGE_SIZE).whenComplete((restored, throwable) -> {
+            SwingUtilities.invokeLater(() -> {
+                if (throwable != null) {
+                    LOG.warn("Failed to restore chat history", throwable);
+                }
+                if (restored == null || restored.isEmpty()) {
+                    if (!chatHistory.hasMessages()) {
+                        showWelcomeMessage();
+                    }
+                    return;
+                }
+                // Messages sent while the tail was loading are already below, so insert above them
+                insertMessagePanels(restored);
+                scrollToBottom();
+                updatePromptSize();
+            });
+        });
+    }
+    
+    private void loadOlderMessages(int count, @Nullable Runnable onLoaded) {
+        if (loadingOlderMessages || !chatHistory.hasOlderMessages()) {
+            return;
         }
+        loadingOlderMessages = true;
+        chatHistory.loadOlderMessages(count).whenComplete((page, throwable) -> {
+            SwingUtilities.invokeLater(() -> {
+                loadingOlderMessages = false;
+                if (throwable != null) {
+                    LOG.warn("Failed to load older chat messages", throwable);
+                    return;
+                }
+                if (page.isEmpty()) {
+                    return;
+                }
+                // Keep the message under the viewport in place while content grows above it
+                JScrollBar verticalScrollBar = messagesScrollPane.getVerticalScrollBar();
+                int heightBefore = messagesPanel.getPreferredSize().height;
+                insertMessagePanels(page);
+                messagesScrollPane.validate();
+                verticalScrollBar.setValue(verticalScrollBar.getValue() + messagesPanel.getPreferredSize().height - heightBefore);
+                if (onLoaded != null) {
+                    onLoaded.run();
+                }
+            });
+        });
+    }
+    
+    private JPanel createSearchPanel() {
+        JPanel searchPanel = new JPanel(new BorderLayout());
+        searchPanel.setBorder(new EmptyBorder(4, 8, 4, 8));
+        searchField.getTextEditor().putClientProperty("JTextField.placeholderText", "Search chat history");
+        searchField.getTextEditor().addActionListener(e -> searchHistory(searchField.getText()));
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        return searchPanel;
+    }
+    
+    private void searchHistory(@NotNull String query) {
+        if (query.isBlank()) {
+            return;
+        }
+        int generation = ++searchGeneration;
+        ChatSearchIndex searchIndex = ChatSearchIndex.getInstance(project);
+        CompletableFuture.supplyAsync(() -> searchIndex.search(query, SEARCH_RESULT_LIMIT), AppExecutorUtil.getAppExecutorService())
+            .whenComplete((hits, throwable) -> SwingUtilities.invokeLater(() -> {
+                // A newer query was started while this one ran
+                if (generation != searchGeneration || !searchField.isShowing()) {
+                    return;
+                }
+                if (throwable != null) {
+                    LOG.warn("Chat history search failed", throwable);
+                    return;
+                }
+                showSearchResults(query, hits);
+            }));
+    }
+    
+    private void showSearchResults(@NotNull String query, @NotNull List<ChatSearchIndex.SearchHit> hits) {
+        if (hits.isEmpty()) {
+            JBPopupFactory.getInstance()
+                .createMessage("No messages found for \"" + query + "\"")
+                .showUnderneathOf(searchField);
+            return;
+        }
+        List<String> terms = ChatSearchIndex.tokenize(query);
+        JBPopupFactory.getInstance()
+            .createPopupChooserBuilder(hits)
+            .setRenderer(SimpleListCellRenderer.<ChatSearchIndex.SearchHit>create((label, hit, index) -> {
+                ChatMessage message = hit.getMessage();
+                label.setText((message.isUser() ? "You" : "OpenCode AI") + " · " + message.getFormattedTime()
+                    + " — " + snippet(message.getContent(), terms));
+            }))
+            .setItemChosenCallback(hit -> jumpToMessage(hit.getOrdinal(), hit.getMessage().getMessageId()))
+            .setRequestFocus(true)
+            .createPopup()
+            .showUnderneathOf(searchField);
+    }
+    
+    /**
+     * Scrolls to the message, paging older history in first if the hit is above what is shown.
+     */
+    private void jumpToMessage(int ordinal, @NotNull String messageId) {
+        ChatMessagePanel messagePanel = messagePanels.get(messageId);
+        if (messagePanel != null) {
+            messagesScrollPane.validate();
+            messagesPanel.scrollRectToVisible(messagePanel.getBounds());
+            messagePanel.highlight();
+            return;
+        }
+        int missing = chatHistory.getOldestLoadedOrdinal() - ordinal;
+        if (missing > 0) {
+            loadOlderMessages(missing + HISTORY_PAGE_SIZE / 2, () -> {
+                if (messagePanels.containsKey(messageId)) {
+                    jumpToMessage(ordinal, messageId);
+                }
+            });
+        }
+    }
+    
+    @NotNull
+    private static String snippet(@NotNull String content, @NotNull List<String> terms) {
+        String lowerCase = content.toLowerCase(Locale.ROOT);
+        int position = terms.isEmpty() ? 0 : Math.max(0, lowerCase.indexOf(terms.get(0)));
+        int start = Math.max(0, position - 30);
+        int end = Math.min(content.length(), position + 70);
+        String snippet = content.substring(start, end).replaceAll("\\s+", " ").trim();
+        return (start > 0 ? "…" : "") + snippet + (end < content.length() ? "…" : "");
+    }
+    
+    private void insertMessagePanels(@NotNull List<ChatMessage> messages) {
+        int position = 0;
+        for (ChatMessage message : messages) {
+            ChatMessagePanel messagePanel = new ChatMessagePanel(message);
+            messagePanels.put(message.getMessageId(), messagePanel);
+            messagesPanel.add(messagePanel, position++);
+            messagesPanel.add(Box.createVerticalStrut(12), position++);
+        }
+        messagesPanel.revalidate();
+        messagesPanel.repaint();
     }
     
     private void setupMessagesArea() {
@@ -94,6 +280,13 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         messagesScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         messagesScrollPane.setBorder(null);
         messagesScrollPane.getVerticalScrollBar().setUnitIncrement(20);
+        
+        // Page older messages in when the user scrolls to the top
+        messagesScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == 0 && chatHistory.hasOlderMessages()) {
+                loadOlderMessages(HISTORY_PAGE_SIZE, null);
+            }
+        });
     }
     
     private void setupInputArea() {
@@ -159,6 +352,9 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         statusPanel.setBorder(new EmptyBorder(8, 4, 0, 4));
         statusLabel.setFont(statusLabel.getFont().deriveFont(11f));
         statusPanel.add(statusLabel, BorderLayout.WEST);
+        promptSizeLabel.setFont(promptSizeLabel.getFont().deriveFont(11f));
+        promptSizeLabel.setForeground(JBColor.GRAY);
+        statusPanel.add(promptSizeLabel, BorderLayout.EAST);
         inputPanel.add(statusPanel, BorderLayout.SOUTH);
         
         return inputPanel;
@@ -168,6 +364,24 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         // Send button
         sendButton.addActionListener(new SendActionListener());
         
+        // Re-estimate the prompt size once typing pauses
+        promptSizeTimer.setRepeats(false);
+        inputArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) {
+                promptSizeTimer.restart();
+            }
+            
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) {
+                promptSizeTimer.restart();
+            }
+            
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) {
+            }
+        });
+        
         // Enter key support (Ctrl+Enter to send, Enter for new line)
         inputArea.addKeyListener(new KeyAdapter() {
             @Override
@@ -236,7 +450,7 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
                     break;
                 case STOPPED:
                 default:
-                    statusText = "⏹ Server Offline";
+                    statusText = "⏹ Server Offline - starts with your next message";
                     break;
             }
             
@@ -244,37 +458,70 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         });
     }
     
-    private void initializeEventServiceConnection() {
-        // Try to connect to event service every few seconds until server is available
-        Timer connectionTimer = new Timer(3000, e -> {
-            if (serverManager.getStatus() == OpenCodeServerManager.ServerStatus.RUNNING) {
-                OpenCodeEventService eventService = apiService.getEventService();
-                if (eventService != null && !eventService.isConnected()) {
-                    eventService.addListener(this);
-                    String serverUrl = serverManager.getServerUrl();
-                    if (serverUrl != null) {
-                        eventService.connect(serverUrl);
-                        LOG.info("Connecting to event service at: " + serverUrl);
-                    }
-                }
-            }
-        });
-        connectionTimer.setRepeats(true);
-        connectionTimer.start();
-    }
-    
     // OpenCodeEventService.EventListener implementation
     @Override
     public void onEvent(@NotNull OpenCodeEventService.ServerEvent event) {
-        LOG.info("📡 SSE Event received: " + event.getType() + " - " + event.getData());
+        // Called on the EDT
+        LOG.debug("SSE event received: " + event.getType());
+        if (!requestInFlight) {
+            return;
+        }
+        // The payload was parsed on the stream's reader thread
+        String type = event.getType();
+        JsonObject properties = event.getProperties();
+        String sessionId = apiService.getSessionId(project);
+        if (properties == null || sessionId == null) {
+            return;
+        }
         
-        SwingUtilities.invokeLater(() -> {
-            // For now, just log all events to show SSE is working
-            // In the future, this would handle real streaming updates
-            if (event.getType().startsWith("message.")) {
-                LOG.info("🔄 Message event: " + event.getType());
+        if ("message.updated".equals(type) && properties.has("info")) {
+            JsonObject info = properties.getAsJsonObject("info");
+            if (sessionId.equals(stringField(info, "sessionID")) && "assistant".equals(stringField(info, "role"))) {
+                streamingServerMessageId = stringField(info, "id");
             }
-        });
+        } else if ("message.part.updated".equals(type) && properties.has("part")) {
+            JsonObject part = properties.getAsJsonObject("part");
+            String partId = stringField(part, "id");
+            String text = stringField(part, "text");
+            if (partId == null || text == null || !"text".equals(stringField(part, "type"))
+                || streamingServerMessageId == null || !streamingServerMessageId.equals(stringField(part, "messageID"))) {
+                return;
+            }
+            streamingParts.put(partId, text);
+            showStreamedText(String.join("\n\n", streamingParts.values()));
+        }
+    }
+    
+    /**
+     * Shows the partial answer in place; it is persisted once the request completes.
+     */
+    private void showStreamedText(@NotNull String text) {
+        if (streamingMessageId == null) {
+            ChatMessage message = new ChatMessage(text, ChatMessage.Role.ASSISTANT);
+            streamingMessageId = message.getMessageId();
+            chatHistory.addMessage(message);
+        } else {
+            chatHistory.updateMessage(streamingMessageId, text, false);
+        }
+    }
+    
+    /**
+     * Replaces the streamed answer with the final one, or adds it if nothing was streamed. Must be called on the EDT.
+     */
+    private void completeAssistantMessage(@NotNull String content) {
+        String messageId = streamingMessageId;
+        streamingServerMessageId = null;
+        streamingParts.clear();
+        streamingMessageId = null;
+        if (messageId == null || !chatHistory.updateMessage(messageId, content)) {
+            chatHistory.addAssistantMessage(content);
+        }
+    }
+    
+    @Nullable
+    private static String stringField(@NotNull JsonObject object, @NotNull String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
     }
     
     @Override
@@ -290,6 +537,38 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
         LOG.warn("⚠️ SSE connection error", error);
     }
     
+    /**
+     * Shows the estimated size of the prompt that pressing Send would produce. Must be called on the EDT.
+     */
+    private void updatePromptSize() {
+        String input = getInputText();
+        ConversationContext context = buildContext();
+        int tokens = context.getEstimatedTokens() + TokenEstimator.estimate(input);
+        String cacheHit = apiService.getCacheStats(project).describe();
+        String size = tokens == 0 ? "" : "~" + tokens + " tokens";
+        promptSizeLabel.setText(cacheHit.isEmpty() ? size : size.isEmpty() ? cacheHit : size + " · " + cacheHit);
+        promptSizeLabel.setToolTipText(context.getIncludedMessages() + " earlier messages included"
+            + (context.getOmittedMessages() > 0 ? ", " + context.getOmittedMessages() + " older left out to fit the budget" : ""));
+    }
+    
+    /**
+     * Earlier turns to send with the next question. A continued server session already holds them,
+     * so they are only needed when a new session starts, e.g. after the history was restored from disk.
+     */
+    @NotNull
+    private ConversationContext buildContext() {
+        if (apiService.hasSession(project)) {
+            return ConversationContext.EMPTY;
+        }
+        return chatHistory.buildConversationContext(OpenCodeConfig.getInstance().getContextTokenBudget());
+    }
+    
+    @NotNull
+    private String getInputText() {
+        String input = inputArea.getText().trim();
+        return input.equals("Ask OpenCode AI anything...") ? "" : input;
+    }
+    
     private void setLoadingState(boolean loading) {
         SwingUtilities.invokeLater(() -> {
             sendButton.setEnabled(!loading);
@@ -317,7 +596,10 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
     @Override
     public void onMessageAdded(ChatMessage message) {
         SwingUtilities.invokeLater(() -> {
-            ChatMessagePanel messagePanel = new ChatMessagePanel(message);
+            // A streamed message may have been updated while this was queued
+            ChatMessage current = chatHistory.getMessage(message.getMessageId());
+            ChatMessagePanel messagePanel = new ChatMessagePanel(current != null ? current : message);
+            messagePanels.put(message.getMessageId(), messagePanel);
             messagesPanel.add(messagePanel);
             messagesPanel.add(Box.createVerticalStrut(12));
             
@@ -326,21 +608,42 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
             
             // Scroll to bottom
             scrollToBottom();
+            updatePromptSize();
         });
     }
     
+    @Override
+    public void onMessagesUpdated(int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < Math.min(toIndex, chatHistory.getMessageCount()); i++) {
+            ChatMessage message = chatHistory.getMessage(i);
+            ChatMessagePanel messagePanel = messagePanels.get(message.getMessageId());
+            if (messagePanel != null) {
+                messagePanel.updateMessage(message);
+            }
+        }
+    }
+    
     @Override
     public void onHistoryCleared() {
         SwingUtilities.invokeLater(() -> {
+            messagePanels.clear();
             messagesPanel.removeAll();
             messagesPanel.revalidate();
             messagesPanel.repaint();
+            updatePromptSize();
             
             // Clear API service session
-            apiService.clearSession();
+            apiService.clearSession(project);
         });
     }
     
+    @Override
+    public void dispose() {
+        promptSizeTimer.stop();
+        eventService.removeListener(this);
+        chatHistory.removeListener(this);
+    }
+    
     private class SendActionListener implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
@@ -348,11 +651,14 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
                 return;
             }
             
-            String input = inputArea.getText().trim();
-            if (input.isEmpty() || input.equals("Ask OpenCode AI anything...")) {
+            String input = getInputText();
+            if (input.isEmpty()) {
                 return;
             }
             
+            // Earlier turns are sent along, newest first until the budget is used up
+            ConversationContext context = buildContext();
+            
             // Clear input and add user message
             inputArea.setText("");
             inputArea.setForeground(JBColor.GRAY);
@@ -361,27 +667,33 @@ public class ChatInterface extends JPanel implements ChatHistory.ChatHistoryList
             chatHistory.addUserMessage(input);
             
             // Set loading state
+            streamingServerMessageId = null;
+            streamingParts.clear();
+            streamingMessageId = null;
             requestInFlight = true;
             setLoadingState(true);
             
-            LOG.info("🚀 Sending request to OpenCode API with SSE enabled");
+            LOG.info("🚀 Sending request to OpenCode API with SSE enabled, ~" + (context.getEstimatedTokens() + TokenEstimator.estimate(input))
+                + " tokens (" + context.getIncludedMessages() + " context messages)");
             
             // Send request
-            apiService.sendRequestWithProject(input, "", project).whenComplete((response, throwable) -> {
+            apiService.sendRequest(RequestKind.CHAT, input, null, context.isEmpty() ? null : context.getText(), project).whenComplete((response, throwable) -> {
                 SwingUtilities.invokeLater(() -> {
                     try {
                         if (throwable != null) {
                             LOG.warn("OpenCode API request failed", throwable);
                             String errorMessage = "⚠️ **Request Failed**\n\nSorry, I encountered an error while processing your request:\n\n```\n" + 
                                 formatError(throwable) + "\n```\n\nPlease make sure the OpenCode server is running and try again.";
-                            chatHistory.addAssistantMessage(errorMessage);
+                            completeAssistantMessage(errorMessage);
                         } else {
                             LOG.info("✅ OpenCode API request completed, response length: " + response.length());
-                            chatHistory.addAssistantMessage(response);
+                            completeAssistantMessage(response);
                         }
                     } finally {
                         requestInFlight = false;
                         setLoadingState(false);
+                        // Picks up the prompt cache usage the response reported
+                        updatePromptSize();
                     }
                 });
             });
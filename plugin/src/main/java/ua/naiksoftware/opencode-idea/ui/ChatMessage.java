@@ -16,6 +16,9 @@ public class ChatMessage {
     private final long timestamp;
     private final String messageId;
     
+    // Computed on first use; racing threads compute the same value
+    private int estimatedTokens = -1;
+    
     public ChatMessage(String content, Role role) {
         this.content = content;
         this.role = role;
@@ -23,6 +26,20 @@ public class ChatMessage {
         this.messageId = java.util.UUID.randomUUID().toString();
     }
     
+    private ChatMessage(String content, Role role, long timestamp, String messageId) {
+        this.content = content;
+        this.role = role;
+        this.timestamp = timestamp;
+        this.messageId = messageId;
+    }
+    
+    /**
+     * Recreates a message with its original id and timestamp, e.g. from the on-disk history.
+     */
+    public static ChatMessage restore(String content, Role role, long timestamp, String messageId) {
+        return new ChatMessage(content, role, timestamp, messageId);
+    }
+    
     public ChatMessage(OpenCodeMessage message) {
         this.content = message.getTextContent();
         this.role = "user".equals(message.getInfo().getRole()) ? Role.USER : Role.ASSISTANT;
@@ -30,6 +47,13 @@ public class ChatMessage {
         this.messageId = message.getInfo().getId();
     }
     
+    /**
+     * Same message (id, role, timestamp) with new content, used for in-place streaming updates.
+     */
+    public ChatMessage withContent(String newContent) {
+        return new ChatMessage(newContent, role, timestamp, messageId);
+    }
+    
     public String getContent() {
         return content;
     }
@@ -46,6 +70,18 @@ public class ChatMessage {
         return messageId;
     }
     
+    /**
+     * Approximate token count of the content, computed once per message instance.
+     */
+    public int getEstimatedTokens() {
+        int tokens = estimatedTokens;
+        if (tokens < 0) {
+            tokens = content != null ? TokenEstimator.estimate(content) : 0;
+            estimatedTokens = tokens;
+        }
+        return tokens;
+    }
+    
     public String getFormattedTime() {
         LocalDateTime dateTime = LocalDateTime.ofInstant(
             Instant.ofEpochMilli(timestamp), 
@@ -0,0 +1,161 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only message log stored in fixed-size chunks, so appends never copy existing messages.
+ * Only the small chunk directory is grown. Writers are serialized; readers take lock-free snapshots
+ * that see a stable length and stable contents. Messages can be replaced in place (streaming updates keep
+ * their slot); the replaced chunk is copied, so a replacement costs one chunk, not the whole log.
+ */
+final class ChatMessageLog {
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Directory and length are published together so a reader never pairs a length with the wrong directory
+    private volatile State state = new State(new ChatMessage[4][], 0);
+
+    // Guarded by this
+    private final Map<String, Integer> indexByMessageId = new HashMap<>();
+    private final Map<ChatMessage.Role, Integer> lastIndexByRole = new EnumMap<>(ChatMessage.Role.class);
+
+    /**
+     * Appends the message and returns its index.
+     */
+    synchronized int append(@NotNull ChatMessage message) {
+        int index = state.size;
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        ChatMessage[][] directory = state.chunks;
+        if (chunkIndex >= directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+        }
+        if (directory[chunkIndex] == null) {
+            directory[chunkIndex] = new ChatMessage[CHUNK_SIZE];
+        }
+        directory[chunkIndex][index & CHUNK_MASK] = message;
+
+        indexByMessageId.put(message.getMessageId(), index);
+        lastIndexByRole.put(message.getRole(), index);
+
+        // Volatile write publishes the slot to lock-free readers
+        state = new State(directory, index + 1);
+        return index;
+    }
+
+    /**
+     * Replaces the message with the same id in place and returns its index, or -1 if it is unknown.
+     */
+    synchronized int replace(@NotNull ChatMessage message) {
+        Integer index = indexByMessageId.get(message.getMessageId());
+        if (index == null) {
+            return -1;
+        }
+        // Copy the chunk and the directory so snapshots taken earlier keep seeing the old message
+        State current = state;
+        int chunkIndex = index >>> CHUNK_SHIFT;
+        ChatMessage[][] directory = current.chunks.clone();
+        directory[chunkIndex] = directory[chunkIndex].clone();
+        directory[chunkIndex][index & CHUNK_MASK] = message;
+        state = new State(directory, current.size);
+        return index;
+    }
+
+    /**
+     * Inserts the messages, in order, before all existing ones. Rebuilds the log, so it is meant for restoring
+     * history once rather than for regular use.
+     */
+    synchronized void prepend(@NotNull List<ChatMessage> earlier) {
+        if (earlier.isEmpty()) {
+            return;
+        }
+        State current = state;
+        int size = earlier.size() + current.size;
+        ChatMessage[][] directory = new ChatMessage[Math.max(4, (size + CHUNK_MASK) >>> CHUNK_SHIFT)][];
+        indexByMessageId.clear();
+        lastIndexByRole.clear();
+        for (int index = 0; index < size; index++) {
+            ChatMessage message = index < earlier.size() ? earlier.get(index) : current.get(index - earlier.size());
+            ChatMessage[] chunk = directory[index >>> CHUNK_SHIFT];
+            if (chunk == null) {
+                chunk = directory[index >>> CHUNK_SHIFT] = new ChatMessage[CHUNK_SIZE];
+            }
+            chunk[index & CHUNK_MASK] = message;
+            indexByMessageId.put(message.getMessageId(), index);
+            lastIndexByRole.put(message.getRole(), index);
+        }
+        // Published in one step; snapshots taken before keep the old directory
+        state = new State(directory, size);
+    }
+
+    synchronized void clear() {
+        // Fresh directory: snapshots taken before the clear keep their own chunks
+        state = new State(new ChatMessage[4][], 0);
+        indexByMessageId.clear();
+        lastIndexByRole.clear();
+    }
+
+    int size() {
+        return state.size;
+    }
+
+    @NotNull
+    ChatMessage get(int index) {
+        return state.get(index);
+    }
+
+    @Nullable
+    synchronized ChatMessage getLast(@NotNull ChatMessage.Role role) {
+        Integer index = lastIndexByRole.get(role);
+        return index == null ? null : get(index);
+    }
+
+    synchronized int indexOf(@NotNull String messageId) {
+        Integer index = indexByMessageId.get(messageId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Read-only view of the messages present at the time of the call. Later appends and replacements are not visible.
+     */
+    @NotNull
+    List<ChatMessage> snapshot() {
+        State snapshot = state;
+        return new AbstractList<>() {
+            @Override
+            public ChatMessage get(int index) {
+                return snapshot.get(index);
+            }
+
+            @Override
+            public int size() {
+                return snapshot.size;
+            }
+        };
+    }
+
+    private static final class State {
+        private final ChatMessage[][] chunks;
+        private final int size;
+
+        State(ChatMessage[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+        }
+
+        ChatMessage get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+    }
+}
@@ -4,10 +4,10 @@ import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBLabel;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
 
 public class ChatMessagePanel extends JPanel {
@@ -17,7 +17,10 @@ public class ChatMessagePanel extends JPanel {
     private static final Color USER_TEXT = UIUtil.getLabelForeground();
     private static final Color ASSISTANT_TEXT = UIUtil.getLabelForeground();
     
-    private final ChatMessage message;
+    private ChatMessage message;
+    private JTextArea userTextArea;
+    private MarkdownView markdownView;
+    private JPanel wrapper;
     
     public ChatMessagePanel(ChatMessage message) {
         this.message = message;
@@ -32,7 +35,7 @@ public class ChatMessagePanel extends JPanel {
         JPanel messageContainer = createMessageContainer();
         
         // Add with minimal margins for full-width appearance
-        JPanel wrapper = new JPanel(new BorderLayout());
+        wrapper = new JPanel(new BorderLayout());
         wrapper.setOpaque(false);
         wrapper.setBorder(new EmptyBorder(4, 8, 4, 8)); // Minimal side margins
         wrapper.add(messageContainer, BorderLayout.CENTER);
@@ -78,56 +81,47 @@ public class ChatMessagePanel extends JPanel {
     private JComponent createContentComponent() {
         if (message.isUser()) {
             // For user messages, use simple text area
-            JTextArea textArea = new JTextArea(message.getContent());
-            textArea.setEditable(false);
-            textArea.setOpaque(false);
-            textArea.setForeground(USER_TEXT);
-            textArea.setLineWrap(true);
-            textArea.setWrapStyleWord(true);
-            textArea.setFont(textArea.getFont().deriveFont(14f));
-            return textArea;
+            userTextArea = new JTextArea(message.getContent());
+            userTextArea.setEditable(false);
+            userTextArea.setOpaque(false);
+            userTextArea.setForeground(USER_TEXT);
+            userTextArea.setLineWrap(true);
+            userTextArea.setWrapStyleWord(true);
+            userTextArea.setFont(userTextArea.getFont().deriveFont(14f));
+            return userTextArea;
         } else {
-            // For assistant messages, use markdown rendering
-            try {
-                JEditorPane editorPane = new JEditorPane();
-                editorPane.setEditorKit(new HTMLEditorKit());
-                editorPane.setContentType("text/html");
-                
-                String htmlContent = MarkdownRenderer.renderToHtml(message.getContent());
-                editorPane.setText(htmlContent);
-                
-                editorPane.setEditable(false);
-                editorPane.setOpaque(false);
-                editorPane.setBorder(null);
-                editorPane.setBackground(ASSISTANT_BG);
-                
-                // Handle long content with scrolling
-                if (message.getContent().length() > 2000) {
-                    JScrollPane scrollPane = new JScrollPane(editorPane);
-                    scrollPane.setPreferredSize(new Dimension(0, 250));
-                    scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-                    scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-                    scrollPane.setBorder(null);
-                    scrollPane.setOpaque(false);
-                    scrollPane.getViewport().setOpaque(false);
-                    return scrollPane;
-                }
-                
-                return editorPane;
-            } catch (Exception e) {
-                // Fallback to plain text if markdown rendering fails
-                JTextArea textArea = new JTextArea(message.getContent());
-                textArea.setEditable(false);
-                textArea.setOpaque(false);
-                textArea.setForeground(ASSISTANT_TEXT);
-                textArea.setLineWrap(true);
-                textArea.setWrapStyleWord(true);
-                textArea.setFont(textArea.getFont().deriveFont(14f));
-                return textArea;
-            }
+            // For assistant messages, use markdown rendering off the EDT
+            markdownView = new MarkdownView(ASSISTANT_BG, null);
+            markdownView.setMarkdown(message.getContent());
+            return markdownView;
         }
     }
     
+    /**
+     * Shows new content for the same message without rebuilding the panel. Must be called on the EDT.
+     */
+    public void updateMessage(@NotNull ChatMessage updated) {
+        this.message = updated;
+        if (markdownView != null) {
+            markdownView.setMarkdown(updated.getContent());
+        } else if (userTextArea != null) {
+            userTextArea.setText(updated.getContent());
+        }
+    }
+    
+    /**
+     * Briefly outlines the message, e.g. after jumping to a search hit. Must be called on the EDT.
+     */
+    public void highlight() {
+        // Same total insets as the normal border so the layout does not shift
+        wrapper.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createMatteBorder(2, 2, 2, 2, JBUI.CurrentTheme.Focus.focusColor()),
+            new EmptyBorder(2, 6, 2, 6)));
+        Timer timer = new Timer(1500, e -> wrapper.setBorder(new EmptyBorder(4, 8, 4, 8)));
+        timer.setRepeats(false);
+        timer.start();
+    }
+    
     // Custom border for rounded corners
     private static class RoundedBorder extends EmptyBorder {
         private final Color backgroundColor;
@@ -0,0 +1,497 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inverted index from words to the ordinals of the messages in {@link ChatHistoryStore} that contain them.
+ * <p>
+ * Messages are indexed on a background executor shortly after they stop changing, so streamed responses are
+ * tokenized once. Postings are sorted ordinal arrays; on disk they are delta-encoded varints next to the
+ * transcript. History written before the index existed is indexed from the store in pages on first use.
+ * Callers only queue messages; postings are applied and saved on the index executor, and the file is written
+ * from a snapshot without holding the lock.
+ */
+@Service(Service.Level.PROJECT)
+public final class ChatSearchIndex implements Disposable {
+    private static final Logger LOG = Logger.getInstance(ChatSearchIndex.class);
+    private static final String INDEX_FILE = "search.idx";
+    private static final int FORMAT_VERSION = 1;
+    private static final int MIN_TOKEN_LENGTH = 2;
+    private static final int MAX_TOKEN_LENGTH = 40;
+    private static final long INDEX_DELAY_MS = 1000;
+    private static final long SAVE_DELAY_MS = 10_000;
+    private static final int CATCH_UP_PAGE_SIZE = 500;
+
+    private final ChatHistoryStore store;
+    private final Path indexPath;
+    private final ExecutorService indexExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenCode-Search-Index", 1);
+
+    // Guarded by this
+    private final NavigableMap<String, Postings> postingsByToken = new TreeMap<>();
+    // Ordinals whose content is in the postings; catch-up fills the gaps, whatever order messages arrive in
+    private final BitSet indexed = new BitSet();
+    private boolean loaded;
+    private boolean saveScheduled;
+    private boolean dirty;
+
+    // Guarded by pending, so queueing a message never waits for indexing or saving
+    private final Map<Integer, ChatMessage> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    public ChatSearchIndex(@NotNull Project project) {
+        this(ChatHistoryStore.getInstance(project));
+    }
+
+    ChatSearchIndex(@NotNull ChatHistoryStore store) {
+        this.store = store;
+        this.indexPath = store.getDirectory().resolve(INDEX_FILE);
+        indexExecutor.execute(this::ensureLoaded);
+    }
+
+    public static ChatSearchIndex getInstance(@NotNull Project project) {
+        return project.getService(ChatSearchIndex.class);
+    }
+
+    public static final class SearchHit {
+        private final int ordinal;
+        private final ChatMessage message;
+
+        SearchHit(int ordinal, @NotNull ChatMessage message) {
+            this.ordinal = ordinal;
+            this.message = message;
+        }
+
+        public int getOrdinal() { return ordinal; }
+        @NotNull
+        public ChatMessage getMessage() { return message; }
+    }
+
+    /**
+     * Queues the message for indexing. Repeated calls for the same ordinal while it is still streaming
+     * are coalesced into one pass over the final content.
+     */
+    public void index(int ordinal, @NotNull ChatMessage message) {
+        if (ordinal < 0) {
+            return;
+        }
+        synchronized (pending) {
+            pending.put(ordinal, message);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                        () -> indexExecutor.execute(this::flushPending), INDEX_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} messages containing every word of the query, newest first. The last word
+     * also matches as a prefix, so results show up while typing. Performs file I/O, call off the EDT.
+     */
+    @NotNull
+    public List<SearchHit> search(@NotNull String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int[] candidates;
+        synchronized (this) {
+            ensureLoaded();
+            candidates = null;
+            for (int i = 0; i < terms.size() && (candidates == null || candidates.length > 0); i++) {
+                boolean prefix = i == terms.size() - 1;
+                int[] matches = prefix ? prefixMatches(terms.get(i)) : exactMatches(terms.get(i));
+                candidates = candidates == null ? matches : intersect(candidates, matches);
+            }
+        }
+
+        // Postings are not removed when a message is edited, so confirm each hit against the stored content
+        List<SearchHit> hits = new ArrayList<>();
+        int next = candidates.length;
+        while (next > 0 && hits.size() < limit) {
+            int[] batch = new int[Math.min(next, limit - hits.size())];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = candidates[--next];
+            }
+            // Candidates that are not persisted yet are skipped by the store, so map hits back by id
+            for (ChatMessage message : store.load(batch)) {
+                if (containsAll(message.getContent(), terms)) {
+                    hits.add(new SearchHit(store.getOrdinal(message.getMessageId()), message));
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Drops queued messages and schedules the postings to be cleared. Safe to call on the EDT.
+     */
+    public void clear() {
+        synchronized (pending) {
+            pending.clear();
+        }
+        indexExecutor.execute(() -> {
+            synchronized (this) {
+                postingsByToken.clear();
+                indexed.clear();
+                loaded = true;
+                markDirty();
+            }
+        });
+    }
+
+    /**
+     * Indexes the queued messages without waiting for the delay and saves the index. Completes once that and
+     * any catch-up scheduled before it have finished.
+     */
+    @NotNull
+    CompletableFuture<Void> flush() {
+        // Catch-up is queued while the first step loads the index, so saving in a second step runs after it
+        return CompletableFuture.runAsync(this::flushPending, indexExecutor).thenRunAsync(this::save, indexExecutor);
+    }
+
+    // ---- Indexing, runs on indexExecutor ----
+
+    private void flushPending() {
+        ensureLoaded();
+        List<Map.Entry<Integer, ChatMessage>> batch;
+        synchronized (pending) {
+            flushScheduled = false;
+            batch = new ArrayList<>(pending.entrySet());
+            pending.clear();
+        }
+        for (Map.Entry<Integer, ChatMessage> entry : batch) {
+            addToIndex(entry.getKey(), entry.getValue().getContent());
+        }
+    }
+
+    private void addToIndex(int ordinal, @NotNull String content) {
+        // Tokenize outside the lock; only posting inserts are synchronized
+        Set<String> tokens = new LinkedHashSet<>(tokenize(content));
+        synchronized (this) {
+            for (String token : tokens) {
+                postingsByToken.computeIfAbsent(token, t -> new Postings()).add(ordinal);
+            }
+            indexed.set(ordinal);
+            markDirty();
+        }
+    }
+
+    private void catchUp() {
+        int total = store.getMessageCount();
+        int from;
+        BitSet done;
+        synchronized (this) {
+            from = indexed.nextClearBit(0);
+            done = (BitSet) indexed.clone();
+        }
+        if (from >= total) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int added = 0;
+        for (int pageStart = from; pageStart < total; pageStart += CATCH_UP_PAGE_SIZE) {
+            // Messages that arrived through index() before catch-up ran are already in the postings
+            int pageEnd = Math.min(total, pageStart + CATCH_UP_PAGE_SIZE);
+            if (done.nextClearBit(pageStart) >= pageEnd) {
+                continue;
+            }
+            List<ChatMessage> page = store.load(pageStart, pageEnd);
+            for (int i = 0; i < page.size(); i++) {
+                if (!done.get(pageStart + i)) {
+                    addToIndex(pageStart + i, page.get(i).getContent());
+                    added++;
+                }
+            }
+        }
+        LOG.info("Indexed " + added + " stored chat messages in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private void markDirty() {
+        dirty = true;
+        if (!saveScheduled) {
+            saveScheduled = true;
+            AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> indexExecutor.execute(this::save), SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ---- Persistence ----
+
+    private void ensureLoaded() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            if (Files.exists(indexPath)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                    read(in);
+                } catch (IOException e) {
+                    LOG.warn("Discarding unreadable chat search index " + indexPath, e);
+                    postingsByToken.clear();
+                    indexed.clear();
+                }
+            }
+            // The transcript was cleared or replaced behind our back
+            if (indexed.length() > store.getMessageCount()) {
+                postingsByToken.clear();
+                indexed.clear();
+            }
+        }
+        indexExecutor.execute(this::catchUp);
+    }
+
+    private void read(@NotNull DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported chat search index version");
+        }
+        // Only the contiguous prefix is stored; anything indexed beyond a gap is indexed again by catch-up
+        indexed.set(0, in.readInt());
+        int tokenCount = in.readInt();
+        for (int t = 0; t < tokenCount; t++) {
+            String token = in.readUTF();
+            int size = readVarInt(in);
+            int[] ordinals = new int[size];
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += readVarInt(in);
+                ordinals[i] = previous;
+            }
+            postingsByToken.put(token, new Postings(ordinals));
+        }
+    }
+
+    private void save() {
+        // Encode a snapshot in memory under the lock; the file is written without holding it
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        synchronized (this) {
+            saveScheduled = false;
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            try (DataOutputStream out = new DataOutputStream(snapshot)) {
+                write(out);
+            } catch (IOException e) {
+                LOG.warn("Failed to encode chat search index", e);
+                return;
+            }
+        }
+        Path tempPath = indexPath.resolveSibling(INDEX_FILE + ".tmp");
+        try {
+            Files.createDirectories(indexPath.getParent());
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                snapshot.writeTo(out);
+            }
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to save chat search index", e);
+        }
+    }
+
+    private void write(@NotNull DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(indexed.nextClearBit(0));
+        out.writeInt(postingsByToken.size());
+        for (Map.Entry<String, Postings> entry : postingsByToken.entrySet()) {
+            Postings postings = entry.getValue();
+            out.writeUTF(entry.getKey());
+            writeVarInt(out, postings.size);
+            int previous = 0;
+            for (int i = 0; i < postings.size; i++) {
+                writeVarInt(out, postings.ordinals[i] - previous);
+                previous = postings.ordinals[i];
+            }
+        }
+    }
+
+    private static void writeVarInt(@NotNull OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(@NotNull InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated chat search index");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in chat search index");
+    }
+
+    // ---- Query helpers, callers hold the lock ----
+
+    @NotNull
+    private int[] exactMatches(@NotNull String term) {
+        Postings postings = postingsByToken.get(term);
+        return postings == null ? new int[0] : postings.toArray();
+    }
+
+    @NotNull
+    private int[] prefixMatches(@NotNull String prefix) {
+        Map<String, Postings> matching = postingsByToken.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        if (matching.size() == 1) {
+            return matching.values().iterator().next().toArray();
+        }
+        // Short prefixes can match thousands of tokens, so union through a bitmap instead of pairwise merges
+        BitSet union = new BitSet(indexed.length());
+        for (Postings postings : matching.values()) {
+            for (int i = 0; i < postings.size; i++) {
+                union.set(postings.ordinals[i]);
+            }
+        }
+        return union.stream().toArray();
+    }
+
+    @NotNull
+    private static int[] intersect(@NotNull int[] a, @NotNull int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static boolean containsAll(@NotNull String content, @NotNull List<String> terms) {
+        String lowerCase = content.toLowerCase(Locale.ROOT);
+        for (String term : terms) {
+            if (!lowerCase.contains(term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lower-cased runs of letters and digits, so "KafkaConsumer#poll()" yields "kafkaconsumer" and "poll".
+     */
+    @NotNull
+    static List<String> tokenize(@NotNull String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int length = i - start;
+                if (length >= MIN_TOKEN_LENGTH && length <= MAX_TOKEN_LENGTH) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Sorted, duplicate-free ordinals. New messages have the highest ordinal, so inserts are usually appends.
+     */
+    private static final class Postings {
+        private int[] ordinals;
+        private int size;
+
+        Postings() {
+            this.ordinals = new int[2];
+        }
+
+        Postings(@NotNull int[] ordinals) {
+            this.ordinals = ordinals;
+            this.size = ordinals.length;
+        }
+
+        void add(int ordinal) {
+            if (size > 0 && ordinals[size - 1] >= ordinal) {
+                int position = Arrays.binarySearch(ordinals, 0, size, ordinal);
+                if (position >= 0) {
+                    return;
+                }
+                insertAt(-position - 1, ordinal);
+                return;
+            }
+            insertAt(size, ordinal);
+        }
+
+        private void insertAt(int position, int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, Math.max(2, size * 2));
+            }
+            System.arraycopy(ordinals, position, ordinals, position + 1, size - position);
+            ordinals[position] = ordinal;
+            size++;
+        }
+
+        @NotNull
+        int[] toArray() {
+            return Arrays.copyOf(ordinals, size);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        // Messages still waiting for the indexing delay would otherwise be indexed again by the next catch-up
+        indexExecutor.execute(() -> {
+            flushPending();
+            save();
+        });
+        indexExecutor.shutdown();
+        try {
+            if (!indexExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                LOG.warn("Chat search index was not saved before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.lang.Language;
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.fileTypes.SyntaxHighlighter;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterFactory;
+import com.intellij.openapi.fileTypes.UnknownFileType;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Highlights fenced code blocks with the IDE's own lexers and color scheme, without creating an Editor.
+ * Results are cached per block. A block that keeps growing (still streaming) is re-lexed from the last position
+ * where the lexer was back in its initial state instead of from the start; growing blocks are told apart by
+ * their position, so several can stream at once.
+ */
+public final class CodeBlockHighlighter {
+    private static final Logger LOG = Logger.getInstance(CodeBlockHighlighter.class);
+    private static final int MAX_HIGHLIGHTED_LENGTH = 100_000;
+    private static final int MAX_CACHED_BLOCKS = 512;
+    private static final int MAX_STREAMING_BLOCKS = 16;
+
+    // Lexers report 0 when they are back in their initial state, which is where lexing can safely restart
+    private static final int INITIAL_LEXER_STATE = 0;
+
+    private static final Map<String, Optional<SyntaxHighlighter>> highlighters = new ConcurrentHashMap<>();
+    private static final LruMap<BlockKey, List<StyledRun>> blockCache = new LruMap<>(MAX_CACHED_BLOCKS);
+    private static final LruMap<String, LexedBlock> streamingBlocks = new LruMap<>(MAX_STREAMING_BLOCKS);
+
+    private CodeBlockHighlighter() {
+    }
+
+    /**
+     * A contiguous range of code sharing one style. A null foreground means the default text color.
+     */
+    public static final class StyledRun {
+        private final int start;
+        private final int end;
+        @Nullable
+        private final Color foreground;
+        private final int fontType;
+
+        StyledRun(int start, int end, @Nullable Color foreground, int fontType) {
+            this.start = start;
+            this.end = end;
+            this.foreground = foreground;
+            this.fontType = fontType;
+        }
+
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+        @Nullable
+        public Color getForeground() { return foreground; }
+        public int getFontType() { return fontType; }
+
+        boolean hasSameStyle(@Nullable Color otherForeground, int otherFontType) {
+            return fontType == otherFontType && (foreground == null ? otherForeground == null : foreground.equals(otherForeground));
+        }
+    }
+
+    /**
+     * Returns styled runs covering the code, or null when the fence language has no highlighter.
+     * The position identifies the block across renders of a growing message, e.g. its document and index there.
+     * Safe to call from background threads.
+     */
+    @Nullable
+    public static List<StyledRun> highlight(@Nullable String language, @NotNull String code, @NotNull String position) {
+        if (language == null || language.isEmpty() || code.isEmpty() || code.length() > MAX_HIGHLIGHTED_LENGTH) {
+            return null;
+        }
+
+        SyntaxHighlighter highlighter = findHighlighter(language);
+        if (highlighter == null) {
+            return null;
+        }
+
+        BlockKey key = new BlockKey(language, code);
+        List<StyledRun> cached = blockCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            String streamingKey = language + '@' + position;
+            LexedBlock previous = streamingBlocks.get(streamingKey);
+            LexedBlock lexed = previous != null && code.length() > previous.code.length() && code.startsWith(previous.code)
+                    ? lexIncrementally(highlighter, previous, code)
+                    : lex(highlighter, code, 0, Collections.emptyList(), new ArrayList<>());
+            streamingBlocks.put(streamingKey, lexed);
+            blockCache.put(key, lexed.runs);
+            return lexed.runs;
+        } catch (Exception e) {
+            LOG.debug("Failed to highlight " + language + " code block", e);
+            return null;
+        }
+    }
+
+    /**
+     * Drops cached highlighting, e.g. after the color scheme changed.
+     */
+    public static void clear() {
+        blockCache.clear();
+        streamingBlocks.clear();
+    }
+
+    @NotNull
+    private static LexedBlock lexIncrementally(@NotNull SyntaxHighlighter highlighter, @NotNull LexedBlock previous,
+                                               @NotNull String code) {
+        // The last token of the previous text may have been cut mid-way, so restart before it
+        int lastTokenStart = previous.runs.isEmpty() ? 0 : previous.lastTokenStart;
+        int restartIndex = -1;
+        for (int i = previous.restartOffsets.size() - 1; i >= 0; i--) {
+            if (previous.restartOffsets.get(i) < lastTokenStart) {
+                restartIndex = i;
+                break;
+            }
+        }
+        int restartOffset = restartIndex >= 0 ? previous.restartOffsets.get(restartIndex) : 0;
+
+        List<StyledRun> stableRuns = new ArrayList<>();
+        for (StyledRun run : previous.runs) {
+            if (run.end <= restartOffset) {
+                stableRuns.add(run);
+            } else {
+                if (run.start < restartOffset) {
+                    stableRuns.add(new StyledRun(run.start, restartOffset, run.foreground, run.fontType));
+                }
+                break;
+            }
+        }
+        List<Integer> stableRestarts = new ArrayList<>(previous.restartOffsets.subList(0, restartIndex + 1));
+        return lex(highlighter, code, restartOffset, stableRuns, stableRestarts);
+    }
+
+    @NotNull
+    private static LexedBlock lex(@NotNull SyntaxHighlighter highlighter, @NotNull String code, int startOffset,
+                                  @NotNull List<StyledRun> prefixRuns, @NotNull List<Integer> restartOffsets) {
+        EditorColorsScheme scheme = EditorColorsManager.getInstance().getGlobalScheme();
+        Lexer lexer = highlighter.getHighlightingLexer();
+        lexer.start(code, startOffset, code.length(), INITIAL_LEXER_STATE);
+
+        List<StyledRun> runs = new ArrayList<>(prefixRuns);
+        List<Integer> restarts = new ArrayList<>(restartOffsets);
+        int lastTokenStart = startOffset;
+
+        IElementType tokenType;
+        while ((tokenType = lexer.getTokenType()) != null) {
+            int tokenStart = lexer.getTokenStart();
+            int tokenEnd = lexer.getTokenEnd();
+            if (lexer.getState() == INITIAL_LEXER_STATE && tokenStart > startOffset) {
+                restarts.add(tokenStart);
+            }
+            lastTokenStart = tokenStart;
+
+            Color foreground = null;
+            int fontType = Font.PLAIN;
+            for (TextAttributesKey attributesKey : highlighter.getTokenHighlights(tokenType)) {
+                TextAttributes attributes = scheme.getAttributes(attributesKey);
+                if (attributes != null) {
+                    if (attributes.getForegroundColor() != null) {
+                        foreground = attributes.getForegroundColor();
+                    }
+                    if (attributes.getFontType() != Font.PLAIN) {
+                        fontType = attributes.getFontType();
+                    }
+                }
+            }
+
+            // Merge adjacent tokens with the same style into one run to keep the markup small
+            StyledRun last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last.end == tokenStart && last.hasSameStyle(foreground, fontType)) {
+                runs.set(runs.size() - 1, new StyledRun(last.start, tokenEnd, foreground, fontType));
+            } else {
+                runs.add(new StyledRun(tokenStart, tokenEnd, foreground, fontType));
+            }
+            lexer.advance();
+        }
+
+        return new LexedBlock(code, Collections.unmodifiableList(runs), restarts, lastTokenStart);
+    }
+
+    @Nullable
+    private static SyntaxHighlighter findHighlighter(@NotNull String language) {
+        String normalized = language.trim().toLowerCase(Locale.ROOT);
+        Optional<SyntaxHighlighter> known = highlighters.get(normalized);
+        if (known != null) {
+            return known.orElse(null);
+        }
+        // Resolved outside the map so that the read action does not hold a map bin locked; a race resolves twice
+        Optional<SyntaxHighlighter> resolved = ReadAction.compute(() -> {
+            FileType fileType = findFileType(normalized);
+            if (fileType == null) {
+                return Optional.<SyntaxHighlighter>empty();
+            }
+            return Optional.ofNullable(SyntaxHighlighterFactory.getSyntaxHighlighter(fileType, null, null));
+        });
+        Optional<SyntaxHighlighter> raced = highlighters.putIfAbsent(normalized, resolved);
+        return (raced != null ? raced : resolved).orElse(null);
+    }
+
+    @Nullable
+    private static FileType findFileType(@NotNull String language) {
+        FileType byExtension = FileTypeManager.getInstance().getFileTypeByExtension(language);
+        if (!(byExtension instanceof UnknownFileType)) {
+            return byExtension;
+        }
+
+        for (Language registered : Language.getRegisteredLanguages()) {
+            if (registered.getID().equalsIgnoreCase(language) || registered.getDisplayName().equalsIgnoreCase(language)) {
+                FileType associated = registered.getAssociatedFileType();
+                if (associated != null) {
+                    return associated;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class LexedBlock {
+        private final String code;
+        private final List<StyledRun> runs;
+        private final List<Integer> restartOffsets;
+        private final int lastTokenStart;
+
+        LexedBlock(String code, List<StyledRun> runs, List<Integer> restartOffsets, int lastTokenStart) {
+            this.code = code;
+            this.runs = runs;
+            this.restartOffsets = restartOffsets;
+            this.lastTokenStart = lastTokenStart;
+        }
+    }
+
+    // The hash only buckets keys and rejects most mismatches; the code is compared on a match
+    private static final class BlockKey {
+        private final String language;
+        private final String code;
+        private final long hash;
+
+        BlockKey(@NotNull String language, @NotNull String code) {
+            this.language = language;
+            this.code = code;
+            this.hash = MarkdownHtmlCache.hash64(code);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BlockKey)) return false;
+            BlockKey other = (BlockKey) o;
+            return hash == other.hash && language.equals(other.language) && code.equals(other.code);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + language.hashCode();
+        }
+    }
+
+    private static final class LruMap<K, V> {
+        private final LinkedHashMap<K, V> map;
+
+        LruMap(int maxSize) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        synchronized V get(K key) { return map.get(key); }
+        synchronized void put(K key, V value) { map.put(key, value); }
+        synchronized void clear() { map.clear(); }
+    }
+}
@@ -0,0 +1,30 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The most recent messages that fit a token budget, formatted for a prompt.
+ */
+public final class ConversationContext {
+    public static final ConversationContext EMPTY = new ConversationContext("", 0, 0, 0);
+
+    private final String text;
+    private final int estimatedTokens;
+    private final int includedMessages;
+    private final int omittedMessages;
+
+    ConversationContext(@NotNull String text, int estimatedTokens, int includedMessages, int omittedMessages) {
+        this.text = text;
+        this.estimatedTokens = estimatedTokens;
+        this.includedMessages = includedMessages;
+        this.omittedMessages = omittedMessages;
+    }
+
+    @NotNull
+    public String getText() { return text; }
+    public int getEstimatedTokens() { return estimatedTokens; }
+    public int getIncludedMessages() { return includedMessages; }
+    /** Older messages left out because they did not fit the budget. */
+    public int getOmittedMessages() { return omittedMessages; }
+    public boolean isEmpty() { return includedMessages == 0; }
+}
@@ -0,0 +1,104 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import org.commonmark.node.FencedCodeBlock;
+import org.commonmark.node.Node;
+import org.commonmark.renderer.NodeRenderer;
+import org.commonmark.renderer.html.HtmlNodeRendererContext;
+import org.commonmark.renderer.html.HtmlWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders fenced code blocks as {@code <pre>} with lightweight colored spans produced by {@link CodeBlockHighlighter}.
+ * Falls back to the plain commonmark output when the fence language is unknown.
+ */
+class HighlightedCodeBlockRenderer implements NodeRenderer {
+    private final HtmlNodeRendererContext context;
+    private final HtmlWriter html;
+    // Identifies the rendered document across renders while it grows; blocks are told apart by their index in it
+    private final String documentKey;
+    private int blockIndex;
+
+    HighlightedCodeBlockRenderer(@NotNull HtmlNodeRendererContext context, @NotNull String documentKey) {
+        this.context = context;
+        this.html = context.getWriter();
+        this.documentKey = documentKey;
+    }
+
+    @Override
+    public Set<Class<? extends Node>> getNodeTypes() {
+        return Collections.singleton(FencedCodeBlock.class);
+    }
+
+    @Override
+    public void render(Node node) {
+        FencedCodeBlock codeBlock = (FencedCodeBlock) node;
+        String literal = codeBlock.getLiteral();
+        String language = getLanguage(codeBlock);
+
+        Map<String, String> codeAttributes = new LinkedHashMap<>();
+        if (language != null) {
+            codeAttributes.put("class", "language-" + language);
+        }
+
+        html.line();
+        html.tag("pre", context.extendAttributes(node, "pre", Collections.emptyMap()));
+        html.tag("code", context.extendAttributes(node, "code", codeAttributes));
+
+        List<CodeBlockHighlighter.StyledRun> runs = CodeBlockHighlighter.highlight(language, literal, documentKey + '#' + blockIndex++);
+        if (runs == null) {
+            html.text(literal);
+        } else {
+            writeRuns(literal, runs);
+        }
+
+        html.tag("/code");
+        html.tag("/pre");
+        html.line();
+    }
+
+    private void writeRuns(@NotNull String code, @NotNull List<CodeBlockHighlighter.StyledRun> runs) {
+        for (CodeBlockHighlighter.StyledRun run : runs) {
+            String text = code.substring(run.getStart(), run.getEnd());
+            String style = toStyle(run);
+            if (style.isEmpty()) {
+                html.text(text);
+            } else {
+                html.raw("<span style=\"" + style + "\">");
+                html.text(text);
+                html.raw("</span>");
+            }
+        }
+    }
+
+    @NotNull
+    private static String toStyle(@NotNull CodeBlockHighlighter.StyledRun run) {
+        StringBuilder style = new StringBuilder();
+        Color foreground = run.getForeground();
+        if (foreground != null) {
+            style.append(String.format("color: #%02x%02x%02x;", foreground.getRed(), foreground.getGreen(), foreground.getBlue()));
+        }
+        if ((run.getFontType() & Font.BOLD) != 0) {
+            style.append(" font-weight: bold;");
+        }
+        if ((run.getFontType() & Font.ITALIC) != 0) {
+            style.append(" font-style: italic;");
+        }
+        return style.toString().trim();
+    }
+
+    private static String getLanguage(@NotNull FencedCodeBlock codeBlock) {
+        String info = codeBlock.getInfo();
+        if (info == null || info.isEmpty()) {
+            return null;
+        }
+        int space = info.indexOf(' ');
+        return space == -1 ? info : info.substring(0, space);
+    }
+}
@@ -0,0 +1,130 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits large markdown into independently renderable chunks at blank lines outside fenced code.
+ * Huge fenced blocks (code, tool logs) become their own collapsible chunks. Splitting is deterministic,
+ * so when streamed text grows only the trailing chunks change.
+ */
+final class MarkdownChunker {
+    static final int TARGET_CHUNK_LENGTH = 3000;
+    static final int COLLAPSE_MIN_LINES = 80;
+    static final int COLLAPSE_MIN_LENGTH = 6000;
+
+    private MarkdownChunker() {
+    }
+
+    static final class Chunk {
+        private final int start;
+        private final String source;
+        private final boolean collapsible;
+        private final int lineCount;
+        @Nullable
+        private final String language;
+
+        Chunk(int start, @NotNull String source, boolean collapsible, int lineCount, @Nullable String language) {
+            this.start = start;
+            this.source = source;
+            this.collapsible = collapsible;
+            this.lineCount = lineCount;
+            this.language = language;
+        }
+
+        int getStart() { return start; }
+        @NotNull
+        String getSource() { return source; }
+        boolean isCollapsible() { return collapsible; }
+        int getLineCount() { return lineCount; }
+        @Nullable
+        String getLanguage() { return language; }
+    }
+
+    @NotNull
+    static List<Chunk> split(@NotNull String markdown) {
+        List<Chunk> chunks = new ArrayList<>();
+        int chunkStart = 0;
+        int pos = 0;
+        int length = markdown.length();
+
+        String fence = null;
+        int fenceStart = -1;
+        int fenceLines = 0;
+        String fenceLanguage = null;
+
+        while (pos < length) {
+            int lineEnd = markdown.indexOf('\n', pos);
+            int next = lineEnd == -1 ? length : lineEnd + 1;
+            String line = markdown.substring(pos, lineEnd == -1 ? length : lineEnd);
+            String trimmed = line.trim();
+
+            if (fence == null) {
+                String opening = fenceMarker(trimmed);
+                if (opening != null) {
+                    fence = opening;
+                    fenceStart = pos;
+                    fenceLines = 1;
+                    String info = trimmed.substring(opening.length()).trim();
+                    int space = info.indexOf(' ');
+                    fenceLanguage = info.isEmpty() ? null : (space == -1 ? info : info.substring(0, space));
+                } else if (trimmed.isEmpty() && pos - chunkStart >= TARGET_CHUNK_LENGTH) {
+                    chunks.add(new Chunk(chunkStart, markdown.substring(chunkStart, next), false, 0, null));
+                    chunkStart = next;
+                }
+            } else {
+                fenceLines++;
+                boolean closing = trimmed.startsWith(fence) && trimmed.substring(fence.length()).trim().isEmpty();
+                if (closing) {
+                    if (isHuge(fenceLines, next - fenceStart)) {
+                        if (fenceStart > chunkStart) {
+                            chunks.add(new Chunk(chunkStart, markdown.substring(chunkStart, fenceStart), false, 0, null));
+                        }
+                        chunks.add(new Chunk(fenceStart, markdown.substring(fenceStart, next), true, fenceLines, fenceLanguage));
+                        chunkStart = next;
+                    }
+                    fence = null;
+                }
+            }
+            pos = next;
+        }
+
+        // An unclosed fence at the end is a block that is still streaming
+        if (fence != null && isHuge(fenceLines, length - fenceStart)) {
+            if (fenceStart > chunkStart) {
+                chunks.add(new Chunk(chunkStart, markdown.substring(chunkStart, fenceStart), false, 0, null));
+            }
+            chunks.add(new Chunk(fenceStart, markdown.substring(fenceStart), true, fenceLines, fenceLanguage));
+        } else if (chunkStart < length) {
+            chunks.add(new Chunk(chunkStart, markdown.substring(chunkStart), false, 0, null));
+        }
+        return chunks;
+    }
+
+    private static boolean isHuge(int lines, int chars) {
+        return lines >= COLLAPSE_MIN_LINES || chars >= COLLAPSE_MIN_LENGTH;
+    }
+
+    @Nullable
+    private static String fenceMarker(@NotNull String trimmedLine) {
+        if (trimmedLine.startsWith("```")) {
+            return countPrefix(trimmedLine, '`');
+        }
+        if (trimmedLine.startsWith("~~~")) {
+            return countPrefix(trimmedLine, '~');
+        }
+        return null;
+    }
+
+    @NotNull
+    private static String countPrefix(@NotNull String line, char c) {
+        int count = 0;
+        while (count < line.length() && line.charAt(count) == c) {
+            count++;
+        }
+        return line.substring(0, count);
+    }
+}
@@ -0,0 +1,174 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of rendered markdown HTML shared by all message panels.
+ * Entries are keyed by the markdown source plus the theme generation and evicted
+ * by total size of source and HTML rather than entry count.
+ */
+public final class MarkdownHtmlCache {
+    private static final Logger LOG = Logger.getInstance(MarkdownHtmlCache.class);
+    private static final long DEFAULT_MAX_WEIGHT = 8L * 1024 * 1024; // chars of markdown and HTML
+    private static final long STATS_LOG_INTERVAL = 500;
+
+    private final long maxWeight;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long currentWeight = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public MarkdownHtmlCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    public MarkdownHtmlCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    @Nullable
+    public String get(@NotNull String markdown, int themeGeneration) {
+        Key key = Key.of(markdown, themeGeneration);
+        String html;
+        synchronized (this) {
+            html = entries.get(key);
+        }
+        if (html != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        logStatsPeriodically();
+        return html;
+    }
+
+    public void put(@NotNull String markdown, int themeGeneration, @NotNull String html) {
+        // A single entry larger than the whole budget would only evict everything else
+        if ((long) markdown.length() + html.length() > maxWeight) {
+            return;
+        }
+
+        Key key = Key.of(markdown, themeGeneration);
+        synchronized (this) {
+            String previous = entries.put(key, html);
+            if (previous != null) {
+                currentWeight -= weight(key, previous);
+            }
+            currentWeight += weight(key, html);
+
+            Iterator<Map.Entry<Key, String>> iterator = entries.entrySet().iterator();
+            while (currentWeight > maxWeight && iterator.hasNext()) {
+                Map.Entry<Key, String> eldest = iterator.next();
+                currentWeight -= weight(eldest.getKey(), eldest.getValue());
+                iterator.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            currentWeight = 0;
+        }
+        LOG.debug("Markdown HTML cache cleared");
+    }
+
+    @NotNull
+    public Stats getStats() {
+        synchronized (this) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size(), currentWeight);
+        }
+    }
+
+    private static long weight(@NotNull Key key, @NotNull String html) {
+        return (long) key.markdown.length() + html.length();
+    }
+
+    private void logStatsPeriodically() {
+        if (LOG.isDebugEnabled() && (hits.get() + misses.get()) % STATS_LOG_INTERVAL == 0) {
+            LOG.debug("Markdown HTML cache: " + getStats());
+        }
+    }
+
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final long weight;
+
+        Stats(long hits, long misses, long evictions, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public int getSize() { return size; }
+        public long getWeight() { return weight; }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d, entries=%d, weight=%d",
+                    hits, misses, getHitRate() * 100, evictions, size, weight);
+        }
+    }
+
+    static long hash64(@NotNull CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // The 64-bit FNV-1a hash only buckets entries and rejects most mismatches; the markdown is compared on a match
+    private static final class Key {
+        private final long hash;
+        private final String markdown;
+        private final int themeGeneration;
+
+        private Key(long hash, @NotNull String markdown, int themeGeneration) {
+            this.hash = hash;
+            this.markdown = markdown;
+            this.themeGeneration = themeGeneration;
+        }
+
+        static Key of(@NotNull String markdown, int themeGeneration) {
+            return new Key(hash64(markdown), markdown, themeGeneration);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && themeGeneration == other.themeGeneration && markdown.equals(other.markdown);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + themeGeneration;
+        }
+    }
+}
@@ -1,53 +1,43 @@
 package ua.naiksoftware.opencodeidea.ui;
 
-import com.intellij.ui.JBColor;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.UIUtil;
 import org.commonmark.Extension;
 import org.commonmark.ext.gfm.tables.TablesExtension;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
+import org.jetbrains.annotations.NotNull;
 
+import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.StyleSheet;
 import java.awt.*;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 public class MarkdownRenderer {
-    private static final Parser parser;
-    private static final HtmlRenderer renderer;
-    private static final HTMLEditorKit editorKit;
+    private static final Logger LOG = Logger.getInstance(MarkdownRenderer.class);
+    private static final List<Extension> extensions = Arrays.asList(TablesExtension.create());
+    private static final Parser parser = Parser.builder().extensions(extensions).build();
+    // Leading characters that identify a message while it streams; later text keeps being appended to them
+    private static final int DOCUMENT_KEY_LENGTH = 256;
+    private static final MarkdownHtmlCache htmlCache = new MarkdownHtmlCache();
+    private static final ExecutorService renderExecutor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("OpenCode-Markdown", 2);
+    private static volatile int themeGeneration = 0;
+    
+    // Parsed once and linked into every message document. Documents are built on renderExecutor while the theme
+    // may change, so a published sheet is never modified: a theme change publishes a new one instead
+    private static volatile StyleSheet sharedStyleSheet;
     
     static {
-        List<Extension> extensions = Arrays.asList(TablesExtension.create());
-        parser = Parser.builder().extensions(extensions).build();
-        renderer = HtmlRenderer.builder().extensions(extensions).build();
-        
-        editorKit = new HTMLEditorKit();
-        StyleSheet styleSheet = editorKit.getStyleSheet();
-        
-        // Add CSS styles for better markdown rendering - simplified for compatibility
-        try {
-            styleSheet.addRule("body { font-family: monospace; font-size: 12px; margin: 8px; }");
-            styleSheet.addRule("pre { background-color: #f5f5f5; padding: 8px; }");
-            styleSheet.addRule("code { background-color: #f0f0f0; padding: 2px; font-family: monospace; }");
-            styleSheet.addRule("blockquote { margin-left: 0; padding-left: 16px; color: #666666; }");
-            styleSheet.addRule("table { border-collapse: collapse; width: 100%; margin: 8px; }");
-            styleSheet.addRule("th { background-color: #f2f2f2; font-weight: bold; }");
-            styleSheet.addRule("td { padding: 8px; }");
-            styleSheet.addRule("th { padding: 8px; }");
-            styleSheet.addRule("h1 { font-size: 16px; margin: 16px; }");
-            styleSheet.addRule("h2 { font-size: 15px; margin: 12px; }");
-            styleSheet.addRule("h3 { font-size: 14px; margin: 10px; }");
-            styleSheet.addRule("p { margin: 8px; }");
-            styleSheet.addRule("ul { margin: 8px; padding-left: 24px; }");
-            styleSheet.addRule("ol { margin: 8px; padding-left: 24px; }");
-            styleSheet.addRule("li { margin: 2px; }");
-        } catch (Exception e) {
-            // If CSS parsing fails, continue without custom styles
-            System.err.println("Warning: Could not apply CSS styles to MarkdownRenderer: " + e.getMessage());
-        }
+        rebuildThemeStyleSheet();
     }
     
     public static String renderToHtml(String markdown) {
@@ -55,15 +45,120 @@ public class MarkdownRenderer {
             return "";
         }
         
+        int generation = themeGeneration;
+        String cached = htmlCache.get(markdown, generation);
+        if (cached != null) {
+            return cached;
+        }
+        
         Node document = parser.parse(markdown);
+        // Code blocks of a streaming message are re-highlighted incrementally, keyed by the start of the message
+        String documentKey = Long.toHexString(
+                MarkdownHtmlCache.hash64(markdown.subSequence(0, Math.min(markdown.length(), DOCUMENT_KEY_LENGTH))));
+        HtmlRenderer renderer = HtmlRenderer.builder()
+                .extensions(extensions)
+                .nodeRendererFactory(context -> new HighlightedCodeBlockRenderer(context, documentKey))
+                .build();
         String html = renderer.render(document);
         
-        // Wrap in a styled HTML document with theme-aware CSS
-        return "<html><head><style>" + getThemeAwareCSS() + "</style></head><body>" + html + "</body></html>";
+        // Styling comes from the shared style sheet installed by createEditorKit()
+        String result = "<html><body>" + html + "</body></html>";
+        htmlCache.put(markdown, generation, result);
+        return result;
+    }
+    
+    /**
+     * Parses the markdown and builds a styled HTML document on a background thread.
+     * The returned future can be cancelled; work that has not started yet is then skipped.
+     */
+    public static CompletableFuture<RenderedMarkdown> renderDocumentAsync(@NotNull String markdown) {
+        CompletableFuture<RenderedMarkdown> future = new CompletableFuture<>();
+        renderExecutor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                String html = renderToHtml(markdown);
+                if (future.isDone()) {
+                    return;
+                }
+                
+                // The document is not attached to any component yet, so it is safe to fill it off the EDT
+                HTMLEditorKit kit = createEditorKit();
+                HTMLDocument document = (HTMLDocument) kit.createDefaultDocument();
+                kit.read(new StringReader(html), document, 0);
+                future.complete(new RenderedMarkdown(kit, document));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Creates an editor kit whose documents reference the shared, theme-aware style sheet
+     * instead of parsing their own copy of the CSS.
+     */
+    public static HTMLEditorKit createEditorKit() {
+        return new SharedStyleEditorKit();
+    }
+    
+    /**
+     * Called on Look and Feel change: recomputes the theme CSS and drops HTML and code highlighting
+     * rendered with the old colors.
+     */
+    public static void onThemeChanged() {
+        themeGeneration++;
+        htmlCache.clear();
+        CodeBlockHighlighter.clear();
+        rebuildThemeStyleSheet();
+    }
+    
+    public static MarkdownHtmlCache.Stats getCacheStats() {
+        return htmlCache.getStats();
+    }
+    
+    private static synchronized void rebuildThemeStyleSheet() {
+        long start = System.nanoTime();
+        StyleSheet themeSheet = new StyleSheet();
+        try {
+            themeSheet.loadRules(new StringReader(getThemeAwareCSS()), null);
+        } catch (IOException e) {
+            LOG.warn("Could not apply theme CSS to markdown style sheet", e);
+        }
+        
+        // Swing's default HTML rules first, theme rules on top
+        StyleSheet styleSheet = new StyleSheet();
+        styleSheet.addStyleSheet(new HTMLEditorKit().getStyleSheet());
+        styleSheet.addStyleSheet(themeSheet);
+        sharedStyleSheet = styleSheet;
+        LOG.debug("Markdown theme style sheet rebuilt in " + (System.nanoTime() - start) / 1000 + "us");
     }
     
-    public static HTMLEditorKit getEditorKit() {
-        return editorKit;
+    public static final class RenderedMarkdown {
+        private final HTMLEditorKit editorKit;
+        private final HTMLDocument document;
+        
+        RenderedMarkdown(@NotNull HTMLEditorKit editorKit, @NotNull HTMLDocument document) {
+            this.editorKit = editorKit;
+            this.document = document;
+        }
+        
+        @NotNull
+        public HTMLEditorKit getEditorKit() { return editorKit; }
+        
+        @NotNull
+        public HTMLDocument getDocument() { return document; }
+    }
+    
+    private static class SharedStyleEditorKit extends HTMLEditorKit {
+        // The sheet current when the kit was created, so all of its documents use the same one
+        private final StyleSheet styleSheet = sharedStyleSheet;
+        
+        @Override
+        public StyleSheet getStyleSheet() {
+            return styleSheet;
+        }
     }
     
     private static String getThemeAwareCSS() {
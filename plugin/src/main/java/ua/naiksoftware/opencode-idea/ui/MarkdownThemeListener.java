@@ -0,0 +1,22 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.ide.ui.LafManager;
+import com.intellij.ide.ui.LafManagerListener;
+import com.intellij.openapi.editor.colors.EditorColorsListener;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class MarkdownThemeListener implements LafManagerListener, EditorColorsListener {
+    
+    @Override
+    public void lookAndFeelChanged(@NotNull LafManager source) {
+        MarkdownRenderer.onThemeChanged();
+    }
+    
+    @Override
+    public void globalSchemeChange(@Nullable EditorColorsScheme scheme) {
+        // Code block highlighting uses editor scheme colors
+        MarkdownRenderer.onThemeChanged();
+    }
+}
@@ -0,0 +1,420 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.ui.HyperlinkLabel;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Displays rendered markdown. Parsing and HTML document construction run on a background pool;
+ * only the finished document is swapped in on the EDT. While the first render is pending a
+ * placeholder of the estimated final height is shown so the transcript does not jump.
+ * <p>
+ * Content above {@link #LONG_CONTENT_THRESHOLD} switches to large-output mode: the text is split into
+ * chunks, the first screenful is rendered right away and the rest is built one chunk at a time when the
+ * UI is idle or the user scrolls towards it. Huge code blocks and tool logs stay collapsed until expanded.
+ * The raw text is always available through {@link #getMarkdown()} and the "Copy Message" popup action.
+ */
+public class MarkdownView extends JPanel {
+    private static final Logger LOG = Logger.getInstance(MarkdownView.class);
+    private static final int LONG_CONTENT_THRESHOLD = 2000;
+    private static final int LONG_CONTENT_HEIGHT = 250;
+    private static final int CHARS_PER_WRAPPED_LINE = 100;
+    private static final int IDLE_CHUNK_DELAY_MS = 150;
+    private static final int SCROLL_PREFETCH_PX = 100;
+
+    private final Color background;
+    @Nullable
+    private final Border contentBorder;
+
+    private String markdown = "";
+    private int renderGeneration = 0;
+    private boolean hasRenderedContent = false;
+    @Nullable
+    private CompletableFuture<MarkdownRenderer.RenderedMarkdown> pendingRender;
+
+    // Large-output mode state, EDT only
+    private final List<ChunkSlot> chunkSlots = new ArrayList<>();
+    private final Set<Integer> expandedChunkStarts = new HashSet<>();
+    @Nullable
+    private ChunkPanel chunkPanel;
+    @Nullable
+    private JScrollPane chunkScrollPane;
+    private final Timer idleChunkTimer;
+
+    public MarkdownView(@NotNull Color background, @Nullable Border contentBorder) {
+        super(new BorderLayout());
+        this.background = background;
+        this.contentBorder = contentBorder;
+        this.idleChunkTimer = new Timer(IDLE_CHUNK_DELAY_MS, e -> materializeNextChunk());
+        this.idleChunkTimer.setRepeats(false);
+        setOpaque(false);
+        setComponentPopupMenu(createPopupMenu());
+    }
+
+    /**
+     * Must be called on the EDT. Any render still in flight for older content is cancelled.
+     */
+    public void setMarkdown(@NotNull String newMarkdown) {
+        if (newMarkdown.equals(markdown) && (hasRenderedContent || pendingRender != null || chunkPanel != null)) {
+            return;
+        }
+        markdown = newMarkdown;
+        int generation = ++renderGeneration;
+
+        if (pendingRender != null) {
+            pendingRender.cancel(false);
+            pendingRender = null;
+        }
+
+        if (newMarkdown.length() > LONG_CONTENT_THRESHOLD) {
+            updateChunks(newMarkdown);
+            return;
+        }
+        resetChunks();
+
+        // Keep showing the previous document while streaming updates render; placeholder only for the first one
+        if (!hasRenderedContent) {
+            showComponent(createPlaceholder(newMarkdown));
+        }
+
+        CompletableFuture<MarkdownRenderer.RenderedMarkdown> future = MarkdownRenderer.renderDocumentAsync(newMarkdown);
+        pendingRender = future;
+        future.whenComplete((rendered, throwable) -> SwingUtilities.invokeLater(() -> {
+            if (generation != renderGeneration) {
+                return; // Stale result, newer content is already on its way
+            }
+            pendingRender = null;
+
+            if (throwable != null) {
+                if (!isCancellation(throwable)) {
+                    LOG.warn("Failed to render markdown content, using fallback", unwrap(throwable));
+                    showComponent(createFallbackComponent(newMarkdown));
+                    hasRenderedContent = true;
+                }
+                return;
+            }
+
+            showComponent(createEditorPane(rendered));
+            hasRenderedContent = true;
+        }));
+    }
+
+    /**
+     * Full message text, available without materializing the rendered view.
+     */
+    @NotNull
+    public String getMarkdown() {
+        return markdown;
+    }
+
+    // ---- Large-output mode ----
+
+    private void updateChunks(@NotNull String content) {
+        List<MarkdownChunker.Chunk> chunks = MarkdownChunker.split(content);
+
+        if (chunkPanel == null) {
+            chunkPanel = new ChunkPanel();
+            chunkScrollPane = createChunkScrollPane(chunkPanel);
+            showComponent(chunkScrollPane);
+            hasRenderedContent = true;
+        }
+
+        // Chunking is deterministic, so while text streams in only the tail differs from what is shown
+        int firstChanged = 0;
+        while (firstChanged < chunkSlots.size() && firstChanged < chunks.size()
+                && chunkSlots.get(firstChanged).chunk.getSource().equals(chunks.get(firstChanged).getSource())) {
+            firstChanged++;
+        }
+
+        for (int i = chunkSlots.size() - 1; i >= firstChanged; i--) {
+            ChunkSlot slot = chunkSlots.remove(i);
+            slot.cancel();
+            if (slot.component != null) {
+                chunkPanel.remove(slot.component);
+            }
+        }
+        for (int i = firstChanged; i < chunks.size(); i++) {
+            chunkSlots.add(new ChunkSlot(chunks.get(i)));
+        }
+
+        chunkPanel.revalidate();
+        chunkPanel.repaint();
+
+        // The first chunk is roughly one screenful: render it right away, the rest when idle
+        materializeNextChunk();
+    }
+
+    private void materializeNextChunk() {
+        for (ChunkSlot slot : chunkSlots) {
+            if (slot.component != null) {
+                continue;
+            }
+            if (slot.pending != null) {
+                return; // Chunks are built in order, wait for the one in flight
+            }
+
+            MarkdownChunker.Chunk chunk = slot.chunk;
+            if (chunk.isCollapsible() && !expandedChunkStarts.contains(chunk.getStart())) {
+                installChunkComponent(slot, createExpander(slot));
+                continue;
+            }
+            renderChunk(slot);
+            return;
+        }
+    }
+
+    private void renderChunk(@NotNull ChunkSlot slot) {
+        CompletableFuture<MarkdownRenderer.RenderedMarkdown> future =
+                MarkdownRenderer.renderDocumentAsync(slot.chunk.getSource());
+        slot.pending = future;
+        future.whenComplete((rendered, throwable) -> SwingUtilities.invokeLater(() -> {
+            if (slot.pending != future || !chunkSlots.contains(slot)) {
+                return; // Slot was replaced by newer content
+            }
+            slot.pending = null;
+
+            if (throwable != null) {
+                if (isCancellation(throwable)) {
+                    return;
+                }
+                LOG.warn("Failed to render markdown chunk, using fallback", unwrap(throwable));
+                installChunkComponent(slot, createFallbackComponent(slot.chunk.getSource()));
+            } else {
+                installChunkComponent(slot, createEditorPane(rendered));
+            }
+
+            if (isNearRenderedEnd()) {
+                materializeNextChunk();
+            } else {
+                idleChunkTimer.restart();
+            }
+        }));
+    }
+
+    private void installChunkComponent(@NotNull ChunkSlot slot, @NotNull JComponent component) {
+        if (chunkPanel == null) {
+            return;
+        }
+        int index = chunkSlots.indexOf(slot);
+        if (slot.component != null) {
+            chunkPanel.remove(slot.component);
+        }
+        slot.component = component;
+        chunkPanel.add(component, Math.min(index, chunkPanel.getComponentCount()));
+        chunkPanel.revalidate();
+        chunkPanel.repaint();
+    }
+
+    @NotNull
+    private JComponent createExpander(@NotNull ChunkSlot slot) {
+        MarkdownChunker.Chunk chunk = slot.chunk;
+        String what = chunk.getLanguage() != null ? chunk.getLanguage() + " block" : "block";
+        HyperlinkLabel expander = new HyperlinkLabel("Show " + what + " (" + chunk.getLineCount() + " lines)");
+        expander.setBorder(contentBorder);
+        expander.addHyperlinkListener(e -> {
+            expandedChunkStarts.add(chunk.getStart());
+            JBLabel rendering = new JBLabel("Rendering...");
+            rendering.setForeground(JBColor.GRAY);
+            rendering.setBorder(contentBorder);
+            installChunkComponent(slot, rendering);
+            renderChunk(slot);
+        });
+        return expander;
+    }
+
+    private boolean isNearRenderedEnd() {
+        if (chunkScrollPane == null) {
+            return false;
+        }
+        JScrollBar bar = chunkScrollPane.getVerticalScrollBar();
+        return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - SCROLL_PREFETCH_PX;
+    }
+
+    @NotNull
+    private JScrollPane createChunkScrollPane(@NotNull ChunkPanel panel) {
+        JBScrollPane scrollPane = new JBScrollPane(panel);
+        scrollPane.setPreferredSize(new Dimension(0, LONG_CONTENT_HEIGHT));
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
+        scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scrollPane.setBorder(null);
+        scrollPane.setOpaque(false);
+        scrollPane.getViewport().setOpaque(false);
+
+        // Scrolling towards the unbuilt tail builds the next chunk without waiting for idle
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && isNearRenderedEnd()) {
+                materializeNextChunk();
+            }
+        });
+        return scrollPane;
+    }
+
+    private void resetChunks() {
+        if (chunkPanel == null) {
+            return;
+        }
+        idleChunkTimer.stop();
+        for (ChunkSlot slot : chunkSlots) {
+            slot.cancel();
+        }
+        chunkSlots.clear();
+        chunkPanel = null;
+        chunkScrollPane = null;
+        hasRenderedContent = false;
+    }
+
+    private static final class ChunkSlot {
+        private final MarkdownChunker.Chunk chunk;
+        @Nullable
+        private JComponent component;
+        @Nullable
+        private CompletableFuture<MarkdownRenderer.RenderedMarkdown> pending;
+
+        ChunkSlot(@NotNull MarkdownChunker.Chunk chunk) {
+            this.chunk = chunk;
+        }
+
+        void cancel() {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+        }
+    }
+
+    // Tracks the viewport width so chunks wrap instead of scrolling horizontally
+    private static final class ChunkPanel extends JPanel implements Scrollable {
+        ChunkPanel() {
+            setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+            setOpaque(false);
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return 20;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return visibleRect.height;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
+        }
+    }
+
+    // ---- Shared helpers ----
+
+    private void showComponent(@NotNull JComponent component) {
+        removeAll();
+        add(component, BorderLayout.CENTER);
+        revalidate();
+        repaint();
+
+        // Message panels are stacked in a BoxLayout, let it pick up the new height
+        Container parent = getParent();
+        if (parent != null) {
+            parent.revalidate();
+            parent.repaint();
+        }
+    }
+
+    @NotNull
+    private JComponent createEditorPane(@NotNull MarkdownRenderer.RenderedMarkdown rendered) {
+        JEditorPane editorPane = new JEditorPane();
+        editorPane.setEditorKit(rendered.getEditorKit());
+        editorPane.setDocument(rendered.getDocument());
+
+        editorPane.setEditable(false);
+        editorPane.setOpaque(false);
+        editorPane.setBorder(contentBorder);
+        editorPane.setBackground(background);
+        editorPane.setInheritsPopupMenu(true);
+        return editorPane;
+    }
+
+    @NotNull
+    private JComponent createPlaceholder(@NotNull String content) {
+        JBLabel placeholder = new JBLabel("Rendering...");
+        placeholder.setForeground(JBColor.GRAY);
+        placeholder.setVerticalAlignment(SwingConstants.TOP);
+        placeholder.setBorder(contentBorder);
+        placeholder.setPreferredSize(new Dimension(0, estimateHeight(content, placeholder)));
+        return placeholder;
+    }
+
+    private int estimateHeight(@NotNull String content, @NotNull JComponent component) {
+        int lines = 1;
+        for (int i = 0; i < content.length(); i++) {
+            if (content.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        lines += content.length() / CHARS_PER_WRAPPED_LINE;
+
+        int lineHeight = component.getFontMetrics(component.getFont()).getHeight();
+        return Math.min(lines * lineHeight, LONG_CONTENT_HEIGHT);
+    }
+
+    @NotNull
+    private JComponent createFallbackComponent(@NotNull String content) {
+        JTextArea textArea = new JTextArea(content);
+        textArea.setEditable(false);
+        textArea.setOpaque(false);
+        textArea.setForeground(UIUtil.getLabelForeground());
+        textArea.setLineWrap(true);
+        textArea.setWrapStyleWord(true);
+        textArea.setFont(textArea.getFont().deriveFont(14f));
+        textArea.setBorder(contentBorder);
+        textArea.setInheritsPopupMenu(true);
+        return textArea;
+    }
+
+    @NotNull
+    private JPopupMenu createPopupMenu() {
+        JPopupMenu popupMenu = new JPopupMenu();
+        JMenuItem copyItem = new JMenuItem("Copy Message");
+        copyItem.addActionListener(e -> CopyPasteManager.getInstance().setContents(new StringSelection(markdown)));
+        popupMenu.add(copyItem);
+        return popupMenu;
+    }
+
+    private static boolean isCancellation(@NotNull Throwable throwable) {
+        return unwrap(throwable) instanceof CancellationException;
+    }
+
+    @NotNull
+    private static Throwable unwrap(@NotNull Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
+}
@@ -1,10 +1,12 @@
 package ua.naiksoftware.opencodeidea.ui;
 
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 
 import javax.swing.*;
 
-public class OpenCodeToolWindowContent {
+public class OpenCodeToolWindowContent implements Disposable {
     
     private final Project project;
     private final ChatInterface chatInterface;
@@ -12,9 +14,15 @@ public class OpenCodeToolWindowContent {
     public OpenCodeToolWindowContent(Project project) {
         this.project = project;
         this.chatInterface = new ChatInterface(project);
+        Disposer.register(this, chatInterface);
     }
     
     public JComponent getContent() {
         return chatInterface;
     }
-}
\ No newline at end of file
+    
+    @Override
+    public void dispose() {
+        // Children registered with Disposer are disposed with the tool window content
+    }
+}
@@ -13,7 +13,18 @@ public class OpenCodeToolWindowFactory implements ToolWindowFactory {
     public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
         OpenCodeToolWindowContent toolWindowContent = new OpenCodeToolWindowContent(project);
         Content content = ContentFactory.getInstance().createContent(
-                toolWindowContent.getContent(), "", false);
+                toolWindowContent.getContent(), "Chat", false);
+        content.setDisposer(toolWindowContent);
         toolWindow.getContentManager().addContent(content);
+        
+        SessionBrowserPanel sessionBrowser = new SessionBrowserPanel(project);
+        Content sessionsContent = ContentFactory.getInstance().createContent(sessionBrowser, "Sessions", false);
+        sessionsContent.setDisposer(sessionBrowser);
+        toolWindow.getContentManager().addContent(sessionsContent);
+        
+        ServerLogPanel serverLog = new ServerLogPanel(project);
+        Content serverLogContent = ContentFactory.getInstance().createContent(serverLog, "Server Log", false);
+        serverLogContent.setDisposer(serverLog);
+        toolWindow.getContentManager().addContent(serverLogContent);
     }
 }
\ No newline at end of file
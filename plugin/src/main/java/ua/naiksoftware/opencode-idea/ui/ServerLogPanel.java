@@ -0,0 +1,163 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.colors.EditorFontType;
+import com.intellij.openapi.project.Project;
+import com.intellij.ui.SearchTextField;
+import com.intellij.ui.components.JBCheckBox;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.components.JBTextArea;
+import org.jetbrains.annotations.NotNull;
+import ua.naiksoftware.opencodeidea.services.OpenCodeServerManager;
+import ua.naiksoftware.opencodeidea.services.ServerOutputLog;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows the recent output of the project's server, optionally only lines containing a filter text or only
+ * warnings and errors. New lines are appended while the tab is open, in batches so that a burst of output costs
+ * one update of the text area rather than one per line.
+ */
+public class ServerLogPanel extends JPanel implements ServerOutputLog.Listener, Disposable {
+
+    // Lines kept in the view; older ones are dropped as new ones arrive
+    private static final int MAX_LINES = 5000;
+
+    private final ServerOutputLog output;
+    private final JBTextArea textArea = new JBTextArea();
+    private final SearchTextField filterField = new SearchTextField(false);
+    private final JBCheckBox problemsOnlyCheckBox = new JBCheckBox("Warnings and errors only");
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+
+    // Written on the EDT, read by the process reader thread
+    private volatile String filter = "";
+    private volatile boolean problemsOnly;
+    // Lines waiting to be appended on the EDT, and whether an append of them is already scheduled
+    private final Queue<ServerOutputLog.Line> pendingLines = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean appendScheduled = new AtomicBoolean();
+
+    public ServerLogPanel(@NotNull Project project) {
+        super(new BorderLayout());
+        this.output = OpenCodeServerManager.getInstance(project).getServerOutput();
+        setupUI();
+        output.addListener(this);
+        rebuild();
+    }
+
+    private void setupUI() {
+        textArea.setEditable(false);
+        textArea.setFont(EditorColorsManager.getInstance().getGlobalScheme().getFont(EditorFontType.PLAIN));
+
+        filterField.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                filterChanged();
+            }
+        });
+        problemsOnlyCheckBox.addActionListener(e -> filterChanged());
+
+        JPanel header = new JPanel(new BorderLayout(8, 0));
+        header.setBorder(new EmptyBorder(4, 8, 4, 8));
+        header.add(filterField, BorderLayout.CENTER);
+        header.add(problemsOnlyCheckBox, BorderLayout.EAST);
+        add(header, BorderLayout.NORTH);
+
+        JBScrollPane scrollPane = new JBScrollPane(textArea);
+        scrollPane.setBorder(null);
+        add(scrollPane, BorderLayout.CENTER);
+    }
+
+    @Override
+    public void lineAdded(@NotNull ServerOutputLog.Line line) {
+        if (matches(line)) {
+            pendingLines.add(line);
+            if (appendScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::appendPending);
+            }
+        }
+    }
+
+    private void filterChanged() {
+        filter = filterField.getText().trim().toLowerCase(Locale.ROOT);
+        problemsOnly = problemsOnlyCheckBox.isSelected();
+        rebuild();
+    }
+
+    private boolean matches(@NotNull ServerOutputLog.Line line) {
+        String currentFilter = filter;
+        return (!problemsOnly || line.isProblem())
+                && (currentFilter.isEmpty() || line.getText().toLowerCase(Locale.ROOT).contains(currentFilter));
+    }
+
+    private void rebuild() {
+        // The full rebuild includes whatever is still pending
+        pendingLines.clear();
+        StringBuilder text = new StringBuilder();
+        for (ServerOutputLog.Line line : output.getLines()) {
+            if (matches(line)) {
+                text.append(format(line)).append('\n');
+            }
+        }
+        textArea.setText(text.toString());
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+    }
+
+    private void appendPending() {
+        // Lines added from now on schedule another append
+        appendScheduled.set(false);
+        StringBuilder text = new StringBuilder();
+        ServerOutputLog.Line line;
+        while ((line = pendingLines.poll()) != null) {
+            text.append(format(line)).append('\n');
+        }
+        if (text.length() == 0) {
+            return;
+        }
+        // Follow new output only while scrolled to the end
+        boolean atEnd = textArea.getCaretPosition() == textArea.getDocument().getLength();
+        textArea.append(text.toString());
+        if (textArea.getLineCount() > MAX_LINES) {
+            try {
+                textArea.replaceRange("", 0, textArea.getLineEndOffset(textArea.getLineCount() - MAX_LINES - 1));
+            } catch (BadLocationException e) {
+                rebuild();
+                return;
+            }
+        }
+        if (atEnd) {
+            textArea.setCaretPosition(textArea.getDocument().getLength());
+        }
+    }
+
+    @NotNull
+    private String format(@NotNull ServerOutputLog.Line line) {
+        return timeFormat.format(new Date(line.getTimestamp())) + " [" + line.getPid() + "] " + line.getText();
+    }
+
+    @Override
+    public void dispose() {
+        output.removeListener(this);
+    }
+}
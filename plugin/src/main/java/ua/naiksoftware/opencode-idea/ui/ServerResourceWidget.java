@@ -0,0 +1,131 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.services.OpenCodeServerManager;
+import ua.naiksoftware.opencodeidea.services.OpenCodeStatusListener;
+import ua.naiksoftware.opencodeidea.services.ServerResourceSample;
+
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.util.List;
+
+/**
+ * Shows the memory and CPU use of the project's OpenCode server in the status bar, with the recent trend in the tooltip.
+ */
+class ServerResourceWidget implements StatusBarWidget, StatusBarWidget.TextPresentation {
+    static final String ID = "OpenCodeServerResources";
+    private static final String SPARK_LEVELS = "▁▂▃▄▅▆▇█";
+    // Samples drawn in the tooltip's trend line
+    private static final int TREND_SAMPLES = 40;
+
+    private final Project project;
+    @Nullable
+    private StatusBar statusBar;
+
+    ServerResourceWidget(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @NotNull
+    @Override
+    public String ID() {
+        return ID;
+    }
+
+    @Nullable
+    @Override
+    public WidgetPresentation getPresentation() {
+        return this;
+    }
+
+    @Override
+    public void install(@NotNull StatusBar statusBar) {
+        this.statusBar = statusBar;
+        project.getMessageBus().connect(this).subscribe(OpenCodeStatusListener.TOPIC, new OpenCodeStatusListener() {
+            @Override
+            public void serverStatusChanged(@NotNull OpenCodeServerManager.ServerStatus oldStatus,
+                                            @NotNull OpenCodeServerManager.ServerStatus newStatus) {
+                refresh();
+            }
+
+            @Override
+            public void serverResourcesSampled(@NotNull ServerResourceSample sample) {
+                refresh();
+            }
+        });
+    }
+
+    private void refresh() {
+        SwingUtilities.invokeLater(() -> {
+            if (statusBar != null && !project.isDisposed()) {
+                statusBar.updateWidget(ID);
+            }
+        });
+    }
+
+    @NotNull
+    @Override
+    public String getText() {
+        OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
+        ServerResourceSample sample = serverManager.getLatestResourceSample();
+        if (sample == null || serverManager.getStatus() != OpenCodeServerManager.ServerStatus.RUNNING) {
+            return "";
+        }
+        String memory = sample.getRssBytes() >= 0 ? ServerResourceSample.formatBytes(sample.getRssBytes()) + " · " : "";
+        return "OpenCode " + memory + Math.round(sample.getCpuPercent()) + "% CPU";
+    }
+
+    @Nullable
+    @Override
+    public String getTooltipText() {
+        List<ServerResourceSample> history = OpenCodeServerManager.getInstance(project).getResourceHistory();
+        if (history.isEmpty()) {
+            return null;
+        }
+        ServerResourceSample latest = history.get(history.size() - 1);
+        StringBuilder tooltip = new StringBuilder("<html>OpenCode server<br>")
+                .append("Memory: ").append(ServerResourceSample.formatBytes(latest.getRssBytes())).append("<br>")
+                .append("CPU: ").append(Math.round(latest.getCpuPercent())).append("%, ")
+                .append(latest.getCpuTimeMs() / 1000).append("s in total<br>");
+        if (latest.getOpenFiles() >= 0) {
+            tooltip.append("Open files: ").append(latest.getOpenFiles()).append("<br>");
+        }
+        if (latest.getRssBytes() >= 0 && history.size() > 1) {
+            long peak = 0;
+            for (ServerResourceSample sample : history) {
+                peak = Math.max(peak, sample.getRssBytes());
+            }
+            long minutes = (latest.getTimestamp() - history.get(0).getTimestamp()) / 60_000;
+            tooltip.append("Memory over ").append(minutes).append(" min: ")
+                    .append(ServerResourceSample.formatBytes(history.get(0).getRssBytes())).append(" → ")
+                    .append(ServerResourceSample.formatBytes(latest.getRssBytes()))
+                    .append(", peak ").append(ServerResourceSample.formatBytes(peak)).append("<br>")
+                    .append(sparkline(history.subList(Math.max(0, history.size() - TREND_SAMPLES), history.size()), peak));
+        }
+        return tooltip.append("</html>").toString();
+    }
+
+    @NotNull
+    private static String sparkline(@NotNull List<ServerResourceSample> samples, long peak) {
+        StringBuilder line = new StringBuilder(samples.size());
+        for (ServerResourceSample sample : samples) {
+            int level = peak > 0 ? (int) (Math.max(0, sample.getRssBytes()) * (SPARK_LEVELS.length() - 1) / peak) : 0;
+            line.append(SPARK_LEVELS.charAt(level));
+        }
+        return line.toString();
+    }
+
+    @Override
+    public float getAlignment() {
+        return Component.LEFT_ALIGNMENT;
+    }
+
+    @Override
+    public void dispose() {
+        statusBar = null;
+    }
+}
@@ -0,0 +1,44 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.openapi.wm.StatusBarWidgetFactory;
+import org.jetbrains.annotations.NotNull;
+
+public class ServerResourceWidgetFactory implements StatusBarWidgetFactory {
+
+    @NotNull
+    @Override
+    public String getId() {
+        return ServerResourceWidget.ID;
+    }
+
+    @NotNull
+    @Override
+    public String getDisplayName() {
+        return "OpenCode Server Resources";
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull Project project) {
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public StatusBarWidget createWidget(@NotNull Project project) {
+        return new ServerResourceWidget(project);
+    }
+
+    @Override
+    public void disposeWidget(@NotNull StatusBarWidget widget) {
+        Disposer.dispose(widget);
+    }
+
+    @Override
+    public boolean canBeEnabledOn(@NotNull StatusBar statusBar) {
+        return true;
+    }
+}
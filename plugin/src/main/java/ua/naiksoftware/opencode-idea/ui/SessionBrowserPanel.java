@@ -0,0 +1,283 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.ui.CollectionListModel;
+import com.intellij.ui.JBColor;
+import com.intellij.ui.JBSplitter;
+import com.intellij.ui.SimpleListCellRenderer;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ua.naiksoftware.opencodeidea.model.OpenCodeMessage;
+import ua.naiksoftware.opencodeidea.model.OpenCodeSession;
+import ua.naiksoftware.opencodeidea.services.OpenCodeSessionService;
+import ua.naiksoftware.opencodeidea.services.PromptCacheStats;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.awt.event.HierarchyEvent;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the server's sessions and shows a read-only transcript of the selected one.
+ * The newest page of messages is loaded first and older pages as the transcript is scrolled to the top.
+ * All loading happens off the EDT; results for a session that is no longer selected are dropped.
+ */
+public class SessionBrowserPanel extends JPanel implements OpenCodeSessionService.SessionListener, Disposable {
+
+    private static final Logger LOG = Logger.getInstance(SessionBrowserPanel.class);
+    private static final int PAGE_SIZE = 20;
+
+    private final OpenCodeSessionService sessionService;
+    private final CollectionListModel<OpenCodeSession> sessionsModel = new CollectionListModel<>();
+    private final JBList<OpenCodeSession> sessionsList = new JBList<>(sessionsModel);
+    private final JPanel messagesPanel = new JPanel();
+    private final JScrollPane messagesScrollPane = new JBScrollPane(messagesPanel);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JLabel cacheLabel = new JLabel(" ");
+    private final Map<String, ChatMessagePanel> messagePanels = new HashMap<>();
+    // Usage of the loaded messages of the open session, by message ID
+    private final Map<String, OpenCodeMessage.MessageInfo.TokenUsage> usageByMessage = new HashMap<>();
+
+    // EDT only
+    @Nullable
+    private String openSessionId;
+    private int openGeneration;
+    private int loadedCount;
+    private boolean hasMore;
+    private boolean loadingPage;
+    private boolean refreshedOnce;
+
+    public SessionBrowserPanel(@NotNull Project project) {
+        super(new BorderLayout());
+        this.sessionService = OpenCodeSessionService.getInstance(project);
+        setupUI();
+        sessionService.addListener(this);
+
+        sessionsModel.replaceAll(sessionService.getCachedSessions());
+
+        // Talk to the server only once the tab is actually shown
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing() && !refreshedOnce) {
+                refreshedOnce = true;
+                refreshSessions(false);
+            }
+        });
+    }
+
+    private void setupUI() {
+        sessionsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        sessionsList.setCellRenderer(SimpleListCellRenderer.<OpenCodeSession>create((label, session, index) -> {
+            String title = session.getTitle() != null && !session.getTitle().isEmpty() ? session.getTitle() : session.getId();
+            label.setText(title);
+            if (session.getTime() != null) {
+                label.setToolTipText("Updated " + DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT)
+                    .format(new Date(session.getTime().getUpdated())));
+            }
+        }));
+        sessionsList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                OpenCodeSession selected = sessionsList.getSelectedValue();
+                if (selected != null && !selected.getId().equals(openSessionId)) {
+                    openSession(selected.getId());
+                }
+            }
+        });
+
+        messagesPanel.setLayout(new BoxLayout(messagesPanel, BoxLayout.Y_AXIS));
+        messagesPanel.setBackground(UIUtil.getPanelBackground());
+        messagesPanel.setBorder(new EmptyBorder(12, 4, 12, 4));
+        messagesScrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        messagesScrollPane.setBorder(null);
+        messagesScrollPane.getVerticalScrollBar().setUnitIncrement(20);
+        messagesScrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == 0 && hasMore) {
+                loadNextPage();
+            }
+        });
+
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refreshSessions(true));
+        JPanel header = new JPanel(new BorderLayout());
+        header.setBorder(new EmptyBorder(4, 8, 4, 8));
+        header.add(statusLabel, BorderLayout.CENTER);
+        header.add(refreshButton, BorderLayout.EAST);
+
+        cacheLabel.setBorder(new EmptyBorder(2, 8, 2, 8));
+        cacheLabel.setFont(cacheLabel.getFont().deriveFont(11f));
+        cacheLabel.setForeground(JBColor.GRAY);
+        JPanel transcript = new JPanel(new BorderLayout());
+        transcript.add(cacheLabel, BorderLayout.NORTH);
+        transcript.add(messagesScrollPane, BorderLayout.CENTER);
+
+        JBSplitter splitter = new JBSplitter(true, 0.3f);
+        splitter.setFirstComponent(new JBScrollPane(sessionsList));
+        splitter.setSecondComponent(transcript);
+
+        add(header, BorderLayout.NORTH);
+        add(splitter, BorderLayout.CENTER);
+    }
+
+    private void refreshSessions(boolean force) {
+        statusLabel.setText("Loading sessions...");
+        sessionService.refreshSessions(force).whenComplete((sessions, throwable) -> SwingUtilities.invokeLater(() -> {
+            if (throwable != null) {
+                LOG.warn("Failed to list OpenCode sessions", throwable);
+                statusLabel.setText("Failed to load sessions");
+                return;
+            }
+            statusLabel.setText(sessions.size() + " sessions");
+            showSessions(sessions);
+        }));
+    }
+
+    private void showSessions(@NotNull List<OpenCodeSession> sessions) {
+        sessionsModel.replaceAll(sessions);
+        if (openSessionId != null) {
+            for (int i = 0; i < sessions.size(); i++) {
+                if (openSessionId.equals(sessions.get(i).getId())) {
+                    sessionsList.setSelectedIndex(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void openSession(@NotNull String sessionId) {
+        openSessionId = sessionId;
+        openGeneration++;
+        loadedCount = 0;
+        hasMore = true;
+        loadingPage = false;
+        messagePanels.clear();
+        usageByMessage.clear();
+        updateCacheLabel();
+        messagesPanel.removeAll();
+        messagesPanel.revalidate();
+        messagesPanel.repaint();
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        String sessionId = openSessionId;
+        if (sessionId == null || loadingPage || !hasMore) {
+            return;
+        }
+        loadingPage = true;
+        int generation = openGeneration;
+        boolean firstPage = loadedCount == 0;
+        sessionService.loadMessages(sessionId, loadedCount, PAGE_SIZE).whenComplete((page, throwable) -> SwingUtilities.invokeLater(() -> {
+            // Another session was opened while this page was loading
+            if (generation != openGeneration) {
+                return;
+            }
+            loadingPage = false;
+            if (throwable != null) {
+                LOG.warn("Failed to load messages of session " + sessionId, throwable);
+                hasMore = false;
+                return;
+            }
+            loadedCount += page.getMessages().size();
+            hasMore = page.hasMore() && !page.getMessages().isEmpty();
+
+            JScrollBar verticalScrollBar = messagesScrollPane.getVerticalScrollBar();
+            int heightBefore = messagesPanel.getPreferredSize().height;
+            // Pages are newest first; insert each above the previous one so the transcript reads top-down
+            for (OpenCodeMessage message : page.getMessages()) {
+                if (message.getInfo() != null && !messagePanels.containsKey(message.getInfo().getId())) {
+                    insertMessagePanel(message, 0);
+                }
+            }
+            updateCacheLabel();
+            messagesPanel.revalidate();
+            messagesPanel.repaint();
+            messagesScrollPane.validate();
+            if (firstPage) {
+                verticalScrollBar.setValue(verticalScrollBar.getMaximum());
+            } else {
+                verticalScrollBar.setValue(verticalScrollBar.getValue() + messagesPanel.getPreferredSize().height - heightBefore);
+            }
+        }));
+    }
+
+    private void insertMessagePanel(@NotNull OpenCodeMessage message, int index) {
+        recordUsage(message);
+        ChatMessagePanel messagePanel = new ChatMessagePanel(toChatMessage(message));
+        messagePanels.put(message.getInfo().getId(), messagePanel);
+        messagesPanel.add(Box.createVerticalStrut(12), index);
+        messagesPanel.add(messagePanel, index);
+    }
+
+    private void recordUsage(@NotNull OpenCodeMessage message) {
+        if (message.getInfo().getTokens() != null) {
+            usageByMessage.put(message.getInfo().getId(), message.getInfo().getTokens());
+        }
+    }
+
+    /**
+     * Prompt cache hit rate over the loaded messages of the open session, as reported by the provider.
+     */
+    private void updateCacheLabel() {
+        PromptCacheStats stats = PromptCacheStats.EMPTY;
+        for (OpenCodeMessage.MessageInfo.TokenUsage usage : usageByMessage.values()) {
+            stats = stats.plus(usage);
+        }
+        if (stats.getTurns() == 0) {
+            cacheLabel.setText(" ");
+            cacheLabel.setToolTipText(null);
+            return;
+        }
+        cacheLabel.setText("Prompt " + stats.describe() + " over " + stats.getTurns() + " responses");
+        cacheLabel.setToolTipText(stats.getCacheReadTokens() + " of " + stats.getPromptTokens() + " prompt tokens read from the cache, "
+            + stats.getCacheWriteTokens() + " written to it");
+    }
+
+    @NotNull
+    private static ChatMessage toChatMessage(@NotNull OpenCodeMessage message) {
+        OpenCodeMessage.MessageInfo info = message.getInfo();
+        ChatMessage.Role role = "user".equals(info.getRole()) ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT;
+        long created = info.getTime() != null ? info.getTime().getCreated() : System.currentTimeMillis();
+        return ChatMessage.restore(message.getTextContent(), role, created, info.getId());
+    }
+
+    // OpenCodeSessionService.SessionListener implementation
+    @Override
+    public void sessionsChanged(@NotNull List<OpenCodeSession> sessions) {
+        SwingUtilities.invokeLater(() -> showSessions(sessions));
+    }
+
+    @Override
+    public void messageUpdated(@NotNull String sessionId, @NotNull OpenCodeMessage message) {
+        SwingUtilities.invokeLater(() -> {
+            if (!sessionId.equals(openSessionId)) {
+                return;
+            }
+            ChatMessagePanel existing = messagePanels.get(message.getInfo().getId());
+            if (existing != null) {
+                existing.updateMessage(toChatMessage(message));
+                recordUsage(message);
+                updateCacheLabel();
+                return;
+            }
+            insertMessagePanel(message, messagesPanel.getComponentCount());
+            updateCacheLabel();
+            loadedCount++;
+            messagesPanel.revalidate();
+            messagesPanel.repaint();
+        });
+    }
+
+    @Override
+    public void dispose() {
+        sessionService.removeListener(this);
+    }
+}
@@ -8,7 +8,6 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.html.HTMLEditorKit;
 import java.awt.*;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -20,6 +19,7 @@ public class StreamingMessagePanel extends JPanel {
     private final JPanel contentPanel;
     private final JLabel statusIndicator;
     private final AtomicReference<String> currentContent = new AtomicReference<>("");
+    private MarkdownView markdownView;
     
     private volatile boolean isStreaming = false;
     private volatile boolean isComplete = false;
@@ -190,46 +190,12 @@ public class StreamingMessagePanel extends JPanel {
             textArea.setBorder(new EmptyBorder(8, 8, 8, 8));
             return textArea;
         } else {
-            // For assistant messages, use markdown rendering - same as ChatMessagePanel
-            try {
-                JEditorPane editorPane = new JEditorPane();
-                editorPane.setEditorKit(new HTMLEditorKit());
-                editorPane.setContentType("text/html");
-                
-                String htmlContent = MarkdownRenderer.renderToHtml(content);
-                editorPane.setText(htmlContent);
-                
-                editorPane.setEditable(false);
-                editorPane.setOpaque(false);
-                editorPane.setBorder(new EmptyBorder(8, 8, 8, 8));
-                editorPane.setBackground(UIUtil.getPanelBackground());
-                
-                // Handle long content with scrolling
-                if (content.length() > 2000) {
-                    JScrollPane scrollPane = new JScrollPane(editorPane);
-                    scrollPane.setPreferredSize(new Dimension(0, 250));
-                    scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-                    scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
-                    scrollPane.setBorder(null);
-                    scrollPane.setOpaque(false);
-                    scrollPane.getViewport().setOpaque(false);
-                    return scrollPane;
-                }
-                
-                return editorPane;
-            } catch (Exception e) {
-                LOG.warn("Failed to render markdown content, using fallback", e);
-                // Fallback to plain text
-                JTextArea textArea = new JTextArea(content);
-                textArea.setEditable(false);
-                textArea.setOpaque(false);
-                textArea.setForeground(UIUtil.getLabelForeground());
-                textArea.setLineWrap(true);
-                textArea.setWrapStyleWord(true);
-                textArea.setFont(textArea.getFont().deriveFont(14f));
-                textArea.setBorder(new EmptyBorder(8, 8, 8, 8));
-                return textArea;
+            // For assistant messages, reuse one view so each update only swaps the rendered document
+            if (markdownView == null) {
+                markdownView = new MarkdownView(UIUtil.getPanelBackground(), new EmptyBorder(8, 8, 8, 8));
             }
+            markdownView.setMarkdown(content);
+            return markdownView;
         }
     }
     
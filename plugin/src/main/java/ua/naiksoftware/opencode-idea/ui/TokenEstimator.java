@@ -0,0 +1,33 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cheap approximation of how many tokens a model tokenizer produces for a text, without a vocabulary.
+ * Runs of ASCII letters and digits cost about one token per four characters, every other visible
+ * character costs one, and whitespace is free. Good enough to budget prompts; not exact for any model.
+ */
+public final class TokenEstimator {
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(@NotNull CharSequence text) {
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                wordLength++;
+                continue;
+            }
+            tokens += (wordLength + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+            wordLength = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (wordLength + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,50 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.openapi.wm.ex.ToolWindowManagerListener;
+import org.jetbrains.annotations.NotNull;
+import ua.naiksoftware.opencodeidea.services.OpenCodeServerManager;
+
+/**
+ * Starts the server when the OpenCode tool window is shown, so it is usually ready by the time the first message
+ * is typed. A window that stayed open across an idle shutdown starts it again when it is activated.
+ */
+public class ToolWindowServerStarter implements ToolWindowManagerListener {
+
+    private static final Logger LOG = Logger.getInstance(ToolWindowServerStarter.class);
+    private static final String TOOL_WINDOW_ID = "OpenCode Assistant";
+
+    private final Project project;
+
+    public ToolWindowServerStarter(@NotNull Project project) {
+        this.project = project;
+    }
+
+    @Override
+    public void toolWindowShown(@NotNull ToolWindow toolWindow) {
+        if (TOOL_WINDOW_ID.equals(toolWindow.getId())) {
+            startIfStopped();
+        }
+    }
+
+    @Override
+    public void stateChanged(@NotNull ToolWindowManager toolWindowManager) {
+        if (TOOL_WINDOW_ID.equals(toolWindowManager.getActiveToolWindowId())) {
+            startIfStopped();
+        }
+    }
+
+    private void startIfStopped() {
+        OpenCodeServerManager serverManager = OpenCodeServerManager.getInstance(project);
+        if (serverManager.getStatus() != OpenCodeServerManager.ServerStatus.STOPPED) {
+            return;
+        }
+        serverManager.startServer().exceptionally(throwable -> {
+            LOG.warn("Failed to start OpenCode server for the tool window: " + throwable.getMessage());
+            return false;
+        });
+    }
+}
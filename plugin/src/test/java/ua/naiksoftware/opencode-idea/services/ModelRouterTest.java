@@ -0,0 +1,141 @@
+package ua.naiksoftware.opencodeidea.services;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ModelRouterTest {
+    private static final ModelRouter.ModelRef HAIKU = new ModelRouter.ModelRef("anthropic", "claude-3-5-haiku-latest");
+    private static final ModelRouter.ModelRef SONNET = new ModelRouter.ModelRef("anthropic", "claude-3-5-sonnet-latest");
+    private static final ModelRouter.ModelRef GPT = new ModelRouter.ModelRef("openai", "gpt-4o");
+
+    private static final String ROUTES = "# Small explanations go to the cheap model\n"
+            + "explain max 2000 anthropic/claude-3-5-haiku-latest\n"
+            + "chat anthropic/claude-3-5-sonnet-latest fallback openai/gpt-4o\n"
+            + "* anthropic/claude-3-5-sonnet-latest\n";
+
+    @Test
+    public void parsesModelRefs() {
+        ModelRouter.ModelRef ref = ModelRouter.ModelRef.parse("openrouter/meta-llama/llama-3-70b");
+        assertEquals("openrouter", ref.getProviderId());
+        assertEquals("meta-llama/llama-3-70b", ref.getModelId());
+        assertNull(ModelRouter.ModelRef.parse("no-slash"));
+        assertNull(ModelRouter.ModelRef.parse("/model"));
+        assertNull(ModelRouter.ModelRef.parse("provider/"));
+    }
+
+    @Test
+    public void firstMatchingRouteWins() {
+        ModelRouter router = new ModelRouter();
+
+        assertEquals(List.of(HAIKU), router.select(ROUTES, RequestKind.EXPLAIN, 1500, null));
+        assertEquals(List.of(SONNET, GPT), router.select(ROUTES, RequestKind.CHAT, 1500, null));
+        assertEquals(List.of(SONNET), router.select(ROUTES, RequestKind.ASK, 1500, null));
+    }
+
+    @Test
+    public void maxBoundSendsLargerRequestsToLaterRoutes() {
+        ModelRouter router = new ModelRouter();
+
+        assertEquals(List.of(HAIKU), router.select(ROUTES, RequestKind.EXPLAIN, 2000, null));
+        assertEquals(List.of(SONNET), router.select(ROUTES, RequestKind.EXPLAIN, 2001, null));
+    }
+
+    @Test
+    public void malformedRoutesAreIgnored() {
+        ModelRouter router = new ModelRouter();
+        String routes = "unknown anthropic/claude-3-5-haiku-latest\n"
+                + "explain max lots anthropic/claude-3-5-haiku-latest\n"
+                + "explain not-a-model\n"
+                + "explain\n"
+                + "explain anthropic/claude-3-5-haiku-latest openai/gpt-4o\n"
+                + "explain anthropic/claude-3-5-haiku-latest fallback\n"
+                + "explain anthropic/claude-3-5-haiku-latest fallback openai/gpt-4o extra\n"
+                + "explain anthropic/claude-3-5-sonnet-latest\n";
+
+        assertEquals(List.of(SONNET), router.select(routes, RequestKind.EXPLAIN, 100, null));
+    }
+
+    @Test
+    public void noMatchingRouteSelectsNothing() {
+        ModelRouter router = new ModelRouter();
+
+        assertTrue(router.select("chat anthropic/claude-3-5-sonnet-latest", RequestKind.BATCH, 100, null).isEmpty());
+        assertTrue(router.select("", RequestKind.CHAT, 100, null).isEmpty());
+    }
+
+    @Test
+    public void modelsTheServerDoesNotOfferAreSkipped() {
+        ModelRouter router = new ModelRouter();
+
+        // Only the fallback is offered
+        Map<String, Set<String>> openAiOnly = Map.of("openai", Set.of("gpt-4o"));
+        assertEquals(List.of(GPT), router.select(ROUTES, RequestKind.CHAT, 100, openAiOnly));
+
+        // Nothing of the chat route is offered, so the next matching route is tried
+        String routes = "chat anthropic/claude-3-5-sonnet-latest fallback openai/gpt-4o\n"
+                + "* anthropic/claude-3-5-haiku-latest\n";
+        Map<String, Set<String>> haikuOnly = Map.of("anthropic", Set.of("claude-3-5-haiku-latest"));
+        assertEquals(List.of(HAIKU), router.select(routes, RequestKind.CHAT, 100, haikuOnly));
+
+        Map<String, Set<String>> other = Map.of("anthropic", Set.of("claude-3-opus-latest"));
+        assertTrue(router.select(routes, RequestKind.CHAT, 100, other).isEmpty());
+    }
+
+    @Test
+    public void failingPrimaryIsSwappedWithFallback() {
+        ModelRouter router = new ModelRouter();
+        for (int i = 0; i < 5; i++) {
+            router.recordSuccess(GPT, 1000);
+            router.recordFailure(SONNET, 1000);
+        }
+
+        assertEquals(List.of(GPT, SONNET), router.select(ROUTES, RequestKind.CHAT, 100, null));
+    }
+
+    @Test
+    public void slowPrimaryIsSwappedWithFallback() {
+        ModelRouter router = new ModelRouter();
+        for (int i = 0; i < 5; i++) {
+            router.recordSuccess(SONNET, 5000);
+            router.recordSuccess(GPT, 1000);
+        }
+
+        assertEquals(List.of(GPT, SONNET), router.select(ROUTES, RequestKind.CHAT, 100, null));
+    }
+
+    @Test
+    public void primaryIsKeptWithoutEnoughEvidence() {
+        ModelRouter router = new ModelRouter();
+        // Fewer samples than needed to judge the primary
+        for (int i = 0; i < 4; i++) {
+            router.recordFailure(SONNET, 1000);
+        }
+        assertEquals(List.of(SONNET, GPT), router.select(ROUTES, RequestKind.CHAT, 100, null));
+
+        // Slower, but not by more than the allowed factor
+        ModelRouter slower = new ModelRouter();
+        for (int i = 0; i < 5; i++) {
+            slower.recordSuccess(SONNET, 1900);
+            slower.recordSuccess(GPT, 1000);
+        }
+        assertEquals(List.of(SONNET, GPT), slower.select(ROUTES, RequestKind.CHAT, 100, null));
+    }
+
+    @Test
+    public void primaryIsKeptWhenFallbackFailsToo() {
+        ModelRouter router = new ModelRouter();
+        for (int i = 0; i < 5; i++) {
+            router.recordFailure(SONNET, 1000);
+            router.recordFailure(GPT, 1000);
+        }
+
+        assertEquals(List.of(SONNET, GPT), router.select(ROUTES, RequestKind.CHAT, 100, null));
+    }
+}
@@ -0,0 +1,139 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChatHistoryStoreTest extends BasePlatformTestCase {
+    // Four messages of this size make one full round of updates cross the compaction threshold
+    private static final int CONTENT_LENGTH = 300_000;
+    private static final int MESSAGES = 4;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("opencode-history");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            FileUtil.delete(directory.toFile());
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testCompactsTwiceAndReloads() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage message = new ChatMessage(content(0, i), i % 2 == 0 ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT);
+            assertEquals(i, (int) store.append(message).get());
+            messages.add(message);
+        }
+
+        for (int round = 1; round <= 2; round++) {
+            for (int i = 0; i < MESSAGES; i++) {
+                ChatMessage updated = messages.get(i).withContent(content(round, i));
+                assertEquals(i, (int) store.update(updated).get());
+                messages.set(i, updated);
+            }
+            store.flush().get();
+
+            // Each compaction writes the next segment and removes all earlier ones
+            for (int segment = 0; segment < round; segment++) {
+                assertFalse(Files.exists(segment(segment)));
+            }
+            assertTrue(Files.exists(segment(round)));
+            assertLoaded(messages, store.load(0, MESSAGES));
+        }
+        store.dispose();
+
+        ChatHistoryStore reopened = new ChatHistoryStore(directory);
+        assertEquals(MESSAGES, reopened.getMessageCount());
+        assertLoaded(messages, reopened.load(0, MESSAGES));
+
+        // Appends after a reload go after the compacted records instead of overwriting them
+        ChatMessage next = new ChatMessage("after reload", ChatMessage.Role.USER);
+        assertEquals(MESSAGES, (int) reopened.append(next).get());
+        messages.add(next);
+        reopened.dispose();
+
+        ChatHistoryStore reopenedAgain = new ChatHistoryStore(directory);
+        assertLoaded(messages, reopenedAgain.load(0, MESSAGES + 1));
+        reopenedAgain.dispose();
+    }
+
+    public void testRemovesSegmentsLeftBehindByCompaction() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage message = new ChatMessage(content(0, i), ChatMessage.Role.ASSISTANT);
+            store.append(message);
+            messages.add(message);
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+            ChatMessage updated = messages.get(i).withContent(content(1, i));
+            store.update(updated);
+            messages.set(i, updated);
+        }
+        store.flush().get();
+        store.dispose();
+
+        // As if deleting the old segment had failed, e.g. because it was still mapped on Windows
+        Files.write(segment(0), new byte[1024]);
+
+        ChatHistoryStore reopened = new ChatHistoryStore(directory);
+        assertLoaded(messages, reopened.load(0, MESSAGES));
+        assertFalse(Files.exists(segment(0)));
+        reopened.dispose();
+    }
+
+    public void testLoadsPagesBackwardsFromTheTail() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ChatMessage message = new ChatMessage("message " + i, ChatMessage.Role.USER);
+            store.append(message);
+            messages.add(message);
+        }
+        store.flush().get();
+
+        ChatHistoryStore.Page tail = store.loadTail(4);
+        assertEquals(6, tail.getFrom());
+        assertLoaded(messages.subList(6, 10), tail.getMessages());
+
+        ChatHistoryStore.Page middle = store.loadBefore(tail.getFrom(), 4);
+        assertEquals(2, middle.getFrom());
+        assertLoaded(messages.subList(2, 6), middle.getMessages());
+
+        ChatHistoryStore.Page first = store.loadBefore(middle.getFrom(), 4);
+        assertEquals(0, first.getFrom());
+        assertLoaded(messages.subList(0, 2), first.getMessages());
+        store.dispose();
+    }
+
+    private Path segment(int segment) {
+        return directory.resolve("segment-" + segment + ".log");
+    }
+
+    private static String content(int round, int message) {
+        return "round " + round + " message " + message + " " + "x".repeat(CONTENT_LENGTH);
+    }
+
+    private static void assertLoaded(List<ChatMessage> expected, List<ChatMessage> loaded) {
+        assertEquals(expected.size(), loaded.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getMessageId(), loaded.get(i).getMessageId());
+            assertEquals(expected.get(i).getRole(), loaded.get(i).getRole());
+            assertEquals(expected.get(i).getContent(), loaded.get(i).getContent());
+        }
+    }
+}
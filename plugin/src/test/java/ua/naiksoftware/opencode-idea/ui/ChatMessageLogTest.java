@@ -0,0 +1,122 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ChatMessageLogTest {
+
+    @Test
+    public void appendsAcrossChunks() {
+        ChatMessageLog log = new ChatMessageLog();
+        ChatMessage[] messages = new ChatMessage[1000];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new ChatMessage("message " + i, i % 2 == 0 ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT);
+            assertEquals(i, log.append(messages[i]));
+        }
+
+        assertEquals(messages.length, log.size());
+        for (int i = 0; i < messages.length; i++) {
+            assertSame(messages[i], log.get(i));
+            assertEquals(i, log.indexOf(messages[i].getMessageId()));
+        }
+        assertSame(messages[998], log.getLast(ChatMessage.Role.USER));
+        assertSame(messages[999], log.getLast(ChatMessage.Role.ASSISTANT));
+    }
+
+    @Test
+    public void snapshotDoesNotSeeLaterAppends() {
+        ChatMessageLog log = new ChatMessageLog();
+        log.append(new ChatMessage("first", ChatMessage.Role.USER));
+        List<ChatMessage> snapshot = log.snapshot();
+
+        for (int i = 0; i < 300; i++) {
+            log.append(new ChatMessage("more", ChatMessage.Role.ASSISTANT));
+        }
+
+        assertEquals(1, snapshot.size());
+        assertEquals("first", snapshot.get(0).getContent());
+        assertEquals(301, log.size());
+    }
+
+    @Test
+    public void replaceKeepsSlotAndLeavesSnapshotsUnchanged() {
+        ChatMessageLog log = new ChatMessageLog();
+        ChatMessage question = new ChatMessage("question", ChatMessage.Role.USER);
+        ChatMessage answer = new ChatMessage("partial", ChatMessage.Role.ASSISTANT);
+        log.append(question);
+        log.append(answer);
+        List<ChatMessage> before = log.snapshot();
+
+        ChatMessage completed = answer.withContent("complete answer");
+        assertEquals(1, log.replace(completed));
+
+        assertSame(completed, log.get(1));
+        assertSame(completed, log.getLast(ChatMessage.Role.ASSISTANT));
+        assertEquals(2, log.size());
+        assertSame(answer, before.get(1));
+        assertSame(completed, log.snapshot().get(1));
+    }
+
+    @Test
+    public void replaceOfUnknownMessageIsRejected() {
+        ChatMessageLog log = new ChatMessageLog();
+        log.append(new ChatMessage("question", ChatMessage.Role.USER));
+
+        assertEquals(-1, log.replace(new ChatMessage("other", ChatMessage.Role.ASSISTANT)));
+        assertEquals(1, log.size());
+    }
+
+    @Test
+    public void prependPutsRestoredMessagesFirst() {
+        ChatMessageLog log = new ChatMessageLog();
+        ChatMessage live = new ChatMessage("sent while restoring", ChatMessage.Role.USER);
+        log.append(live);
+        List<ChatMessage> before = log.snapshot();
+        List<ChatMessage> restored = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            restored.add(new ChatMessage("restored " + i, i % 2 == 0 ? ChatMessage.Role.USER : ChatMessage.Role.ASSISTANT));
+        }
+
+        log.prepend(restored);
+
+        assertEquals(301, log.size());
+        for (int i = 0; i < restored.size(); i++) {
+            assertSame(restored.get(i), log.get(i));
+        }
+        assertSame(live, log.get(300));
+        assertEquals(300, log.indexOf(live.getMessageId()));
+        assertSame(live, log.getLast(ChatMessage.Role.USER));
+        assertSame(restored.get(299), log.getLast(ChatMessage.Role.ASSISTANT));
+        assertEquals(1, before.size());
+        assertSame(live, before.get(0));
+    }
+
+    @Test
+    public void clearKeepsEarlierSnapshotsAndForgetsIds() {
+        ChatMessageLog log = new ChatMessageLog();
+        ChatMessage message = new ChatMessage("question", ChatMessage.Role.USER);
+        log.append(message);
+        List<ChatMessage> before = log.snapshot();
+
+        log.clear();
+
+        assertEquals(0, log.size());
+        assertEquals(-1, log.indexOf(message.getMessageId()));
+        assertNull(log.getLast(ChatMessage.Role.USER));
+        assertEquals(-1, log.replace(message.withContent("late update")));
+        assertSame(message, before.get(0));
+        try {
+            log.get(0);
+            fail("Expected IndexOutOfBoundsException after clear");
+        } catch (IndexOutOfBoundsException expected) {
+            // The index of a cleared message is no longer valid
+        }
+    }
+}
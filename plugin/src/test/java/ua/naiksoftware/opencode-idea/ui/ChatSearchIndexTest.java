@@ -0,0 +1,137 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChatSearchIndexTest extends BasePlatformTestCase {
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("opencode-search");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            FileUtil.delete(directory.toFile());
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testTokenizesRunsOfLettersAndDigits() {
+        assertEquals(List.of("kafkaconsumer", "poll", "42"), ChatSearchIndex.tokenize("KafkaConsumer#poll() x 42"));
+    }
+
+    public void testFindsMessagesContainingEveryWordNewestFirst() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        ChatSearchIndex index = new ChatSearchIndex(store);
+        append(store, index, "How do I configure the Kafka consumer?");
+        append(store, index, "The Kafka producer batches records");
+        append(store, index, "Set max.poll.records on the consumer, Kafka will honour it");
+        index.flush().get();
+
+        assertEquals(List.of(2, 0), ordinals(index.search("kafka consumer", 10)));
+        assertEquals(List.of(2), ordinals(index.search("kafka consumer", 1)));
+        assertEquals(List.of(1), ordinals(index.search("PRODUCER", 10)));
+        assertTrue(index.search("zookeeper", 10).isEmpty());
+        assertTrue(index.search("#?", 10).isEmpty());
+
+        index.dispose();
+        store.dispose();
+    }
+
+    public void testMatchesOnlyTheLastWordAsPrefix() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        ChatSearchIndex index = new ChatSearchIndex(store);
+        append(store, index, "The consumer group rebalances");
+        append(store, index, "Consumers commit offsets");
+        append(store, index, "Connection refused");
+        index.flush().get();
+
+        assertEquals(List.of(1, 0), ordinals(index.search("consum", 10)));
+        assertEquals(List.of(2, 1, 0), ordinals(index.search("con", 10)));
+        assertEquals(List.of(0), ordinals(index.search("consumer gro", 10)));
+        assertTrue(index.search("consum group", 10).isEmpty());
+
+        index.dispose();
+        store.dispose();
+    }
+
+    public void testSkipsMessagesEditedSinceTheyWereIndexed() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        ChatSearchIndex index = new ChatSearchIndex(store);
+        ChatMessage message = append(store, index, "Streaming partial answer");
+        index.flush().get();
+
+        store.update(message.withContent("Final answer")).get();
+
+        assertTrue(index.search("partial", 10).isEmpty());
+        assertEquals(List.of(0), ordinals(index.search("answer", 10)));
+
+        index.dispose();
+        store.dispose();
+    }
+
+    public void testIndexesStoredHistoryAfterRestart() throws Exception {
+        // History written before the index existed
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        store.append(new ChatMessage("Kafka consumer lag", ChatMessage.Role.USER)).get();
+        store.append(new ChatMessage("Check the consumer group", ChatMessage.Role.ASSISTANT)).get();
+
+        ChatSearchIndex index = new ChatSearchIndex(store);
+        index.flush().get();
+        assertEquals(List.of(1, 0), ordinals(index.search("consumer", 10)));
+
+        // Messages written after the index was saved, as if the IDE exited before indexing them
+        index.dispose();
+        store.append(new ChatMessage("Consumer lag is back to zero", ChatMessage.Role.USER)).get();
+        store.dispose();
+        assertTrue(Files.exists(directory.resolve("search.idx")));
+
+        ChatHistoryStore reopenedStore = new ChatHistoryStore(directory);
+        ChatSearchIndex reopened = new ChatSearchIndex(reopenedStore);
+        reopened.flush().get();
+        assertEquals(List.of(2, 1, 0), ordinals(reopened.search("consumer", 10)));
+        assertEquals(List.of(2, 0), ordinals(reopened.search("lag", 10)));
+
+        reopened.dispose();
+        reopenedStore.dispose();
+    }
+
+    public void testClearDropsPostings() throws Exception {
+        ChatHistoryStore store = new ChatHistoryStore(directory);
+        ChatSearchIndex index = new ChatSearchIndex(store);
+        append(store, index, "Kafka consumer lag");
+        index.flush().get();
+
+        store.clear();
+        index.clear();
+        index.flush().get();
+        assertTrue(index.search("kafka", 10).isEmpty());
+
+        index.dispose();
+        store.dispose();
+    }
+
+    private static ChatMessage append(ChatHistoryStore store, ChatSearchIndex index, String content) throws Exception {
+        ChatMessage message = new ChatMessage(content, ChatMessage.Role.USER);
+        index.index(store.append(message).get(), message);
+        return message;
+    }
+
+    private static List<Integer> ordinals(List<ChatSearchIndex.SearchHit> hits) {
+        List<Integer> ordinals = new ArrayList<>();
+        for (ChatSearchIndex.SearchHit hit : hits) {
+            ordinals.add(hit.getOrdinal());
+        }
+        return ordinals;
+    }
+}
@@ -0,0 +1,38 @@
+package ua.naiksoftware.opencodeidea.ui;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+import java.io.StringReader;
+
+public class MarkdownStyleSheetTest extends BasePlatformTestCase {
+    private static final String MARKDOWN = "## Result\n\nThe method `compute()` returns **early** when:\n\n"
+            + "- the cache is warm\n- the input is empty\n\n| a | b |\n|---|---|\n| 1 | 2 |\n";
+
+    public void testSharedStyleSheetIsAppliedToDocuments() throws Exception {
+        HTMLEditorKit kit = MarkdownRenderer.createEditorKit();
+        HTMLDocument document = (HTMLDocument) kit.createDefaultDocument();
+        kit.read(new StringReader(MarkdownRenderer.renderToHtml(MARKDOWN)), document, 0);
+
+        // The document links the shared sheet instead of holding its own copy of the rules
+        assertSame(kit.getStyleSheet(), document.getStyleSheet().getStyleSheets()[0]);
+        assertNotNull(document.getStyleSheet().getRule("pre").getAttribute(CSS.Attribute.BACKGROUND_COLOR));
+    }
+
+    public void testThemeChangePublishesNewStyleSheet() {
+        HTMLEditorKit before = MarkdownRenderer.createEditorKit();
+        StyleSheet beforeSheet = before.getStyleSheet();
+        StyleSheet[] beforeLinked = beforeSheet.getStyleSheets().clone();
+
+        MarkdownRenderer.onThemeChanged();
+        HTMLEditorKit after = MarkdownRenderer.createEditorKit();
+
+        // Kits created earlier keep the sheet they started with, and that sheet is left as it was
+        assertNotSame(beforeSheet, after.getStyleSheet());
+        assertSame(beforeSheet, before.getStyleSheet());
+        assertOrderedEquals(beforeSheet.getStyleSheets(), beforeLinked);
+    }
+}